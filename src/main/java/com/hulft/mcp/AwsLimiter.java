@@ -0,0 +1,384 @@
+package com.hulft.mcp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Adaptive concurrency limit and circuit breaker for one AWS service.
+ * The limit follows AIMD: every successful call raises it by {@code 1/limit} (about one
+ * per round of calls), and a throttling error or call timeout halves it, so the number
+ * of calls in flight converges on what the account quota sustains. Calls beyond the
+ * limit wait for a permit. After {@code failureThreshold} consecutive throttles, server
+ * errors or network failures the circuit opens and calls fail fast with a
+ * {@link ServerBusyException} for {@code openMillis}; then a single trial call decides
+ * whether it closes again. Client errors such as validation failures pass through
+ * without affecting either. Calls naming their operation first wait for a token from
+ * the operation's {@link TokenBuckets} bucket, so they are also paced to the TPS quota.
+ */
+@Slf4j
+public class AwsLimiter {
+    private static final Map<String, AwsLimiter> SHARED = new ConcurrentHashMap<>();
+
+    /** Circuit breaker states, as published by the {@code aws.<service>.circuit} gauge. */
+    public enum Circuit {
+        /** Calls flow, limited by the adaptive limit */
+        CLOSED,
+        /** Calls fail fast until the open period ends */
+        OPEN,
+        /** One trial call is in flight */
+        HALF_OPEN
+    }
+
+    private final String service;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxWaiting;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final long acquireTimeoutMillis;
+    private final TokenBuckets buckets;
+
+    private final ArrayDeque<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private int consecutiveFailures;
+    private Circuit circuit = Circuit.CLOSED;
+    private long openUntil;
+
+    /**
+     * Creates a limiter.
+     *
+     * @param service service name, for errors and metrics
+     * @param initialLimit starting concurrency limit
+     * @param minLimit lowest limit a throttle can cut to
+     * @param maxLimit highest limit successes can raise to
+     * @param maxWaiting calls that may wait for a permit before more are refused
+     * @param failureThreshold consecutive failures that open the circuit
+     * @param openMillis how long the circuit stays open
+     * @param acquireTimeoutMillis how long a blocking call waits for a permit
+     */
+    public AwsLimiter(final String service, final int initialLimit, final int minLimit, final int maxLimit,
+            final int maxWaiting, final int failureThreshold, final long openMillis, final long acquireTimeoutMillis) {
+        this(service, initialLimit, minLimit, maxLimit, maxWaiting, failureThreshold, openMillis, acquireTimeoutMillis, null);
+    }
+
+    /**
+     * Creates a limiter that also paces calls with token buckets.
+     *
+     * @param service service name, for errors, metrics and bucket keys
+     * @param initialLimit starting concurrency limit
+     * @param minLimit lowest limit a throttle can cut to
+     * @param maxLimit highest limit successes can raise to
+     * @param maxWaiting calls that may wait for a permit before more are refused
+     * @param failureThreshold consecutive failures that open the circuit
+     * @param openMillis how long the circuit stays open
+     * @param acquireTimeoutMillis how long a blocking call waits for a permit
+     * @param buckets rate limits per operation, or null for none
+     */
+    @SuppressWarnings("PMD.ExcessiveParameterList") // All limiter tuning, set once from config
+    public AwsLimiter(final String service, final int initialLimit, final int minLimit, final int maxLimit,
+            final int maxWaiting, final int failureThreshold, final long openMillis, final long acquireTimeoutMillis,
+            final TokenBuckets buckets) {
+        this.buckets = buckets;
+        this.service = service;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxWaiting = maxWaiting;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Returns the process-wide limiter of a service, shared by every component calling
+     * it. It is configured from {@code hulft.aws.<service>.limit} (8),
+     * {@code .minLimit} (1), {@code .maxLimit} (64), {@code .maxWaiting} (256),
+     * {@code .failureThreshold} (5), {@code .openMillis} (30000) and
+     * {@code .acquireTimeoutMillis} (30000), and publishes its gauges to {@link Metrics}.
+     *
+     * @param service service name, e.g. {@code bedrock}
+     * @return the shared limiter
+     */
+    public static AwsLimiter forService(final String service) {
+        return SHARED.computeIfAbsent(service, name -> {
+            final String prefix = "hulft.aws." + name + ".";
+            final AwsLimiter limiter = new AwsLimiter(name,
+                Integer.getInteger(prefix + "limit", 8),
+                Integer.getInteger(prefix + "minLimit", 1),
+                Integer.getInteger(prefix + "maxLimit", 64),
+                Integer.getInteger(prefix + "maxWaiting", 256),
+                Integer.getInteger(prefix + "failureThreshold", 5),
+                Long.getLong(prefix + "openMillis", 30_000L),
+                Long.getLong(prefix + "acquireTimeoutMillis", 30_000L),
+                TokenBuckets.shared());
+            limiter.registerMetrics();
+            return limiter;
+        });
+    }
+
+    /**
+     * Runs a blocking call once a permit is available.
+     *
+     * @param call the AWS call
+     * @param <T> response type
+     * @return the response
+     * @throws ServerBusyException if the circuit is open or no permit frees up in time
+     */
+    public <T> T call(final Supplier<T> call) {
+        return call(null, null, call);
+    }
+
+    /**
+     * Runs a blocking call once its operation's rate limit and a permit allow.
+     *
+     * @param operation API operation, for the token bucket; null for no rate limit
+     * @param model model ID, for per-model buckets; may be null
+     * @param call the AWS call
+     * @param <T> response type
+     * @return the response
+     * @throws ServerBusyException if the circuit is open, or no token or permit frees up in time
+     */
+    @SuppressWarnings("PMD.AvoidCatchingGenericException") // Outcome is recorded, then rethrown
+    public <T> T call(final String operation, final String model, final Supplier<T> call) {
+        if (buckets != null && operation != null) {
+            buckets.acquire(TokenBuckets.key(service, operation, model), acquireTimeoutMillis);
+        }
+        awaitPermit();
+        final long start = System.nanoTime();
+        try {
+            final T response = call.get();
+            release(null, start);
+            return response;
+        } catch (final RuntimeException e) {
+            release(e, start);
+            throw e;
+        }
+    }
+
+    /**
+     * Starts a non-blocking call once a permit is available, without holding a thread
+     * while waiting for it.
+     *
+     * @param call starts the AWS call
+     * @param <T> response type
+     * @return future completed with the response, or failed with a
+     *     {@link ServerBusyException} if the circuit is open or too many calls wait
+     */
+    public <T> CompletableFuture<T> callAsync(final Supplier<CompletableFuture<T>> call) {
+        return callAsync(null, null, call);
+    }
+
+    /**
+     * Starts a non-blocking call once its operation's rate limit and a permit allow,
+     * without holding a thread while waiting for either.
+     *
+     * @param operation API operation, for the token bucket; null for no rate limit
+     * @param model model ID, for per-model buckets; may be null
+     * @param call starts the AWS call
+     * @param <T> response type
+     * @return future completed with the response, or failed with a
+     *     {@link ServerBusyException} if the circuit is open or too many calls wait
+     */
+    public <T> CompletableFuture<T> callAsync(final String operation, final String model,
+            final Supplier<CompletableFuture<T>> call) {
+        final CompletableFuture<Void> paced = buckets == null || operation == null
+            ? CompletableFuture.completedFuture(null)
+            : buckets.acquireAsync(TokenBuckets.key(service, operation, model), acquireTimeoutMillis);
+        return paced.thenCompose(ready -> acquire()).thenCompose(permit -> {
+            final long start = System.nanoTime();
+            final CompletableFuture<T> response;
+            try {
+                response = call.get();
+            } catch (final RuntimeException e) {
+                release(e, start);
+                throw e;
+            }
+            return response.whenComplete((result, error) -> release(error, start));
+        });
+    }
+
+    private void awaitPermit() {
+        final CompletableFuture<Void> permit = acquire();
+        try {
+            permit.get(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            abandon(permit);
+            throw new ServerBusyException(service + " concurrency limit reached", 1000);
+        } catch (final ExecutionException e) {
+            throw (RuntimeException) e.getCause();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(permit);
+            throw new ServerBusyException(service + " call interrupted", 1000);
+        }
+    }
+
+    /** Gives up a permit that was waited for, returning it if it was granted meanwhile. */
+    private void abandon(final CompletableFuture<Void> permit) {
+        final List<CompletableFuture<Void>> granted;
+        synchronized (this) {
+            if (waiting.remove(permit) || permit.isCompletedExceptionally()) {
+                return;
+            }
+            inFlight--;
+            granted = grant();
+        }
+        granted.forEach(next -> next.complete(null));
+    }
+
+    /** Hands free permits to waiting calls; must hold the lock. */
+    private List<CompletableFuture<Void>> grant() {
+        final List<CompletableFuture<Void>> granted = new ArrayList<>();
+        while (inFlight < (int) limit && !waiting.isEmpty()) {
+            inFlight++;
+            granted.add(waiting.poll());
+        }
+        return granted;
+    }
+
+    private synchronized CompletableFuture<Void> acquire() {
+        final long now = System.currentTimeMillis();
+        if (circuit == Circuit.OPEN && now >= openUntil && inFlight == 0) {
+            circuit = Circuit.HALF_OPEN;
+            inFlight++;
+            return CompletableFuture.completedFuture(null);
+        }
+        if (circuit != Circuit.CLOSED) {
+            return CompletableFuture.failedFuture(new ServerBusyException(service + " is unavailable",
+                Math.max(1000, openUntil - now)));
+        }
+        if (inFlight < (int) limit) {
+            inFlight++;
+            return CompletableFuture.completedFuture(null);
+        }
+        if (waiting.size() >= maxWaiting) {
+            return CompletableFuture.failedFuture(new ServerBusyException(service + " concurrency limit reached", 1000));
+        }
+        final CompletableFuture<Void> permit = new CompletableFuture<>();
+        waiting.add(permit);
+        return permit;
+    }
+
+    private void release(final Throwable thrown, final long startNanos) {
+        final Throwable error = thrown instanceof CompletionException && thrown.getCause() != null ? thrown.getCause() : thrown;
+        final List<CompletableFuture<Void>> granted;
+        final List<CompletableFuture<Void>> refused = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            record(error);
+            if (circuit == Circuit.CLOSED) {
+                granted = grant();
+            } else {
+                granted = List.of();
+                refused.addAll(waiting);
+                waiting.clear();
+            }
+        }
+        if (error != null && log.isDebugEnabled()) {
+            log.debug("{} call failed after {} ms: {}", service,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), error.getMessage());
+        }
+        // Complete outside the lock: waiters continue with the call on this thread
+        granted.forEach(permit -> permit.complete(null));
+        refused.forEach(permit -> permit.completeExceptionally(
+            new ServerBusyException(service + " is unavailable", openMillis)));
+    }
+
+    private void record(final Throwable error) {
+        final boolean overloaded = isOverload(error);
+        final boolean failed = overloaded || isServerFailure(error);
+        if (failed) {
+            consecutiveFailures++;
+        } else if (error == null) {
+            consecutiveFailures = 0;
+        }
+        if (overloaded) {
+            limit = Math.max(minLimit, limit / 2);
+        } else if (error == null) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        final Circuit before = circuit;
+        if (circuit == Circuit.HALF_OPEN) {
+            circuit = failed ? Circuit.OPEN : Circuit.CLOSED;
+        } else if (circuit == Circuit.CLOSED && consecutiveFailures >= failureThreshold) {
+            circuit = Circuit.OPEN;
+        }
+        if (circuit == Circuit.OPEN && before != Circuit.OPEN) {
+            openUntil = System.currentTimeMillis() + openMillis;
+        }
+        if (circuit != before && log.isWarnEnabled()) {
+            log.warn("{} circuit {} after {} consecutive failures (limit {})", service, circuit, consecutiveFailures, (int) limit);
+        }
+    }
+
+    /** Throttling and timeouts mean the service is over its capacity for us. */
+    private static boolean isOverload(final Throwable error) {
+        if (error instanceof software.amazon.awssdk.core.exception.SdkServiceException serviceError) {
+            return serviceError.isThrottlingException();
+        }
+        return error instanceof software.amazon.awssdk.core.exception.ApiCallTimeoutException
+            || error instanceof software.amazon.awssdk.core.exception.ApiCallAttemptTimeoutException;
+    }
+
+    /** Server errors and network failures count towards opening the circuit; client errors do not. */
+    private static boolean isServerFailure(final Throwable error) {
+        if (error instanceof software.amazon.awssdk.core.exception.SdkServiceException serviceError) {
+            return serviceError.statusCode() >= 500;
+        }
+        return error instanceof software.amazon.awssdk.core.exception.SdkClientException;
+    }
+
+    /**
+     * Returns the current concurrency limit.
+     *
+     * @return calls allowed in flight
+     */
+    public synchronized int limit() {
+        return (int) limit;
+    }
+
+    /**
+     * Returns the number of calls in flight.
+     *
+     * @return in-flight calls
+     */
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Returns the circuit state.
+     *
+     * @return circuit state
+     */
+    public synchronized Circuit circuit() {
+        return circuit;
+    }
+
+    /**
+     * Publishes limit, in-flight, waiting and circuit gauges to {@link Metrics}.
+     */
+    public void registerMetrics() {
+        final String prefix = "aws." + service.toLowerCase(Locale.ROOT);
+        Metrics.gauge(prefix + ".limit", this::limit);
+        Metrics.gauge(prefix + ".inflight", this::inFlight);
+        Metrics.gauge(prefix + ".waiting", () -> {
+            synchronized (this) {
+                return waiting.size();
+            }
+        });
+        Metrics.gauge(prefix + ".circuit", () -> circuit().ordinal());
+    }
+}
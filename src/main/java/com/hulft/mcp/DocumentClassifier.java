@@ -5,6 +5,13 @@ import lombok.extern.slf4j.Slf4j;
 
 /**
  * Handles document classification using multiple methods and consensus voting.
+ * Comprehend and Bedrock calls go through the shared {@link AwsLimiter} of each service,
+ * and Bedrock calls may be hedged by its {@link Hedger}. With
+ * {@code -Dhulft.comprehend.batch=true}, documents classified at the same time (as in
+ * multi-file uploads) share {@code BatchDetectEntities} calls of up to 25.
+ * With {@code -Dhulft.prompt.pack=true}, long documents are sent as the lines most
+ * relevant to the known document types' schemas (see {@link PromptPacker}) rather than
+ * their first characters.
  */
 @Slf4j
 @SuppressWarnings({
@@ -16,48 +23,185 @@ public class DocumentClassifier {
     private static final String UNKNOWN = "UNKNOWN";
     private static final String TYPE_KEY = "type";
     private static final String CONFIDENCE_KEY = "confidence";
+    private static final String MODEL_ID = "anthropic.claude-3-haiku-20240307-v1:0";
+    private static final String BATCH_DETECT = "BatchDetectEntities";
+    /** Documents per BatchDetectEntities call */
+    private static final int BATCH_SIZE = 25;
+    /** UTF-8 bytes BatchDetectEntities accepts per document */
+    private static final int BATCH_DOCUMENT_BYTES = 5000;
+    /** Characters of document text sent to DetectEntities */
+    private static final int COMPREHEND_CHARS = 5000;
+    /** Characters of document text in the Bedrock classification prompt */
+    private static final int BEDROCK_CHARS = 1000;
     
     private final software.amazon.awssdk.services.comprehend.ComprehendClient comprehendClient;
     private final software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient bedrockClient;
+    private final software.amazon.awssdk.services.comprehend.ComprehendAsyncClient comprehendAsyncClient;
+    private final software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient bedrockAsyncClient;
+    private final SchemaManager schemaManager;
+    private final PromptPacker.Cache packers;
+    /** Runs blocking batch calls when there is no async Comprehend client, or null */
+    private final StagePools stagePools;
+    private final AwsLimiter comprehendLimiter = AwsLimiter.forService("comprehend");
+    private final AwsLimiter bedrockLimiter = AwsLimiter.forService("bedrock");
+    private final Hedger bedrockHedger = Hedger.forService("bedrock");
+    private final MicroBatcher<String, java.util.Map<String, Object>> comprehendBatcher;
+    private final boolean packing = Boolean.getBoolean("hulft.prompt.pack");
     
     public DocumentClassifier(
             final software.amazon.awssdk.services.comprehend.ComprehendClient comprehendClient,
             final software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient bedrockClient) {
+        this(comprehendClient, bedrockClient, null, null, new SchemaManager(), null);
+    }
+    
+    /**
+     * Creates a classifier that also has async clients, so {@link #classifyAsync} does not
+     * hold a pool thread per AWS call.
+     *
+     * @param comprehendClient blocking Comprehend client
+     * @param bedrockClient blocking Bedrock client
+     * @param comprehendAsyncClient async Comprehend client, or null to use the stage pool
+     * @param bedrockAsyncClient async Bedrock client, or null to use the stage pool
+     * @param schemaManager schemas whose field names select the lines sent when packing
+     * @param stagePools pools whose Comprehend stage runs blocking {@code BatchDetectEntities}
+     *     calls, or null; batching needs either these or the async Comprehend client
+     */
+    public DocumentClassifier(
+            final software.amazon.awssdk.services.comprehend.ComprehendClient comprehendClient,
+            final software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient bedrockClient,
+            final software.amazon.awssdk.services.comprehend.ComprehendAsyncClient comprehendAsyncClient,
+            final software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient bedrockAsyncClient,
+            final SchemaManager schemaManager, final StagePools stagePools) {
         this.comprehendClient = comprehendClient;
         this.bedrockClient = bedrockClient;
+        this.comprehendAsyncClient = comprehendAsyncClient;
+        this.bedrockAsyncClient = bedrockAsyncClient;
+        this.schemaManager = schemaManager;
+        this.packers = new PromptPacker.Cache(schemaManager);
+        this.stagePools = stagePools;
+        final boolean batching = Boolean.getBoolean("hulft.comprehend.batch");
+        if (batching && comprehendAsyncClient == null && stagePools == null && log.isWarnEnabled()) {
+            log.warn("hulft.comprehend.batch needs an async Comprehend client or stage pools, calling DetectEntities per document");
+        }
+        this.comprehendBatcher = batching && (comprehendAsyncClient != null || stagePools != null)
+            ? createComprehendBatcher() : null;
+    }
+    
+    /** Creates the Comprehend batcher, waiting {@code hulft.comprehend.batch.windowMillis} (20). */
+    private MicroBatcher<String, java.util.Map<String, Object>> createComprehendBatcher() {
+        final MicroBatcher<String, java.util.Map<String, Object>> batcher = new MicroBatcher<>(BATCH_SIZE, BATCH_SIZE,
+            Long.getLong("hulft.comprehend.batch.windowMillis", 20L), text -> 1, this::comprehendBatch);
+        batcher.registerMetrics("comprehend.batch");
+        return batcher;
     }
     
-    @SuppressWarnings("PMD.AvoidCatchingGenericException")
     public java.util.Map<String, Object> classify(final String text) {
         final java.util.Map<String, Object> classification = new java.util.HashMap<>();
         
         // Method 1: Regex extraction
-        final String regexType = extractPurposeCode(text);
-        classification.put("regex", java.util.Map.of(TYPE_KEY, regexType, CONFIDENCE_KEY, UNKNOWN.equals(regexType) ? 0.0 : 1.0));
+        classification.put("regex", regexVote(text));
         
         // Method 2: AWS Comprehend
-        try {
-            final java.util.Map<String, Object> comprehendResult = classifyWithComprehend(text);
+        classification.put("comprehend", comprehendVote(text));
+        
+        // Method 3: AWS Bedrock (Claude)
+        classification.put("bedrock", bedrockVote(text));
+        
+        return classification;
+    }
+    
+    /**
+     * Classifies a document with the Comprehend and Bedrock calls running concurrently,
+     * as non-blocking calls when async clients are configured and otherwise each on its
+     * own stage pool.
+     *
+     * @param text document text
+     * @param pools stage pools
+     * @return future completed with the same classification as {@link #classify(String)}
+     */
+    public java.util.concurrent.CompletableFuture<java.util.Map<String, Object>> classifyAsync(
+            final String text, final StagePools pools) {
+        final java.util.concurrent.CompletableFuture<java.util.Map<String, Object>> bedrock = bedrockAsyncClient == null
+            ? pools.supply(StagePools.Stage.BEDROCK, () -> bedrockVote(text))
+            : bedrockLimiter.callAsync("InvokeModel", MODEL_ID, () -> bedrockHedger.hedge(() -> bedrockAsyncClient.invokeModel(bedrockRequest(text))))
+                .thenApply(DocumentClassifier::bedrockResult)
+                .exceptionally(e -> voteError("Bedrock", e));
+        return classifyAsync(text, pools, bedrock);
+    }
+    
+    /**
+     * Classifies a document with a Bedrock vote obtained elsewhere, such as from a
+     * combined classification and extraction call, concurrently with Comprehend.
+     *
+     * @param text document text
+     * @param pools stage pools
+     * @param bedrock future of the Bedrock vote, a map with {@code type} and {@code confidence}
+     * @return future completed with the classification
+     */
+    public java.util.concurrent.CompletableFuture<java.util.Map<String, Object>> classifyAsync(final String text,
+            final StagePools pools, final java.util.concurrent.CompletableFuture<java.util.Map<String, Object>> bedrock) {
+        final java.util.concurrent.CompletableFuture<java.util.Map<String, Object>> comprehend;
+        if (comprehendBatcher != null) {
+            comprehend = comprehendBatcher.submit(text).exceptionally(e -> voteError("Comprehend", e));
+        } else if (comprehendAsyncClient != null) {
+            comprehend = comprehendLimiter.callAsync("DetectEntities", null,
+                    () -> comprehendAsyncClient.detectEntities(comprehendRequest(text)))
+                .thenApply(DocumentClassifier::comprehendResult)
+                .exceptionally(e -> voteError("Comprehend", e));
+        } else {
+            comprehend = pools.supply(StagePools.Stage.COMPREHEND, () -> comprehendVote(text));
+        }
+        return comprehend.thenCombine(bedrock, (comprehendResult, bedrockResult) -> {
+            final java.util.Map<String, Object> classification = new java.util.HashMap<>();
+            classification.put("regex", regexVote(text));
             classification.put("comprehend", comprehendResult);
+            classification.put("bedrock", bedrockResult);
+            return classification;
+        });
+    }
+    
+    private java.util.Map<String, Object> regexVote(final String text) {
+        final String regexType = extractPurposeCode(text);
+        return java.util.Map.of(TYPE_KEY, regexType, CONFIDENCE_KEY, UNKNOWN.equals(regexType) ? 0.0 : 1.0);
+    }
+    
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    private java.util.Map<String, Object> comprehendVote(final String text) {
+        try {
+            return comprehendResult(comprehendLimiter.call("DetectEntities", null, () -> comprehendClient.detectEntities(comprehendRequest(text))));
         } catch (final Exception e) {
-            if (log.isErrorEnabled()) {
-                log.error("Comprehend classification failed", e);
-            }
-            classification.put("comprehend", java.util.Map.of("error", e.getMessage()));
+            return voteError("Comprehend", e);
         }
-        
-        // Method 3: AWS Bedrock (Claude)
+    }
+    
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    private java.util.Map<String, Object> bedrockVote(final String text) {
         try {
-            final java.util.Map<String, Object> bedrockResult = classifyWithBedrock(text);
-            classification.put("bedrock", bedrockResult);
+            return bedrockResult(bedrockLimiter.call("InvokeModel", MODEL_ID, () -> bedrockHedger.call(() -> bedrockClient.invokeModel(bedrockRequest(text)))));
         } catch (final Exception e) {
-            if (log.isErrorEnabled()) {
-                log.error("Bedrock classification failed", e);
-            }
-            classification.put("bedrock", java.util.Map.of("error", e.getMessage()));
+            return voteError("Bedrock", e);
         }
-        
-        return classification;
+    }
+    
+    /**
+     * Turns the answer of {@link FieldExtractor#classifyAndExtract} into a Bedrock vote.
+     *
+     * @param combined map with {@code type}, or with {@code error}
+     * @return the vote, weighted like a classification-only Bedrock call
+     */
+    public static java.util.Map<String, Object> combinedVote(final java.util.Map<String, Object> combined) {
+        return combined.get(TYPE_KEY) instanceof String type
+            ? java.util.Map.of(TYPE_KEY, type, CONFIDENCE_KEY, 0.95)
+            : java.util.Map.of("error", String.valueOf(combined.get("error")));
+    }
+    
+    private static java.util.Map<String, Object> voteError(final String method, final Throwable thrown) {
+        final Throwable e = thrown instanceof java.util.concurrent.CompletionException && thrown.getCause() != null
+            ? thrown.getCause() : thrown;
+        if (log.isErrorEnabled()) {
+            log.error("{} classification failed", method, e);
+        }
+        return java.util.Map.of("error", String.valueOf(e.getMessage()));
     }
     
     @SuppressWarnings("PMD.NPathComplexity") // Consensus voting algorithm requires multiple conditions
@@ -110,18 +254,65 @@ public class DocumentClassifier {
         return UNKNOWN;
     }
     
-    private java.util.Map<String, Object> classifyWithComprehend(final String text) {
-        final software.amazon.awssdk.services.comprehend.model.DetectEntitiesRequest request = 
-            software.amazon.awssdk.services.comprehend.model.DetectEntitiesRequest.builder()
-                .text(text.substring(0, Math.min(5000, text.length())))
+    /** Returns the part of a document that fits a request, the most relevant lines when packing. */
+    private String documentText(final String text, final int maxChars) {
+        return packing ? packers.forTypes(schemaManager.getDocumentTypes()).pack(text, maxChars) : text.substring(0, Math.min(maxChars, text.length()));
+    }
+    
+    private software.amazon.awssdk.services.comprehend.model.DetectEntitiesRequest comprehendRequest(final String text) {
+        return software.amazon.awssdk.services.comprehend.model.DetectEntitiesRequest.builder()
+            .text(documentText(text, COMPREHEND_CHARS))
+            .languageCode("en")
+            .build();
+    }
+    
+    /** Detects entities for a batch of documents and maps each result back to its document. */
+    private java.util.concurrent.CompletableFuture<java.util.List<java.util.Map<String, Object>>> comprehendBatch(
+            final java.util.List<String> texts) {
+        final software.amazon.awssdk.services.comprehend.model.BatchDetectEntitiesRequest request =
+            software.amazon.awssdk.services.comprehend.model.BatchDetectEntitiesRequest.builder()
+                .textList(texts.stream().map(text -> truncateUtf8(documentText(text, BATCH_DOCUMENT_BYTES))).toList())
                 .languageCode("en")
                 .build();
-        
-        final software.amazon.awssdk.services.comprehend.model.DetectEntitiesResponse response = 
-            comprehendClient.detectEntities(request);
-        
+        final java.util.concurrent.CompletableFuture<software.amazon.awssdk.services.comprehend.model.BatchDetectEntitiesResponse> response =
+            comprehendAsyncClient != null
+                ? comprehendLimiter.callAsync(BATCH_DETECT, null, () -> comprehendAsyncClient.batchDetectEntities(request))
+                : stagePools.supply(StagePools.Stage.COMPREHEND,
+                    () -> comprehendLimiter.call(BATCH_DETECT, null, () -> comprehendClient.batchDetectEntities(request)));
+        return response.thenApply(batch -> {
+            final java.util.List<java.util.Map<String, Object>> votes = new java.util.ArrayList<>(
+                java.util.Collections.nCopies(texts.size(), java.util.Map.of("error", "Missing from batch response")));
+            batch.resultList().forEach(item -> votes.set(item.index(), entityVote(item.entities())));
+            batch.errorList().forEach(error -> votes.set(error.index(),
+                java.util.Map.of("error", error.errorCode() + ": " + error.errorMessage())));
+            return votes;
+        });
+    }
+    
+    /** Cuts text to the batch API's per-document size without splitting a character. */
+    private static String truncateUtf8(final String text) {
+        final byte[] bytes = text.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        if (bytes.length <= BATCH_DOCUMENT_BYTES) {
+            return text;
+        }
+        final java.nio.charset.CharsetDecoder decoder = java.nio.charset.StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(java.nio.charset.CodingErrorAction.IGNORE);
+        try {
+            return decoder.decode(java.nio.ByteBuffer.wrap(bytes, 0, BATCH_DOCUMENT_BYTES)).toString();
+        } catch (final java.nio.charset.CharacterCodingException e) {
+            throw new IllegalStateException("Ignoring decoder failed", e);
+        }
+    }
+    
+    private static java.util.Map<String, Object> comprehendResult(
+            final software.amazon.awssdk.services.comprehend.model.DetectEntitiesResponse response) {
+        return entityVote(response.entities());
+    }
+    
+    private static java.util.Map<String, Object> entityVote(
+            final java.util.List<software.amazon.awssdk.services.comprehend.model.Entity> entities) {
         // Simple heuristic based on entities
-        final long quantityCount = response.entities().stream()
+        final long quantityCount = entities.stream()
             .filter(e -> e.type() == software.amazon.awssdk.services.comprehend.model.EntityType.QUANTITY)
             .count();
         
@@ -129,8 +320,7 @@ public class DocumentClassifier {
         return java.util.Map.of(TYPE_KEY, docType, CONFIDENCE_KEY, 0.5);
     }
     
-    @SuppressWarnings("PMD.AvoidCatchingGenericException")
-    private java.util.Map<String, Object> classifyWithBedrock(final String text) {
+    private software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest bedrockRequest(final String text) {
         final String prompt = String.format(
             "Classify this document as exactly one of: SCHEDULE_PRODUCTION, INVOICE_PRODUCTION, PURCHASE_ORDER, CUSTOMS_DECLARATION\n\n" +
             "Guidelines:\n" +
@@ -139,7 +329,7 @@ public class DocumentClassifier {
             "- SCHEDULE_PRODUCTION: Contains production schedule, quantities, dates, line assignments\n" +
             "- CUSTOMS_DECLARATION: Contains customs info, origin, destination, declared items\n\n" +
             "Document text:\n%s\n\nRespond with ONLY the classification type.",
-            text.substring(0, Math.min(1000, text.length()))
+            documentText(text, BEDROCK_CHARS)
         );
         
         final String requestBody = gson.toJson(java.util.Map.of(
@@ -151,13 +341,14 @@ public class DocumentClassifier {
             ))
         ));
         
-        final software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest request = 
-            software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest.builder()
-                .modelId("anthropic.claude-3-haiku-20240307-v1:0")
-                .body(software.amazon.awssdk.core.SdkBytes.fromUtf8String(requestBody))
-                .build();
-        
-        final software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse response = bedrockClient.invokeModel(request);
+        return software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest.builder()
+            .modelId(MODEL_ID)
+            .body(software.amazon.awssdk.core.SdkBytes.fromUtf8String(requestBody))
+            .build();
+    }
+    
+    private static java.util.Map<String, Object> bedrockResult(
+            final software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse response) {
         final String responseBody = response.body().asUtf8String();
         final java.util.Map<String, Object> responseMap = gson.fromJson(responseBody, java.util.Map.class);
         final java.util.List<java.util.Map<String, Object>> content = (java.util.List<java.util.Map<String, Object>>) responseMap.get("content");
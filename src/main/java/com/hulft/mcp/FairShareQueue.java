@@ -0,0 +1,354 @@
+package com.hulft.mcp;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded work queue that shares workers fairly between sessions.
+ * Tasks are ordered by self-clocked weighted fair queuing: each task gets a virtual
+ * finish tag of {@code max(now, session's last tag) + cost / weight}, and the task with
+ * the smallest tag runs next. A session that queues hundreds of large jobs therefore
+ * only delays a small job from another session by about one job of its own, while
+ * still using every idle worker when nobody else is waiting. A single session may
+ * hold at most {@code sessionLimit} queued tasks, so it cannot fill the queue and get
+ * everyone else refused.
+ * Used as the work queue of a {@link java.util.concurrent.ThreadPoolExecutor}; tasks
+ * that are not a {@link Task} are queued for the default session at normal priority.
+ */
+public class FairShareQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+    /** Session of tasks submitted without one */
+    public static final String DEFAULT_SESSION = "default";
+
+    private final int capacity;
+    private final int sessionLimit;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final PriorityQueue<Queued> heap = new PriorityQueue<>();
+    private final Map<String, Session> sessions = new HashMap<>();
+    private double virtualTime;
+    private long sequence;
+
+    /**
+     * Scheduling hint for a job.
+     */
+    public enum Priority {
+        /** Interactive work, served as if four times smaller */
+        HIGH(4.0),
+        /** Default */
+        NORMAL(1.0),
+        /** Bulk work, served as if four times larger */
+        LOW(0.25);
+
+        final double weight;
+
+        Priority(final double weight) {
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * A runnable tagged with its session, priority and cost.
+     */
+    public static class Task implements Runnable {
+        /** Session or tenant the task belongs to */
+        public final String session;
+        /** Priority hint */
+        public final Priority priority;
+        /** Relative cost, e.g. megabytes of input; at least 1 */
+        public final double cost;
+        private final Runnable delegate;
+
+        public Task(final String session, final Priority priority, final double cost, final Runnable delegate) {
+            this.session = session == null ? DEFAULT_SESSION : session;
+            this.priority = priority == null ? Priority.NORMAL : priority;
+            this.cost = Math.max(1.0, cost);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void run() {
+            delegate.run();
+        }
+    }
+
+    /** Per-session scheduling state. */
+    private static final class Session {
+        double lastFinish;
+        int queued;
+    }
+
+    /** A queued task with its finish tag. */
+    private static final class Queued implements Comparable<Queued> {
+        final Task task;
+        final double finish;
+        final long seq;
+
+        Queued(final Task task, final double finish, final long seq) {
+            this.task = task;
+            this.finish = finish;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(final Queued other) {
+            final int byFinish = Double.compare(finish, other.finish);
+            return byFinish != 0 ? byFinish : Long.compare(seq, other.seq);
+        }
+    }
+
+    /**
+     * Creates a fair-share queue.
+     *
+     * @param capacity total tasks that may wait
+     * @param sessionLimit tasks one session may have waiting
+     */
+    public FairShareQueue(final int capacity, final int sessionLimit) {
+        this.capacity = capacity;
+        this.sessionLimit = Math.max(1, Math.min(sessionLimit, capacity));
+    }
+
+    /**
+     * Returns whether a task for a session would be accepted right now.
+     *
+     * @param session the session, or null for the default session
+     * @return true if neither the queue nor the session's share is full
+     */
+    public boolean accepts(final String session) {
+        lock.lock();
+        try {
+            return hasRoom(session == null ? DEFAULT_SESSION : session);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of sessions with queued tasks.
+     *
+     * @return waiting session count
+     */
+    public int waitingSessions() {
+        lock.lock();
+        try {
+            return (int) sessions.values().stream().filter(s -> s.queued > 0).count();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(final Runnable runnable) {
+        final Task task = asTask(runnable);
+        lock.lock();
+        try {
+            if (!hasRoom(task.session)) {
+                return false;
+            }
+            enqueue(task);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(final Runnable runnable, final long timeout, final TimeUnit unit) throws InterruptedException {
+        final Task task = asTask(runnable);
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (!hasRoom(task.session)) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            enqueue(task);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(final Runnable runnable) throws InterruptedException {
+        final Task task = asTask(runnable);
+        lock.lockInterruptibly();
+        try {
+            while (!hasRoom(task.session)) {
+                notFull.await();
+            }
+            enqueue(task);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return heap.isEmpty() ? null : dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (heap.isEmpty()) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (heap.isEmpty()) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            return heap.isEmpty() ? null : heap.peek().task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return heap.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity - heap.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(final Collection<? super Runnable> target) {
+        return drainTo(target, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(final Collection<? super Runnable> target, final int maxElements) {
+        lock.lock();
+        try {
+            int drained = 0;
+            while (drained < maxElements && !heap.isEmpty()) {
+                target.add(dequeue());
+                drained++;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(final Object task) {
+        lock.lock();
+        try {
+            final Iterator<Queued> it = heap.iterator();
+            while (it.hasNext()) {
+                final Queued queued = it.next();
+                if (queued.task == task || queued.task.delegate == task) {
+                    it.remove();
+                    sessions.get(queued.task.session).queued--;
+                    notFull.signalAll();
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Iterates over a snapshot, in no particular order. */
+    @Override
+    public Iterator<Runnable> iterator() {
+        lock.lock();
+        try {
+            final List<Runnable> snapshot = new ArrayList<>(heap.size());
+            heap.forEach(queued -> snapshot.add(queued.task));
+            return snapshot.iterator();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static Task asTask(final Runnable runnable) {
+        return runnable instanceof Task task ? task : new Task(DEFAULT_SESSION, Priority.NORMAL, 1.0, runnable);
+    }
+
+    private boolean hasRoom(final String session) {
+        final Session state = sessions.get(session);
+        return heap.size() < capacity && (state == null || state.queued < sessionLimit);
+    }
+
+    private void enqueue(final Task task) {
+        if (sessions.size() > 2 * heap.size() + 16) {
+            sessions.values().removeIf(state -> state.queued == 0 && state.lastFinish <= virtualTime);
+        }
+        final Session state = sessions.computeIfAbsent(task.session, key -> new Session());
+        final double start = Math.max(virtualTime, state.lastFinish);
+        state.lastFinish = start + task.cost / task.priority.weight;
+        state.queued++;
+        heap.add(new Queued(task, state.lastFinish, sequence++));
+        notEmpty.signal();
+    }
+
+    private Task dequeue() {
+        final Queued next = heap.poll();
+        virtualTime = next.finish;
+        final Session state = sessions.get(next.task.session);
+        state.queued--;
+        if (state.queued == 0 && state.lastFinish <= virtualTime) {
+            // Idle and caught up: forget it so the map only holds active sessions
+            sessions.remove(next.task.session);
+        }
+        notFull.signalAll();
+        return next.task;
+    }
+}
@@ -4,77 +4,738 @@ import com.google.gson.Gson;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * Extracts structured fields from documents using AWS Bedrock.
+ * Extracts structured fields from documents using AWS Bedrock, through the shared
+ * Bedrock {@link AwsLimiter} and {@link Hedger}. {@link #classifyAndExtract} asks for
+ * the document type and its fields in one call, offering every known schema.
+ * With {@code -Dhulft.bedrock.batch=true}, {@link #extractFieldsBatched} collects small
+ * documents for a few milliseconds and extracts them together in one call.
+ * With {@code -Dhulft.bedrock.stream=true} and the async client,
+ * {@link #extractFieldsStreaming} reads the answer as it is generated, reporting fields
+ * as they complete and hanging up once the JSON object is closed or every schema field
+ * is filled. Uploads are batched rather than streamed when both flags are set, which
+ * is logged at startup.
+ * With {@code -Dhulft.bedrock.chunked=true}, {@link #extractFieldsChunked} splits
+ * documents too long for one prompt into overlapping chunks, extracts each chunk in
+ * parallel and merges the answers. With {@code -Dhulft.prompt.pack=true}, documents
+ * longer than a prompt's budget contribute the lines most relevant to the schema
+ * (see {@link PromptPacker}) rather than their first characters.
  */
 @Slf4j
 public class FieldExtractor {
     @SuppressWarnings("PMD.FieldNamingConventions") // Gson instance, not primitive constant
     private static final Gson gson = new Gson();
+    private static final String INVOKE_MODEL = "InvokeModel";
+    private static final String INVOKE_MODEL_STREAM = "InvokeModelWithResponseStream";
+    /** Member of a chunk answer holding the model's confidence in each field */
+    private static final String CONFIDENCE = "_confidence";
+    /** Member of merged chunk fields listing the parts whose extraction failed */
+    public static final String PARTIAL_CHUNKS = "_partialChunks";
+    private static final String MODEL_ID = "anthropic.claude-3-haiku-20240307-v1:0";
+    /** Document text beyond this is cut off in prompts, so longer documents are not batched */
+    private static final int MAX_DOCUMENT_CHARS = 2000;
+    /** Answer tokens allowed per document, in a single or a batched call */
+    private static final int MAX_TOKENS_PER_DOCUMENT = 1000;
+    /** Most answer tokens a batched call asks for */
+    private static final int MAX_BATCH_TOKENS = 4096;
     
     private final software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient bedrockClient;
+    private final software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient bedrockAsyncClient;
     private final SchemaManager schemaManager;
+    private final PromptPacker.Cache packers;
+    private final StagePools stagePools;
+    private final AwsLimiter bedrockLimiter = AwsLimiter.forService("bedrock");
+    private final Hedger bedrockHedger = Hedger.forService("bedrock");
+    private final MicroBatcher<BatchItem, java.util.Map<String, Object>> batcher;
+    private final boolean streaming;
+    private final boolean chunked;
+    private final boolean packing;
+    private final int chunkChars;
+    private final int chunkOverlap;
+    private final int maxChunks;
+    
+    /** One document waiting in a batch. */
+    private record BatchItem(String text, String docType) {
+    }
+    
+    public FieldExtractor(
+            final software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient bedrockClient,
+            final SchemaManager schemaManager) {
+        this(bedrockClient, null, schemaManager);
+    }
     
     public FieldExtractor(
             final software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient bedrockClient,
+            final software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient bedrockAsyncClient,
             final SchemaManager schemaManager) {
+        this(bedrockClient, bedrockAsyncClient, schemaManager, null);
+    }
+    
+    /**
+     * Creates an extractor whose blocking Bedrock calls, when not made with the async
+     * client, run on the Bedrock stage pool.
+     *
+     * @param bedrockClient blocking Bedrock client
+     * @param bedrockAsyncClient async Bedrock client, or null
+     * @param schemaManager extraction schemas
+     * @param stagePools stage pools, or null to make blocking calls on the calling thread
+     */
+    public FieldExtractor(
+            final software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient bedrockClient,
+            final software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient bedrockAsyncClient,
+            final SchemaManager schemaManager, final StagePools stagePools) {
         this.bedrockClient = bedrockClient;
+        this.stagePools = stagePools;
+        this.bedrockAsyncClient = bedrockAsyncClient;
         this.schemaManager = schemaManager;
+        this.packers = new PromptPacker.Cache(schemaManager);
+        this.batcher = Boolean.getBoolean("hulft.bedrock.batch") ? createBatcher() : null;
+        this.streaming = Boolean.getBoolean("hulft.bedrock.stream");
+        this.chunked = Boolean.getBoolean("hulft.bedrock.chunked");
+        this.packing = Boolean.getBoolean("hulft.prompt.pack");
+        this.chunkChars = Math.max(100, Integer.getInteger("hulft.bedrock.chunk.chars", MAX_DOCUMENT_CHARS));
+        this.chunkOverlap = Math.min(chunkChars / 2, Math.max(0, Integer.getInteger("hulft.bedrock.chunk.overlapChars", 200)));
+        this.maxChunks = Math.max(1, Integer.getInteger("hulft.bedrock.chunk.max", 16));
+        if (batcher != null && streaming && log.isWarnEnabled()) {
+            log.warn("hulft.bedrock.batch and hulft.bedrock.stream are both set; uploads are batched, not streamed");
+        }
+    }
+    
+    /**
+     * Creates the batcher from {@code hulft.bedrock.batch.windowMillis} (20),
+     * {@code .maxDocuments} (4) and {@code .maxChars} (8000, document text per batch).
+     * Batches hold at most as many documents as fit the batch answer budget with the
+     * same answer tokens each as a single call.
+     */
+    private MicroBatcher<BatchItem, java.util.Map<String, Object>> createBatcher() {
+        final MicroBatcher<BatchItem, java.util.Map<String, Object>> created = new MicroBatcher<>(
+            Math.max(1, Math.min(MAX_BATCH_TOKENS / MAX_TOKENS_PER_DOCUMENT,
+                Integer.getInteger("hulft.bedrock.batch.maxDocuments", MAX_BATCH_TOKENS / MAX_TOKENS_PER_DOCUMENT))),
+            Integer.getInteger("hulft.bedrock.batch.maxChars", 8000),
+            Long.getLong("hulft.bedrock.batch.windowMillis", 20L),
+            item -> item.text().length(),
+            this::extractBatch);
+        created.registerMetrics("bedrock.batch");
+        return created;
+    }
+    
+    /**
+     * Returns whether small documents are extracted in batches.
+     *
+     * @return true with batching enabled
+     */
+    public boolean isBatching() {
+        return batcher != null;
+    }
+    
+    /**
+     * Returns whether extraction can run without blocking a thread.
+     *
+     * @return true with an async Bedrock client
+     */
+    public boolean isAsync() {
+        return bedrockAsyncClient != null;
+    }
+    
+    /**
+     * Returns whether answers are streamed.
+     *
+     * @return true with streaming enabled and an async Bedrock client
+     */
+    public boolean isStreaming() {
+        return streaming && bedrockAsyncClient != null;
+    }
+    
+    /**
+     * Returns whether a document is extracted in chunks.
+     *
+     * @param text document text
+     * @return true with chunking enabled and text longer than one chunk
+     */
+    public boolean isChunked(final String text) {
+        return chunked && text != null && text.length() > chunkChars;
+    }
+    
+    /**
+     * Returns how a document's text is put into prompts, so saved fields can be told
+     * apart from fields extracted another way.
+     *
+     * @param text document text
+     * @return {@code chunked}, {@code packed} or {@code whole}
+     */
+    public String mode(final String text) {
+        if (isChunked(text)) {
+            return "chunked";
+        }
+        return packing && text != null && text.length() > MAX_DOCUMENT_CHARS ? "packed" : "whole";
     }
     
     @SuppressWarnings("PMD.AvoidCatchingGenericException")
     public java.util.Map<String, Object> extractFields(final String text, final String docType) {
         try {
-            final String schema = schemaManager.getSchema(docType);
-            final String prompt = String.format(
-                "Extract fields from this document and return ONLY a JSON object (no markdown, no explanation).\n\nSchema:\n%s\n\nDocument:\n%s\n\nJSON:",
-                schema, text.substring(0, Math.min(2000, text.length()))
-            );
-            
-            final String requestBody = gson.toJson(java.util.Map.of(
-                "anthropic_version", "bedrock-2023-05-31",
-                "max_tokens", 1000,
-                "messages", java.util.List.of(java.util.Map.of(
-                    "role", "user",
-                    "content", prompt
-                ))
-            ));
-            
-            final software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest request = 
-                software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest.builder()
-                    .modelId("anthropic.claude-3-haiku-20240307-v1:0")
-                    .body(software.amazon.awssdk.core.SdkBytes.fromUtf8String(requestBody))
-                    .build();
-            
-            final software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse response = bedrockClient.invokeModel(request);
-            final String responseBody = response.body().asUtf8String();
-            final java.util.Map<String, Object> responseMap = gson.fromJson(responseBody, java.util.Map.class);
-            final java.util.List<java.util.Map<String, Object>> content = (java.util.List<java.util.Map<String, Object>>) responseMap.get("content");
-            String extractedText = (String) content.get(0).get("text");
-            
-            // Extract JSON from response (handle markdown code blocks)
-            extractedText = extractedText.trim();
-            if (extractedText.startsWith("```")) {
-                final int start = extractedText.indexOf('{');
-                final int end = extractedText.lastIndexOf('}');
-                if (start >= 0 && end > start) {
-                    extractedText = extractedText.substring(start, end + 1);
+            return parseFields(invoke(buildRequest(text, docType)));
+        } catch (final Exception e) {
+            return failed(e);
+        }
+    }
+    
+    /**
+     * Classifies a document and extracts its fields in one Bedrock call. The prompt lists
+     * every document type with its schema, and the model answers with the type and the
+     * fields of that type's schema.
+     *
+     * @param text document text
+     * @return map with {@code type} and {@code fields}, or with {@code error} on failure
+     */
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    public java.util.Map<String, Object> classifyAndExtract(final String text) {
+        try {
+            return toCombined(parseFields(invoke(buildCombinedRequest(text))));
+        } catch (final Exception e) {
+            return failed(e);
+        }
+    }
+    
+    /**
+     * Classifies a document and extracts its fields in one call with the async Bedrock
+     * client, like {@link #classifyAndExtract}.
+     *
+     * @param text document text
+     * @return future completed with {@code type} and {@code fields}, or with {@code error}
+     * @throws IllegalStateException if no async client is configured
+     */
+    public java.util.concurrent.CompletableFuture<java.util.Map<String, Object>> classifyAndExtractAsync(final String text) {
+        return invokeAsync(buildCombinedRequest(text))
+            .thenApply(response -> toCombined(parseFields(response)))
+            .exceptionally(e -> failed(e instanceof java.util.concurrent.CompletionException && e.getCause() != null
+                ? e.getCause() : e));
+    }
+    
+    /**
+     * Extracts fields, batching the document with others when batching is enabled and
+     * it is short enough to be sent whole. A document missing from a batch answer, or in
+     * a batch whose call failed or whose answer could not be parsed, is extracted on its
+     * own. Failures complete the future normally with an error map.
+     *
+     * @param text document text
+     * @param docType document type whose schema to use
+     * @return future completed with the extracted fields
+     */
+    public java.util.concurrent.CompletableFuture<java.util.Map<String, Object>> extractFieldsBatched(
+            final String text, final String docType) {
+        if (batcher == null || text.length() > MAX_DOCUMENT_CHARS) {
+            return extractAlone(text, docType);
+        }
+        return batcher.submit(new BatchItem(text, docType))
+            .thenCompose(fields -> fields != null
+                ? java.util.concurrent.CompletableFuture.completedFuture(fields)
+                : extractAlone(text, docType))
+            .exceptionally(e -> failed(e instanceof java.util.concurrent.CompletionException && e.getCause() != null
+                ? e.getCause() : e));
+    }
+    
+    private java.util.concurrent.CompletableFuture<java.util.Map<String, Object>> extractAlone(
+            final String text, final String docType) {
+        return isAsync()
+            ? extractFieldsAsync(text, docType)
+            : onBedrockStage(() -> extractFields(text, docType));
+    }
+    
+    /** Runs a blocking Bedrock call on the Bedrock stage, or on the caller without stage pools. */
+    private <T> java.util.concurrent.CompletableFuture<T> onBedrockStage(final java.util.function.Supplier<T> call) {
+        if (stagePools != null) {
+            return stagePools.supply(StagePools.Stage.BEDROCK, call);
+        }
+        try {
+            return java.util.concurrent.CompletableFuture.completedFuture(call.get());
+        } catch (final RuntimeException e) {
+            return java.util.concurrent.CompletableFuture.failedFuture(e);
+        }
+    }
+    
+    /**
+     * Sends one prompt for a batch and splits the answer, with null for documents it
+     * lacks. If the call fails or the answer (possibly cut off) does not parse, every
+     * document gets null and is extracted on its own.
+     */
+    private java.util.concurrent.CompletableFuture<java.util.List<java.util.Map<String, Object>>> extractBatch(
+            final java.util.List<BatchItem> batch) {
+        if (batch.size() == 1) {
+            return extractAlone(batch.get(0).text(), batch.get(0).docType()).thenApply(java.util.Collections::singletonList);
+        }
+        final software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest request = buildBatchRequest(batch);
+        final java.util.concurrent.CompletableFuture<software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse> response =
+            isAsync() ? invokeAsync(request) : onBedrockStage(() -> invoke(request));
+        return response.thenApply(answer -> {
+            final java.util.Map<String, Object> byDocument = parseFields(answer);
+            final java.util.List<java.util.Map<String, Object>> results = new java.util.ArrayList<>();
+            for (int i = 1; i <= batch.size(); i++) {
+                final Object fields = byDocument == null ? null : byDocument.get(String.valueOf(i));
+                @SuppressWarnings("unchecked")
+                final java.util.Map<String, Object> documentFields =
+                    fields instanceof java.util.Map ? (java.util.Map<String, Object>) fields : null;
+                results.add(documentFields);
+            }
+            return results;
+        }).exceptionally(e -> {
+            if (log.isWarnEnabled()) {
+                log.warn("Bedrock batch of {} failed, extracting its documents one by one: {}", batch.size(), e.getMessage());
+            }
+            return java.util.Collections.nCopies(batch.size(), null);
+        });
+    }
+    
+    private software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse invoke(
+            final software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest request) {
+        return bedrockLimiter.call(INVOKE_MODEL, request.modelId(), () -> bedrockHedger.call(() -> bedrockClient.invokeModel(request)));
+    }
+    
+    private java.util.concurrent.CompletableFuture<software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse> invokeAsync(
+            final software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest request) {
+        if (bedrockAsyncClient == null) {
+            throw new IllegalStateException("No async Bedrock client configured");
+        }
+        return bedrockLimiter.callAsync(INVOKE_MODEL, request.modelId(),
+            () -> bedrockHedger.hedge(() -> bedrockAsyncClient.invokeModel(request)));
+    }
+    
+    /**
+     * Extracts fields with the async Bedrock client. Failures complete the future
+     * normally with an error map, like {@link #extractFields}.
+     *
+     * @param text document text
+     * @param docType document type whose schema to use
+     * @return future completed with the extracted fields
+     * @throws IllegalStateException if no async client is configured
+     */
+    public java.util.concurrent.CompletableFuture<java.util.Map<String, Object>> extractFieldsAsync(
+            final String text, final String docType) {
+        return invokeAsync(buildRequest(text, docType))
+            .thenApply(FieldExtractor::parseFields)
+            .exceptionally(e -> failed(e instanceof java.util.concurrent.CompletionException && e.getCause() != null
+                ? e.getCause() : e));
+    }
+    
+    /**
+     * Extracts fields from a streamed answer. Each top-level field is parsed as soon as
+     * it is complete and the fields so far are passed to {@code onPartial}; the stream is
+     * cancelled once the JSON object closes or all schema fields are present, so trailing
+     * tokens are not waited for; a schema without fields only stops at the closing
+     * brace. Streamed calls are rate limited but not hedged, since a second attempt
+     * would report the same fields again. If the answer is cut off or the stream fails
+     * part way, the fields completed before are returned. Failures before any field
+     * complete the future normally with an error map.
+     *
+     * @param text document text
+     * @param docType document type whose schema to use
+     * @param onPartial receives a snapshot of the fields after each new one; may be null
+     * @return future completed with the extracted fields
+     * @throws IllegalStateException if no async client is configured
+     */
+    public java.util.concurrent.CompletableFuture<java.util.Map<String, Object>> extractFieldsStreaming(
+            final String text, final String docType,
+            final java.util.function.Consumer<java.util.Map<String, Object>> onPartial) {
+        if (bedrockAsyncClient == null) {
+            throw new IllegalStateException("No async Bedrock client configured");
+        }
+        final software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest request = buildRequest(text, docType);
+        final java.util.List<String> expected = schemaManager.getFieldNames(docType);
+        return bedrockLimiter.callAsync(INVOKE_MODEL_STREAM, request.modelId(), () -> stream(request, expected, onPartial))
+            .exceptionally(e -> failed(e instanceof java.util.concurrent.CompletionException && e.getCause() != null
+                ? e.getCause() : e));
+    }
+    
+    private java.util.concurrent.CompletableFuture<java.util.Map<String, Object>> stream(
+            final software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest request,
+            final java.util.List<String> expected,
+            final java.util.function.Consumer<java.util.Map<String, Object>> onPartial) {
+        final java.util.concurrent.CompletableFuture<java.util.Map<String, Object>> result =
+            new java.util.concurrent.CompletableFuture<>();
+        final JsonObjectStream json = new JsonObjectStream();
+        final software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamResponseHandler handler =
+            software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamResponseHandler.builder()
+                .onEventStream(events -> events.subscribe(new org.reactivestreams.Subscriber<
+                        software.amazon.awssdk.services.bedrockruntime.model.ResponseStream>() {
+                    private org.reactivestreams.Subscription subscription;
+                    
+                    @Override
+                    public void onSubscribe(final org.reactivestreams.Subscription s) {
+                        subscription = s;
+                        s.request(Long.MAX_VALUE);
+                    }
+                    
+                    @Override
+                    public void onNext(final software.amazon.awssdk.services.bedrockruntime.model.ResponseStream event) {
+                        if (result.isDone()
+                                || !(event instanceof software.amazon.awssdk.services.bedrockruntime.model.PayloadPart part)
+                                || !json.feed(textDelta(part))) {
+                            return;
+                        }
+                        final java.util.Map<String, Object> fields = new java.util.LinkedHashMap<>(json.fields());
+                        if (onPartial != null) {
+                            onPartial.accept(fields);
+                        }
+                        if (json.isClosed() || !expected.isEmpty() && fields.keySet().containsAll(expected)) {
+                            // Everything asked for has arrived; stop paying for the rest
+                            result.complete(fields);
+                            subscription.cancel();
+                        }
+                    }
+                    
+                    @Override
+                    public void onError(final Throwable t) {
+                        fail(result, json, t);
+                    }
+                    
+                    @Override
+                    public void onComplete() {
+                        finish(result, json);
+                    }
+                }))
+                .onError(t -> fail(result, json, t))
+                .build();
+        final java.util.concurrent.CompletableFuture<Void> call = bedrockAsyncClient.invokeModelWithResponseStream(
+            software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamRequest.builder()
+                .modelId(request.modelId())
+                .body(request.body())
+                .build(),
+            handler);
+        call.whenComplete((ignored, error) -> {
+            if (error == null) {
+                finish(result, json);
+            } else {
+                fail(result, json, error);
+            }
+        });
+        // Hang up on early completion; a no-op once the call has ended
+        result.whenComplete((fields, error) -> call.cancel(true));
+        return result;
+    }
+    
+    /** Completes a stream that ended on its own with whatever fields it produced. */
+    private static void finish(final java.util.concurrent.CompletableFuture<java.util.Map<String, Object>> result,
+            final JsonObjectStream json) {
+        if (json.fields().isEmpty()) {
+            result.completeExceptionally(new IllegalStateException("Streamed response has no JSON fields"));
+        } else {
+            result.complete(new java.util.LinkedHashMap<>(json.fields()));
+        }
+    }
+    
+    /** Completes a stream that broke off with the fields that arrived before, if any, else with the error. */
+    private static void fail(final java.util.concurrent.CompletableFuture<java.util.Map<String, Object>> result,
+            final JsonObjectStream json, final Throwable error) {
+        if (json.fields().isEmpty()) {
+            result.completeExceptionally(error);
+            return;
+        }
+        if (!result.isDone() && log.isWarnEnabled()) {
+            log.warn("Bedrock stream failed after {} fields: {}", json.fields().size(), error.getMessage());
+        }
+        result.complete(new java.util.LinkedHashMap<>(json.fields()));
+    }
+    
+    /** Returns the text of a {@code content_block_delta} event, or null for other events. */
+    private static String textDelta(final software.amazon.awssdk.services.bedrockruntime.model.PayloadPart part) {
+        final java.util.Map<?, ?> event = gson.fromJson(part.bytes().asUtf8String(), java.util.Map.class);
+        return event != null && "content_block_delta".equals(event.get("type"))
+            && event.get("delta") instanceof java.util.Map<?, ?> delta && delta.get("text") instanceof String text
+            ? text : null;
+    }
+    
+    /**
+     * Extracts fields from a long document in chunks. The text is split into chunks of
+     * {@code hulft.bedrock.chunk.chars} (2000) overlapping by {@code .overlapChars} (200),
+     * at most {@code .max} (16) of them, and every chunk is extracted at the same time
+     * through the rate limiter. The answers are merged per schema field: array items
+     * from all chunks are concatenated, dropping an item only when the previous chunk
+     * returned it too and its values lie in the text the two chunks share, and every
+     * other field takes the value the model was most confident of, the earlier chunk
+     * winning ties. Chunks that fail are left out and their part numbers listed under
+     * {@link #PARTIAL_CHUNKS}; the call fails only if every chunk does, completing the
+     * future normally with an error map.
+     *
+     * @param text document text
+     * @param docType document type whose schema to use
+     * @return future completed with the merged fields
+     */
+    public java.util.concurrent.CompletableFuture<java.util.Map<String, Object>> extractFieldsChunked(
+            final String text, final String docType) {
+        if (!isChunked(text)) {
+            return extractAlone(text, docType);
+        }
+        final java.util.List<int[]> chunks = split(text);
+        final java.util.List<java.util.concurrent.CompletableFuture<java.util.Map<String, Object>>> parts =
+            new java.util.ArrayList<>();
+        final java.util.List<String> overlaps = new java.util.ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            final int[] chunk = chunks.get(i);
+            overlaps.add(i == 0 ? "" : text.substring(chunk[0], Math.max(chunk[0], chunks.get(i - 1)[1])));
+            final software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest request =
+                buildChunkRequest(text.substring(chunk[0], chunk[1]), i + 1, chunks.size(), docType);
+            final java.util.concurrent.CompletableFuture<software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse> response =
+                isAsync() ? invokeAsync(request) : onBedrockStage(() -> invoke(request));
+            parts.add(response.thenApply(FieldExtractor::parseFields).exceptionally(e -> {
+                if (log.isWarnEnabled()) {
+                    log.warn("Bedrock extraction of a {} chunk failed: {}", docType, e.getMessage());
+                }
+                return null;
+            }));
+        }
+        final java.util.List<String> schemaFields = schemaManager.getFieldNames(docType);
+        return java.util.concurrent.CompletableFuture.allOf(parts.toArray(new java.util.concurrent.CompletableFuture<?>[0]))
+            .thenApply(done -> {
+                final java.util.List<java.util.Map<String, Object>> answers = new java.util.ArrayList<>();
+                final java.util.List<Integer> failed = new java.util.ArrayList<>();
+                for (int i = 0; i < parts.size(); i++) {
+                    answers.add(parts.get(i).join());
+                    if (answers.get(i) == null) {
+                        failed.add(i + 1);
+                    }
+                }
+                if (failed.size() == parts.size()) {
+                    return java.util.Map.<String, Object>of("error", "Extraction failed for every chunk");
                 }
+                final java.util.Map<String, Object> merged = merge(answers, overlaps, schemaFields);
+                if (!failed.isEmpty()) {
+                    merged.put(PARTIAL_CHUNKS, failed);
+                }
+                return merged;
+            });
+    }
+    
+    /**
+     * Splits text into overlapping chunks, ending each at whitespace where possible.
+     * Returns the start and end offset of each chunk.
+     */
+    private java.util.List<int[]> split(final String text) {
+        final java.util.List<int[]> chunks = new java.util.ArrayList<>();
+        int start = 0;
+        while (chunks.size() < maxChunks) {
+            int end = Math.min(text.length(), start + chunkChars);
+            if (end < text.length()) {
+                final int space = lastWhitespace(text, start + chunkChars / 2, end);
+                end = space > 0 ? space : end;
             }
-            
-            // Find first { and last }
-            final int jsonStart = extractedText.indexOf('{');
-            final int jsonEnd = extractedText.lastIndexOf('}');
-            if (jsonStart >= 0 && jsonEnd > jsonStart) {
-                extractedText = extractedText.substring(jsonStart, jsonEnd + 1);
+            chunks.add(new int[] {start, end});
+            if (end == text.length()) {
+                return chunks;
             }
-            
-            return gson.fromJson(extractedText, java.util.Map.class);
-            
-        } catch (final Exception e) {
-            if (log.isErrorEnabled()) {
-                log.error("Bedrock field extraction failed: {}", e.getMessage());
+            start = Math.max(start + 1, end - chunkOverlap);
+        }
+        if (log.isWarnEnabled()) {
+            log.warn("Document of {} chars exceeds {} chunks; text from {} on is not extracted",
+                text.length(), maxChunks, start);
+        }
+        return chunks;
+    }
+    
+    private static int lastWhitespace(final String text, final int from, final int to) {
+        for (int i = to; i > from; i--) {
+            if (Character.isWhitespace(text.charAt(i - 1))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Merges chunk answers, null for failed chunks: list values are concatenated, other
+     * values come from the chunk with the highest {@code _confidence}. An item is taken
+     * as a repeat, and dropped, only if the previous chunk returned an equal item not
+     * already matched and all of its values appear in the overlap the chunks share, so
+     * line items that really repeat are kept. Fields outside the schema are dropped
+     * unless the schema names none.
+     */
+    @SuppressWarnings("unchecked")
+    private static java.util.Map<String, Object> merge(final java.util.List<java.util.Map<String, Object>> answers,
+            final java.util.List<String> overlaps, final java.util.List<String> schemaFields) {
+        final java.util.Map<String, Object> merged = new java.util.LinkedHashMap<>();
+        final java.util.Map<String, Double> confidence = new java.util.HashMap<>();
+        for (int i = 0; i < answers.size(); i++) {
+            final java.util.Map<String, Object> answer = answers.get(i);
+            if (answer == null) {
+                continue;
+            }
+            final java.util.Map<String, Object> previousAnswer = i == 0 ? null : answers.get(i - 1);
+            final java.util.Map<String, Object> scores = answer.get(CONFIDENCE) instanceof java.util.Map<?, ?> map
+                ? (java.util.Map<String, Object>) map : java.util.Map.of();
+            for (final java.util.Map.Entry<String, Object> field : answer.entrySet()) {
+                final String name = field.getKey();
+                final Object value = field.getValue();
+                if (CONFIDENCE.equals(name) || value == null || value instanceof String str && str.isBlank()
+                        || !schemaFields.isEmpty() && !schemaFields.contains(name)) {
+                    continue;
+                }
+                if (value instanceof java.util.List<?> items) {
+                    final java.util.List<Object> all = new java.util.ArrayList<>();
+                    if (merged.get(name) instanceof java.util.List<?> previous) {
+                        all.addAll(previous);
+                    }
+                    // Items of the previous chunk that an item of this one may still repeat
+                    final java.util.List<Object> shared = new java.util.ArrayList<>();
+                    if (previousAnswer != null && previousAnswer.get(name) instanceof java.util.List<?> before) {
+                        shared.addAll(before);
+                    }
+                    for (final Object item : items) {
+                        if (!(inText(item, overlaps.get(i)) && shared.remove(item))) {
+                            all.add(item);
+                        }
+                    }
+                    merged.put(name, all);
+                } else {
+                    final double score = scores.get(name) instanceof Number n ? n.doubleValue() : 0.5;
+                    if (!merged.containsKey(name) || score > confidence.get(name)) {
+                        merged.put(name, value);
+                        confidence.put(name, score);
+                    }
+                }
             }
-            return java.util.Map.of("error", e.getMessage());
         }
+        return merged;
+    }
+    
+    /** Returns whether every value of an item appears in the text as a whole word or number. */
+    private static boolean inText(final Object item, final String text) {
+        final java.util.List<String> values = new java.util.ArrayList<>();
+        leaves(item, values);
+        return !text.isEmpty() && !values.isEmpty() && values.stream().allMatch(value -> java.util.regex.Pattern.compile(
+            "(?<![\\p{L}\\p{N}])" + java.util.regex.Pattern.quote(value) + "(?![\\p{L}\\p{N}])").matcher(text).find());
+    }
+    
+    /** Collects the non-blank scalar values of a parsed JSON value, whole numbers without a fraction. */
+    private static void leaves(final Object value, final java.util.List<String> values) {
+        if (value instanceof java.util.Map<?, ?> map) {
+            map.values().forEach(child -> leaves(child, values));
+        } else if (value instanceof java.util.List<?> list) {
+            list.forEach(child -> leaves(child, values));
+        } else if (value instanceof Number number) {
+            final double d = number.doubleValue();
+            values.add(d == Math.rint(d) && !Double.isInfinite(d) ? Long.toString((long) d) : number.toString());
+        } else if (value != null && !value.toString().isBlank()) {
+            values.add(value.toString().strip());
+        }
+    }
+    
+    private software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest buildChunkRequest(
+            final String chunk, final int part, final int parts, final String docType) {
+        final String prompt = String.format(
+            "This is part %d of %d of a longer document. Extract the schema fields that appear in this part and return "
+                + "ONLY a JSON object (no markdown, no explanation). Leave out fields this part does not contain, and list "
+                + "only the array items that appear in this part. Add a \"%s\" object giving your confidence from 0 to 1 "
+                + "for each other field you return.\n\nSchema:\n%s\n\nDocument part:\n%s\n\nJSON:",
+            part, parts, CONFIDENCE, schemaManager.getSchema(docType), chunk
+        );
+        return buildRequest(prompt, MAX_TOKENS_PER_DOCUMENT);
+    }
+    
+    private software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest buildRequest(
+            final String text, final String docType) {
+        final String schema = schemaManager.getSchema(docType);
+        final String prompt = String.format(
+            "Extract fields from this document and return ONLY a JSON object (no markdown, no explanation).\n\nSchema:\n%s\n\nDocument:\n%s\n\nJSON:",
+            schema, documentText(text, java.util.List.of(docType))
+        );
+        return buildRequest(prompt, MAX_TOKENS_PER_DOCUMENT);
+    }
+    
+    /** Returns the part of a document that fits a prompt, chosen for the given types' schemas. */
+    private String documentText(final String text, final java.util.List<String> docTypes) {
+        return packing
+            ? packers.forTypes(docTypes).pack(text, MAX_DOCUMENT_CHARS)
+            : text.substring(0, Math.min(MAX_DOCUMENT_CHARS, text.length()));
+    }
+    
+    private software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest buildBatchRequest(
+            final java.util.List<BatchItem> batch) {
+        final StringBuilder documents = new StringBuilder();
+        for (int i = 0; i < batch.size(); i++) {
+            final BatchItem item = batch.get(i);
+            documents.append("Document ").append(i + 1).append("\nSchema:\n")
+                .append(schemaManager.getSchema(item.docType()).strip())
+                .append("\nText:\n").append(item.text()).append("\n\n");
+        }
+        final String prompt = String.format(
+            "Extract fields from each of the %d documents below using its own schema. Return ONLY a JSON object "
+                + "(no markdown, no explanation) mapping each document number to its fields, "
+                + "like {\"1\": {...}, \"2\": {...}}.\n\n%sJSON:",
+            batch.size(), documents
+        );
+        return buildRequest(prompt, Math.min(MAX_BATCH_TOKENS, MAX_TOKENS_PER_DOCUMENT * batch.size()));
+    }
+    
+    private software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest buildCombinedRequest(final String text) {
+        final StringBuilder schemas = new StringBuilder();
+        for (final String docType : schemaManager.getDocumentTypes()) {
+            schemas.append("- ").append(docType).append(":\n").append(schemaManager.getSchema(docType).strip()).append('\n');
+        }
+        final String prompt = String.format(
+            "Classify this document as exactly one of the types below, then extract the fields of that type's schema.\n"
+                + "Return ONLY a JSON object (no markdown, no explanation) of the form "
+                + "{\"type\": \"<TYPE>\", \"fields\": {...}}.\n\nTypes and schemas:\n%s\nDocument:\n%s\n\nJSON:",
+            schemas, documentText(text, schemaManager.getDocumentTypes())
+        );
+        return buildRequest(prompt, MAX_TOKENS_PER_DOCUMENT);
+    }
+    
+    private static software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest buildRequest(
+            final String prompt, final int maxTokens) {
+        final String requestBody = gson.toJson(java.util.Map.of(
+            "anthropic_version", "bedrock-2023-05-31",
+            "max_tokens", maxTokens,
+            "messages", java.util.List.of(java.util.Map.of(
+                "role", "user",
+                "content", prompt
+            ))
+        ));
+        
+        return software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest.builder()
+            .modelId(MODEL_ID)
+            .body(software.amazon.awssdk.core.SdkBytes.fromUtf8String(requestBody))
+            .build();
+    }
+    
+    private static java.util.Map<String, Object> parseFields(
+            final software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse response) {
+        final String responseBody = response.body().asUtf8String();
+        final java.util.Map<String, Object> responseMap = gson.fromJson(responseBody, java.util.Map.class);
+        final java.util.List<java.util.Map<String, Object>> content = (java.util.List<java.util.Map<String, Object>>) responseMap.get("content");
+        String extractedText = (String) content.get(0).get("text");
+        
+        // Extract JSON from response (handle markdown code blocks)
+        extractedText = extractedText.trim();
+        if (extractedText.startsWith("```")) {
+            final int start = extractedText.indexOf('{');
+            final int end = extractedText.lastIndexOf('}');
+            if (start >= 0 && end > start) {
+                extractedText = extractedText.substring(start, end + 1);
+            }
+        }
+        
+        // Find first { and last }
+        final int jsonStart = extractedText.indexOf('{');
+        final int jsonEnd = extractedText.lastIndexOf('}');
+        if (jsonStart >= 0 && jsonEnd > jsonStart) {
+            extractedText = extractedText.substring(jsonStart, jsonEnd + 1);
+        }
+        
+        return gson.fromJson(extractedText, java.util.Map.class);
+    }
+    
+    /** Splits a combined answer into the upper-cased type and the fields. */
+    @SuppressWarnings("unchecked")
+    private static java.util.Map<String, Object> toCombined(final java.util.Map<String, Object> answer) {
+        if (answer == null || !(answer.get("type") instanceof String type) || type.isBlank()) {
+            return java.util.Map.of("error", "Response has no document type");
+        }
+        final Object fields = answer.get("fields");
+        return java.util.Map.of("type", type.trim().toUpperCase(java.util.Locale.ROOT),
+            "fields", fields instanceof java.util.Map ? (java.util.Map<String, Object>) fields : java.util.Map.of());
+    }
+    
+    private static java.util.Map<String, Object> failed(final Throwable e) {
+        if (log.isErrorEnabled()) {
+            log.error("Bedrock field extraction failed: {}", e.getMessage());
+        }
+        return java.util.Map.of("error", String.valueOf(e.getMessage()));
     }
 }
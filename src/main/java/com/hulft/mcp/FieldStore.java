@@ -0,0 +1,513 @@
+package com.hulft.mcp;
+
+import com.google.gson.Gson;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Columnar store of extracted fields, one table per document type.
+ * Each table has a {@code jobId} and {@code date} column plus one column per scalar
+ * schema field from {@link SchemaManager}. Values are dictionary-encoded: a column
+ * holds int codes into a per-column dictionary, and numeric values are parsed once
+ * per dictionary entry. Rows are appended into fixed-size segments as jobs complete,
+ * and queries scan segments in parallel to filter, group and aggregate.
+ * Rows are persisted per document type as append-only JSON lines and replayed on load;
+ * each file starts with a line naming its document type, so types whose names are not
+ * safe file names are restored as they were stored.
+ * There is at most one live row per job: storing a job again supersedes its earlier
+ * row, in whichever table it was, so reprocessed and resumed jobs are counted once.
+ */
+@Slf4j
+public class FieldStore {
+    static final int SEGMENT_ROWS = 4096;
+    private static final String JOB_ID = "jobId";
+    private static final String DATE = "date";
+    private static final int MISSING = -1;
+    /** Log line marking a job's row in this table as superseded by a row elsewhere */
+    private static final String SUPERSEDED = "_superseded";
+    /** First log line of a table, naming its document type */
+    private static final String DOC_TYPE = "_docType";
+
+    @SuppressWarnings("PMD.FieldNamingConventions") // Gson instance, not primitive constant
+    private static final Gson gson = new Gson();
+
+    private final Path dir;
+    private final SchemaManager schemaManager;
+    private final Map<String, Table> tables = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    public FieldStore(final Path dir, final SchemaManager schemaManager) {
+        this.dir = dir;
+        this.schemaManager = schemaManager;
+    }
+
+    /**
+     * One aggregated output row.
+     */
+    public static class Row {
+        /** Group value, or null when not grouping */
+        public final String group;
+        /** Number of matching rows in the group */
+        public final long count;
+        /** Aggregate value, NaN if no numeric values matched */
+        public final double value;
+
+        Row(final String group, final long count, final double value) {
+            this.group = group;
+            this.count = count;
+            this.value = value;
+        }
+    }
+
+    /** Dictionary-encoded column values shared by all segments of a table. */
+    private static class Dictionary {
+        final List<String> values = new ArrayList<>();
+        final Map<String, Integer> codes = new HashMap<>();
+        double[] numbers = new double[16];
+
+        int encode(final String value) {
+            if (value == null) {
+                return MISSING;
+            }
+            return codes.computeIfAbsent(value, v -> {
+                final int code = values.size();
+                values.add(v);
+                if (code == numbers.length) {
+                    numbers = Arrays.copyOf(numbers, numbers.length * 2);
+                }
+                numbers[code] = parseNumber(v);
+                return code;
+            });
+        }
+    }
+
+    /** Fixed-size block of rows; codes[column][row]. Columns added later are absent in older segments. */
+    private static class Segment {
+        final List<int[]> codes = new ArrayList<>();
+        /** Rows replaced by a later row of the same job */
+        final java.util.BitSet superseded = new java.util.BitSet();
+        int rows;
+
+        int code(final int column, final int row) {
+            return column < codes.size() ? codes.get(column)[row] : MISSING;
+        }
+    }
+
+    private static class Table {
+        final List<String> columns = new ArrayList<>();
+        final List<Dictionary> dictionaries = new ArrayList<>();
+        final List<Segment> segments = new ArrayList<>();
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        /** Live row of each job as {segment, row} */
+        final Map<String, int[]> rowsByJob = new HashMap<>();
+        BufferedWriter writer;
+
+        int column(final String name) {
+            int index = columns.indexOf(name);
+            if (index < 0) {
+                columns.add(name);
+                dictionaries.add(new Dictionary());
+                index = columns.size() - 1;
+            }
+            return index;
+        }
+
+        /** Appends a row, superseding the job's earlier row in this table. */
+        void append(final Map<String, String> values) {
+            remove(values.get(JOB_ID));
+            Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (segment == null || segment.rows == SEGMENT_ROWS) {
+                segment = new Segment();
+                segments.add(segment);
+            }
+            for (final Map.Entry<String, String> value : values.entrySet()) {
+                column(value.getKey());
+            }
+            while (segment.codes.size() < columns.size()) {
+                final int[] codes = new int[SEGMENT_ROWS];
+                Arrays.fill(codes, MISSING);
+                segment.codes.add(codes);
+            }
+            for (int c = 0; c < columns.size(); c++) {
+                segment.codes.get(c)[segment.rows] = dictionaries.get(c).encode(values.get(columns.get(c)));
+            }
+            if (values.get(JOB_ID) != null) {
+                rowsByJob.put(values.get(JOB_ID), new int[] {segments.size() - 1, segment.rows});
+            }
+            segment.rows++;
+        }
+
+        /** Supersedes a job's live row, returning whether it had one. */
+        boolean remove(final String jobId) {
+            final int[] location = jobId == null ? null : rowsByJob.remove(jobId);
+            if (location == null) {
+                return false;
+            }
+            segments.get(location[0]).superseded.set(location[1]);
+            return true;
+        }
+    }
+
+    /**
+     * Loads all tables by replaying their logs.
+     *
+     * @throws IOException if a log cannot be read
+     */
+    public void load() throws IOException {
+        if (!loaded) {
+            loadOnce();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized void loadOnce() throws IOException {
+        if (loaded) {
+            return;
+        }
+        if (Files.isDirectory(dir)) {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (final Path file : files.filter(f -> f.toString().endsWith(".jsonl")).toList()) {
+                    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                        String line = reader.readLine();
+                        final Map<String, String> header = line == null ? null : gson.fromJson(line, Map.class);
+                        final String docType;
+                        if (header != null && header.containsKey(DOC_TYPE)) {
+                            docType = header.get(DOC_TYPE);
+                            line = reader.readLine();
+                        } else {
+                            // Written before the header line: the file name is the type
+                            docType = file.getFileName().toString().replace(".jsonl", "");
+                        }
+                        replay(table(docType), reader, line);
+                    }
+                }
+            }
+        }
+        loaded = true;
+        if (log.isInfoEnabled()) {
+            log.info("Field store loaded: {} document types", tables.size());
+        }
+    }
+
+    /** Replays log lines into a table, starting with an already read line. */
+    @SuppressWarnings("unchecked")
+    private static void replay(final Table table, final BufferedReader reader, final String first) throws IOException {
+        table.lock.writeLock().lock();
+        try {
+            String line = first;
+            while (line != null) {
+                final Map<String, String> row = gson.fromJson(line, Map.class);
+                if (row != null && row.containsKey(SUPERSEDED)) {
+                    table.remove(row.get(JOB_ID));
+                } else if (row != null) {
+                    table.append(row);
+                }
+                line = reader.readLine();
+            }
+        } finally {
+            table.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stores the extracted fields of a completed job, replacing the row stored for it
+     * before. If the job was stored under another document type, that row is removed
+     * and the removal logged in that type's table, so the change survives a reload.
+     *
+     * @param jobId the job identifier
+     * @param date job date as {@code yyyy-MM-dd}
+     * @param docType the document type
+     * @param fields fields returned by {@link FieldExtractor#extractFields}
+     */
+    public void append(final String jobId, final String date, final String docType, final Map<String, Object> fields) {
+        if (docType == null || fields == null || fields.containsKey("error")) {
+            return;
+        }
+        final Map<String, String> row = new HashMap<>();
+        row.put(JOB_ID, jobId);
+        row.put(DATE, date);
+        for (final String field : schemaManager.getScalarFields(docType)) {
+            final Object value = fields.get(field);
+            if (value != null && !(value instanceof Map) && !(value instanceof List)) {
+                row.put(field, String.valueOf(value));
+            }
+        }
+        // Remove the old row first: a crash in between loses the row rather than counting it twice
+        for (final Map.Entry<String, Table> other : tables.entrySet()) {
+            if (!other.getKey().equals(docType)) {
+                supersede(other.getKey(), other.getValue(), jobId);
+            }
+        }
+        final Table table = table(docType);
+        table.lock.writeLock().lock();
+        try {
+            table.append(row);
+            write(table, docType, row);
+        } catch (final IOException e) {
+            if (log.isErrorEnabled()) {
+                log.error("Error appending fields for {}", jobId, e);
+            }
+        } finally {
+            table.lock.writeLock().unlock();
+        }
+    }
+
+    /** Removes a job's row from a table and logs the removal. */
+    private void supersede(final String docType, final Table table, final String jobId) {
+        table.lock.writeLock().lock();
+        try {
+            if (table.remove(jobId)) {
+                write(table, docType, Map.of(JOB_ID, jobId, SUPERSEDED, "true"));
+            }
+        } catch (final IOException e) {
+            if (log.isErrorEnabled()) {
+                log.error("Error superseding fields of {} in {}", jobId, docType, e);
+            }
+        } finally {
+            table.lock.writeLock().unlock();
+        }
+    }
+
+    /** Appends a line to a table's log; must hold the table's write lock. */
+    private void write(final Table table, final String docType, final Map<String, String> line) throws IOException {
+        if (table.writer == null) {
+            Files.createDirectories(dir);
+            final Path file = dir.resolve(fileName(docType));
+            final boolean created = !Files.exists(file) || Files.size(file) == 0;
+            table.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            if (created) {
+                table.writer.write(gson.toJson(Map.of(DOC_TYPE, docType)));
+                table.writer.write('\n');
+            }
+        }
+        table.writer.write(gson.toJson(line));
+        table.writer.write('\n');
+        table.writer.flush();
+    }
+
+    /**
+     * Runs a filter/group/aggregate scan over a document type.
+     *
+     * @param docType the document type
+     * @param filters field equality filters
+     * @param fromDate first date ({@code yyyy-MM-dd}), inclusive, or null
+     * @param toDate last date ({@code yyyy-MM-dd}), inclusive, or null
+     * @param groupBy field to group by, or null for a single group
+     * @param aggregate one of count, sum, avg, min, max
+     * @param field numeric field to aggregate, ignored for count
+     * @return rows ordered by group value
+     * @throws IllegalArgumentException if the aggregate or a field is unknown
+     */
+    @SuppressWarnings({"PMD.CognitiveComplexity", "PMD.NPathComplexity"}) // Scan planning
+    public List<Row> query(final String docType, final Map<String, String> filters, final String fromDate,
+            final String toDate, final String groupBy, final String aggregate, final String field) {
+        final String op = aggregate == null ? "count" : aggregate.toLowerCase(Locale.ROOT);
+        if (!List.of("count", "sum", "avg", "min", "max").contains(op)) {
+            throw new IllegalArgumentException("Unknown aggregate: " + aggregate);
+        }
+        final Table table = tables.get(docType);
+        if (table == null) {
+            return List.of();
+        }
+        table.lock.readLock().lock();
+        try {
+            // Resolve filters against dictionaries once, so the scan compares int codes only
+            final List<int[]> filterCodes = new ArrayList<>();
+            for (final Map.Entry<String, String> filter : (filters == null ? Map.<String, String>of() : filters).entrySet()) {
+                final int column = requireColumn(table, filter.getKey());
+                final Integer code = table.dictionaries.get(column).codes.get(filter.getValue());
+                if (code == null) {
+                    return List.of();
+                }
+                filterCodes.add(new int[] {column, code});
+            }
+            final int dateColumn = table.columns.indexOf(DATE);
+            final boolean[] dateAllowed = allowedDates(table.dictionaries.get(dateColumn), fromDate, toDate);
+            final int groupColumn = groupBy == null ? MISSING : requireColumn(table, groupBy);
+            final int valueColumn = "count".equals(op) ? MISSING : requireColumn(table, field);
+            final double[] numbers = valueColumn == MISSING ? null : table.dictionaries.get(valueColumn).numbers;
+
+            final List<Segment> segments = List.copyOf(table.segments);
+            final Map<Integer, double[]> merged = IntStream.range(0, segments.size()).parallel()
+                .mapToObj(s -> scan(segments.get(s), filterCodes, dateColumn, dateAllowed, groupColumn, valueColumn, numbers))
+                .reduce(new HashMap<>(), FieldStore::merge);
+
+            final Map<String, Row> ordered = new TreeMap<>();
+            merged.forEach((group, acc) -> {
+                final String key = group == MISSING ? "" : table.dictionaries.get(groupColumn).values.get(group);
+                ordered.put(key, new Row(groupColumn == MISSING ? null : key, (long) acc[0], finish(op, acc)));
+            });
+            return new ArrayList<>(ordered.values());
+        } finally {
+            table.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the columns of a document type's table.
+     *
+     * @param docType the document type
+     * @return column names, empty if nothing was stored for the type
+     */
+    public List<String> columns(final String docType) {
+        final Table table = tables.get(docType);
+        if (table == null) {
+            return List.of();
+        }
+        table.lock.readLock().lock();
+        try {
+            return List.copyOf(table.columns);
+        } finally {
+            table.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Scans one segment. Accumulators are {count, numeric count, sum, min, max} per group code.
+     */
+    private static Map<Integer, double[]> scan(final Segment segment, final List<int[]> filterCodes, final int dateColumn,
+            final boolean[] dateAllowed, final int groupColumn, final int valueColumn, final double[] numbers) {
+        final Map<Integer, double[]> groups = new HashMap<>();
+        for (int row = 0; row < segment.rows; row++) {
+            if (segment.superseded.get(row)) {
+                continue;
+            }
+            boolean match = true;
+            for (int f = 0; f < filterCodes.size() && match; f++) {
+                match = segment.code(filterCodes.get(f)[0], row) == filterCodes.get(f)[1];
+            }
+            if (!match || dateAllowed != null && !isAllowed(dateAllowed, segment.code(dateColumn, row))) {
+                continue;
+            }
+            final int group = groupColumn == MISSING ? MISSING : segment.code(groupColumn, row);
+            final double[] acc = groups.computeIfAbsent(group,
+                g -> new double[] {0, 0, 0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY});
+            acc[0]++;
+            final int valueCode = valueColumn == MISSING ? MISSING : segment.code(valueColumn, row);
+            if (valueCode != MISSING && !Double.isNaN(numbers[valueCode])) {
+                final double value = numbers[valueCode];
+                acc[1]++;
+                acc[2] += value;
+                acc[3] = Math.min(acc[3], value);
+                acc[4] = Math.max(acc[4], value);
+            }
+        }
+        return groups;
+    }
+
+    private static boolean isAllowed(final boolean[] allowed, final int code) {
+        return code != MISSING && allowed[code];
+    }
+
+    private static Map<Integer, double[]> merge(final Map<Integer, double[]> left, final Map<Integer, double[]> right) {
+        final Map<Integer, double[]> result = new HashMap<>(left);
+        right.forEach((group, acc) -> result.merge(group, acc, (a, b) -> new double[] {
+            a[0] + b[0], a[1] + b[1], a[2] + b[2], Math.min(a[3], b[3]), Math.max(a[4], b[4])}));
+        return result;
+    }
+
+    private static double finish(final String op, final double[] acc) {
+        return switch (op) {
+            case "count" -> acc[0];
+            case "sum" -> acc[1] == 0 ? Double.NaN : acc[2];
+            case "avg" -> acc[1] == 0 ? Double.NaN : acc[2] / acc[1];
+            case "min" -> acc[1] == 0 ? Double.NaN : acc[3];
+            default -> acc[1] == 0 ? Double.NaN : acc[4];
+        };
+    }
+
+    private static boolean[] allowedDates(final Dictionary dates, final String fromDate, final String toDate) {
+        if (fromDate == null && toDate == null) {
+            return null;
+        }
+        final boolean[] allowed = new boolean[dates.values.size()];
+        for (int code = 0; code < allowed.length; code++) {
+            final String date = dates.values.get(code);
+            allowed[code] = (fromDate == null || date.compareTo(fromDate) >= 0)
+                && (toDate == null || date.compareTo(toDate) <= 0);
+        }
+        return allowed;
+    }
+
+    private static int requireColumn(final Table table, final String name) {
+        final int column = table.columns.indexOf(name);
+        if (column < 0) {
+            throw new IllegalArgumentException("Unknown field: " + name + " (available: "
+                + table.columns.stream().collect(Collectors.joining(", ")) + ")");
+        }
+        return column;
+    }
+
+    private Table table(final String docType) {
+        return tables.computeIfAbsent(docType, t -> {
+            final Table table = new Table();
+            table.column(JOB_ID);
+            table.column(DATE);
+            return table;
+        });
+    }
+
+    /** Returns a file name for a type, with a hash of the name when characters were replaced. */
+    private static String fileName(final String docType) {
+        final String safe = docType.replaceAll("[^A-Za-z0-9_-]", "_");
+        return (safe.equals(docType) ? safe : safe + "-" + Integer.toHexString(docType.hashCode())) + ".jsonl";
+    }
+
+    /**
+     * Parses amounts such as {@code "¥1,234"} or {@code "$1,234.50"}.
+     *
+     * @param value the string value
+     * @return the number, or NaN if the value is not numeric
+     */
+    static double parseNumber(final String value) {
+        final String digits = value.replaceAll("[^0-9.\\-]", "");
+        if (digits.isEmpty() || "-".equals(digits) || ".".equals(digits)) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(digits);
+        } catch (final NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Closes all table logs.
+     */
+    public void close() {
+        for (final Table table : tables.values()) {
+            table.lock.writeLock().lock();
+            try {
+                if (table.writer != null) {
+                    table.writer.close();
+                    table.writer = null;
+                }
+            } catch (final IOException e) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Error closing field store: {}", e.getMessage());
+                }
+            } finally {
+                table.lock.writeLock().unlock();
+            }
+        }
+    }
+}
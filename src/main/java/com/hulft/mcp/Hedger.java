@@ -0,0 +1,290 @@
+package com.hulft.mcp;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Hedged requests for one AWS service. When a call has not answered within the
+ * service's recent latency percentile, the same idempotent request is sent again and
+ * the first successful answer wins; the slower attempt is cancelled, which aborts an
+ * async SDK request and interrupts the thread of a blocking one. Only the SDK call
+ * itself is hedged: callers wrap it inside their {@link AwsLimiter} call, so permit
+ * and token waits neither count as latency nor run twice. Hedges are paid for from a
+ * budget that earns {@code budget} of a hedge per call, so they add at most that
+ * fraction of extra load, and no call is hedged until enough latencies have been seen
+ * to know what slow means. Counts of hedges and of hedges that won are published to
+ * {@link Metrics}.
+ */
+public class Hedger {
+    private static final Map<String, Hedger> SHARED = new ConcurrentHashMap<>();
+    private static final int WINDOW = 512;
+    private static final int MIN_SAMPLES = 20;
+    private static final double MAX_TOKENS = 10;
+
+    @SuppressWarnings("PMD.FieldNamingConventions") // Executor instances, not primitive constants
+    private static final ExecutorService blocking = Executors.newCachedThreadPool(VirtualThreads.factory("hedge-"));
+    /** Bounds the blocking attempts running on {@link #blocking}, losers included */
+    @SuppressWarnings("PMD.FieldNamingConventions") // Semaphore instance, not primitive constant
+    private static final Semaphore threads = new Semaphore(Integer.getInteger("hulft.hedge.threads", 64));
+    @SuppressWarnings("PMD.FieldNamingConventions")
+    private static final ScheduledExecutorService timer =
+        Executors.newSingleThreadScheduledExecutor(VirtualThreads.platform("hedge-timer-"));
+
+    private final String service;
+    private final boolean enabled;
+    private final double percentile;
+    private final double budget;
+    private final long minDelayMillis;
+
+    private final long[] latencies = new long[WINDOW];
+    private int samples;
+    private long delayMillis = -1;
+    private double tokens;
+
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong won = new AtomicLong();
+
+    /**
+     * Creates a hedger.
+     *
+     * @param service service name, for metrics
+     * @param enabled whether to hedge at all
+     * @param percentile latency percentile after which a call is hedged, e.g. 95
+     * @param budget hedges earned per call, e.g. 0.05 for at most 5% extra calls
+     * @param minDelayMillis shortest delay before hedging
+     */
+    public Hedger(final String service, final boolean enabled, final double percentile, final double budget,
+            final long minDelayMillis) {
+        this.service = service;
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.budget = budget;
+        this.minDelayMillis = minDelayMillis;
+    }
+
+    /**
+     * Returns the process-wide hedger of a service. Hedging is off unless
+     * {@code -Dhulft.hedge=true}; it is tuned by {@code hulft.hedge.<service>.percentile}
+     * (95), {@code .budgetPercent} (5) and {@code .minDelayMillis} (50).
+     *
+     * @param service service name, e.g. {@code bedrock}
+     * @return the shared hedger
+     */
+    public static Hedger forService(final String service) {
+        return SHARED.computeIfAbsent(service, name -> {
+            final String prefix = "hulft.hedge." + name + ".";
+            final Hedger hedger = new Hedger(name, Boolean.getBoolean("hulft.hedge"),
+                Integer.getInteger(prefix + "percentile", 95),
+                Integer.getInteger(prefix + "budgetPercent", 5) / 100.0,
+                Long.getLong(prefix + "minDelayMillis", 50L));
+            hedger.registerMetrics();
+            return hedger;
+        });
+    }
+
+    /**
+     * Runs a blocking call, hedged when enabled. Until the hedge delay is known the call
+     * runs on the caller's thread; after that each attempt runs on its own thread, at
+     * most {@code -Dhulft.hedge.threads} (64) at a time. A first attempt that finds no
+     * thread free runs on the caller unhedged, and a hedge that finds none is not sent.
+     *
+     * @param call the AWS call; must be safe to issue twice
+     * @param <T> response type
+     * @return the first successful response
+     */
+    public <T> T call(final Supplier<T> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        final long delay = earn();
+        if (delay < 0) {
+            final long start = System.nanoTime();
+            final T value = call.get();
+            record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return value;
+        }
+        final AtomicBoolean first = new AtomicBoolean(true);
+        try {
+            return race(() -> onThread(call, first.getAndSet(false)), delay).join();
+        } catch (final CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * Starts a non-blocking call, hedged when enabled.
+     *
+     * @param call starts the AWS call; must be safe to issue twice
+     * @param <T> response type
+     * @return future completed with the first successful response, or the last failure
+     */
+    public <T> CompletableFuture<T> hedge(final Supplier<CompletableFuture<T>> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        return race(call, earn());
+    }
+
+    /** Starts the call, and once more after {@code delay} unless it has answered; -1 never hedges. */
+    private <T> CompletableFuture<T> race(final Supplier<CompletableFuture<T>> call, final long delay) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        // Attempts still running, or -1 once one has succeeded; the call fails only when none is left
+        final AtomicInteger pending = new AtomicInteger(1);
+        final AtomicReference<CompletableFuture<T>> backup = new AtomicReference<>();
+        final long start = System.nanoTime();
+        final CompletableFuture<T> primary = call.get();
+        primary.whenComplete((value, error) -> settle(result, value, error, start, pending, backup.get(), false));
+        if (delay >= 0) {
+            timer.schedule(() -> {
+                if (result.isDone() || !spend() || pending.getAndUpdate(n -> n <= 0 ? n : n + 1) <= 0) {
+                    return;
+                }
+                hedged.incrementAndGet();
+                final long hedgeStart = System.nanoTime();
+                final CompletableFuture<T> second = call.get();
+                backup.set(second);
+                second.whenComplete((value, error) -> settle(result, value, error, hedgeStart, pending, primary, true));
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        return result;
+    }
+
+    /**
+     * Runs a blocking attempt on a thread of its own, interrupting it if the attempt is
+     * cancelled. Without a free thread the attempt runs on the caller when
+     * {@code inline}, and otherwise fails with {@link RejectedExecutionException}.
+     */
+    @SuppressWarnings("PMD.AvoidCatchingGenericException") // The attempt's failure is handed to the race
+    private static <T> CompletableFuture<T> onThread(final Supplier<T> call, final boolean inline) {
+        if (!threads.tryAcquire()) {
+            if (!inline) {
+                return CompletableFuture.failedFuture(new RejectedExecutionException("No thread free for a hedge"));
+            }
+            try {
+                return CompletableFuture.completedFuture(call.get());
+            } catch (final RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        final CompletableFuture<T> attempt = new CompletableFuture<>();
+        final Future<?> running;
+        try {
+            running = blocking.submit(() -> {
+                try {
+                    attempt.complete(call.get());
+                } catch (final RuntimeException | Error e) {
+                    attempt.completeExceptionally(e);
+                } finally {
+                    threads.release();
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            threads.release();
+            return CompletableFuture.failedFuture(e);
+        }
+        attempt.whenComplete((value, error) -> {
+            if (attempt.isCancelled()) {
+                running.cancel(true);
+            }
+        });
+        return attempt;
+    }
+
+    /** Completes with the first success, cancelling the other attempt, or with the last failure. */
+    private <T> void settle(final CompletableFuture<T> result, final T value, final Throwable error, final long start,
+            final AtomicInteger pending, final CompletableFuture<T> other, final boolean isHedge) {
+        if (error == null) {
+            record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            if (pending.getAndSet(-1) > 0) {
+                if (isHedge) {
+                    won.incrementAndGet();
+                }
+                if (other != null) {
+                    other.cancel(true);
+                }
+                result.complete(value);
+            }
+        } else if (pending.decrementAndGet() == 0) {
+            result.completeExceptionally(error);
+        }
+    }
+
+    /** Earns budget for a new call and returns the hedge delay, or -1 to not hedge. */
+    private synchronized long earn() {
+        tokens = Math.min(MAX_TOKENS, tokens + budget);
+        return delayMillis;
+    }
+
+    private synchronized boolean spend() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    private synchronized void record(final long millis) {
+        latencies[samples % WINDOW] = millis;
+        samples++;
+        // Re-derive the delay every few samples rather than sorting on every call
+        if (samples >= MIN_SAMPLES && (delayMillis < 0 || samples % 16 == 0)) {
+            final long[] sorted = Arrays.copyOf(latencies, Math.min(samples, WINDOW));
+            Arrays.sort(sorted);
+            final int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile / 100 * sorted.length) - 1);
+            delayMillis = Math.max(minDelayMillis, sorted[Math.max(0, index)]);
+        }
+    }
+
+    /**
+     * Returns the current hedge delay.
+     *
+     * @return delay in milliseconds, or -1 until enough latencies are known
+     */
+    public synchronized long delayMillis() {
+        return delayMillis;
+    }
+
+    /**
+     * Returns how many hedge requests were sent.
+     *
+     * @return hedge count
+     */
+    public long hedged() {
+        return hedged.get();
+    }
+
+    /**
+     * Returns how many hedge requests answered before the original.
+     *
+     * @return winning hedge count
+     */
+    public long won() {
+        return won.get();
+    }
+
+    /**
+     * Publishes hedge counts and the current delay to {@link Metrics}.
+     */
+    public void registerMetrics() {
+        final String prefix = "aws." + service.toLowerCase(Locale.ROOT) + ".hedge";
+        Metrics.gauge(prefix + ".sent", this::hedged);
+        Metrics.gauge(prefix + ".won", this::won);
+        Metrics.gauge(prefix + ".delayMillis", this::delayMillis);
+    }
+}
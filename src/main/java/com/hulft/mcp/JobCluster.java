@@ -0,0 +1,468 @@
+package com.hulft.mcp;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Coordinates job execution between server nodes that share a {@code jobs/} volume.
+ * All state lives in files under the cluster directory, and every ownership change is
+ * a single atomic rename, so no lock service is needed:
+ * <ul>
+ *   <li>{@code pending/<jobId>.json}: submitted jobs with their payload, waiting for a node</li>
+ *   <li>{@code running/<jobId>@<nodeId>.json}: jobs leased by a node; a node claims a job by
+ *       renaming it out of {@code pending/}, and only one rename can succeed</li>
+ *   <li>{@code finishing/<jobId>@<nodeId>.json}: jobs whose owner is publishing the result;
+ *       moving the lease here is what entitles a node to publish, so a takeover and a
+ *       finish cannot both succeed</li>
+ *   <li>{@code nodes/<nodeId>.heartbeat}: replaced by each node every heartbeat; it renews all
+ *       of the node's leases at once</li>
+ *   <li>{@code status/<jobId>.json}: final status and result, readable by every node</li>
+ * </ul>
+ * When a node's heartbeat is older than the lease time, any other node may take its
+ * running jobs over by renaming them to its own node ID. Jobs run at least once: a
+ * node that stalls past its lease may finish a job that has already been taken over,
+ * in which case its result is discarded.
+ */
+@Slf4j
+public class JobCluster {
+    private static final Type RECORD_TYPE = new TypeToken<Map<String, Object>>() { }.getType();
+    private static final String JSON = ".json";
+    private static final char OWNER = '@';
+
+    @SuppressWarnings("PMD.FieldNamingConventions") // Gson instance, not primitive constant
+    private static final Gson gson = new Gson();
+
+    private final Path pending;
+    private final Path running;
+    private final Path finishing;
+    private final Path nodes;
+    private final Path status;
+    private final String nodeId;
+    private final long leaseMillis;
+
+    /**
+     * A job leased by this node.
+     */
+    public static class Claim {
+        /** Job identifier */
+        public final String jobId;
+        /** Job spec: kind, session, priority, cost, payload and attempts */
+        public final Map<String, Object> spec;
+
+        Claim(final String jobId, final Map<String, Object> spec) {
+            this.jobId = jobId;
+            this.spec = spec;
+        }
+
+        /**
+         * Returns how many times the job has been claimed, including this claim.
+         *
+         * @return attempt count
+         */
+        public int attempts() {
+            return spec.get("attempts") instanceof Number n ? n.intValue() : 1;
+        }
+    }
+
+    /**
+     * Creates a cluster member.
+     *
+     * @param dir shared cluster directory
+     * @param nodeId unique identifier of this node; must not contain {@code @}
+     * @param leaseMillis how long a node's leases survive without a heartbeat
+     */
+    public JobCluster(final Path dir, final String nodeId, final long leaseMillis) {
+        if (nodeId.indexOf(OWNER) >= 0) {
+            throw new IllegalArgumentException("Node ID must not contain '" + OWNER + "': " + nodeId);
+        }
+        this.pending = dir.resolve("pending");
+        this.running = dir.resolve("running");
+        this.finishing = dir.resolve("finishing");
+        this.nodes = dir.resolve("nodes");
+        this.status = dir.resolve("status");
+        this.nodeId = nodeId;
+        this.leaseMillis = leaseMillis;
+    }
+
+    /**
+     * Returns the default node ID: the {@code hulft.nodeId} system property, or the host
+     * name and process ID so several processes on one host stay distinct.
+     *
+     * @return node identifier
+     */
+    public static String defaultNodeId() {
+        final String configured = System.getProperty("hulft.nodeId");
+        if (configured != null && !configured.isBlank()) {
+            return configured;
+        }
+        String host;
+        try {
+            host = java.net.InetAddress.getLocalHost().getHostName();
+        } catch (final java.net.UnknownHostException e) {
+            host = "node";
+        }
+        return host.replace(OWNER, '_') + "-" + ProcessHandle.current().pid();
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    public long leaseMillis() {
+        return leaseMillis;
+    }
+
+    /**
+     * Publishes a job for any node to claim.
+     *
+     * @param jobId the job identifier
+     * @param spec job kind, scheduling hints and payload
+     * @throws IOException if the job cannot be written
+     */
+    public void enqueue(final String jobId, final Map<String, Object> spec) throws IOException {
+        writeJson(pending.resolve(jobId + JSON), spec);
+    }
+
+    /**
+     * Returns the number of jobs waiting for a node.
+     *
+     * @return pending job count
+     */
+    public int pendingJobs() {
+        return list(pending).size();
+    }
+
+    /**
+     * Claims up to {@code max} pending jobs, oldest first. Jobs another node claims
+     * first are skipped.
+     *
+     * @param max most jobs to claim
+     * @return the claimed jobs
+     */
+    public List<Claim> claim(final int max) {
+        final List<Claim> claims = new ArrayList<>();
+        if (max <= 0) {
+            return claims;
+        }
+        final List<Path> files = list(pending);
+        files.sort(Comparator.comparing(JobCluster::modified));
+        for (final Path file : files) {
+            if (claims.size() >= max) {
+                break;
+            }
+            final String jobId = stripJson(file.getFileName().toString());
+            final Claim claim = lease(file, jobId);
+            if (claim != null) {
+                claims.add(claim);
+            }
+        }
+        return claims;
+    }
+
+    /**
+     * Takes over the leases of nodes whose heartbeat has expired, including running
+     * jobs left behind by an earlier process with this node's ID.
+     *
+     * @param owned jobs this process is running, which are not taken over
+     * @return the jobs taken over
+     */
+    public List<Claim> takeOver(final java.util.Set<String> owned) {
+        final List<Claim> claims = new ArrayList<>();
+        final Map<String, Boolean> alive = new HashMap<>();
+        final List<Path> leases = list(running);
+        // A node that died while publishing leaves its lease in finishing/
+        leases.addAll(list(finishing));
+        for (final Path file : leases) {
+            final String name = stripJson(file.getFileName().toString());
+            final int at = name.lastIndexOf(OWNER);
+            if (at < 0) {
+                continue;
+            }
+            final String jobId = name.substring(0, at);
+            final String owner = name.substring(at + 1);
+            final boolean orphaned = nodeId.equals(owner)
+                ? !owned.contains(jobId)
+                : !alive.computeIfAbsent(owner, this::isAlive);
+            if (!orphaned) {
+                continue;
+            }
+            final Claim claim = lease(file, jobId);
+            if (claim != null) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Took over job {} from node {}", jobId, owner);
+                }
+                claims.add(claim);
+            }
+        }
+        return claims;
+    }
+
+    /**
+     * Returns a leased job to the pending queue, e.g. when the local queue refused it
+     * or the node is draining before it started.
+     *
+     * @param jobId the job to give up
+     */
+    public void release(final String jobId) {
+        try {
+            Files.move(runningFile(jobId), pending.resolve(jobId + JSON), StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Error releasing job {}: {}", jobId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Publishes a job's final status and drops its lease. Nothing is published if the
+     * lease was taken over while the job ran. The lease is first moved to
+     * {@code finishing/}: the move fails if another node took the job over, and once it
+     * succeeds no other node can, so the check and the publish act as one step.
+     *
+     * @param jobId the job identifier
+     * @param record status, result or error, and finish time
+     * @return true if this node still held the lease
+     * @throws IOException if the status cannot be written
+     */
+    public boolean finish(final String jobId, final Map<String, Object> record) throws IOException {
+        final Path lease = runningFile(jobId);
+        final Path held = finishing.resolve(lease.getFileName());
+        try {
+            Files.createDirectories(finishing);
+            Files.move(lease, held, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final NoSuchFileException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Lease on job {} was lost, discarding its result", jobId);
+            }
+            return false;
+        }
+        final Map<String, Object> published = new LinkedHashMap<>(record);
+        published.put("node", nodeId);
+        try {
+            writeJson(status.resolve(jobId + JSON), published);
+        } catch (final IOException e) {
+            // Hand the lease back so the job can be finished or taken over later
+            Files.move(held, lease, StandardCopyOption.ATOMIC_MOVE);
+            throw e;
+        }
+        Files.deleteIfExists(held);
+        return true;
+    }
+
+    /**
+     * Looks a job up across the cluster.
+     *
+     * @param jobId the job identifier
+     * @return the final status record, a {@code processing} record while the job is
+     *     queued or leased, or null if no node knows the job
+     */
+    public Map<String, Object> status(final String jobId) {
+        if (jobId == null || jobId.indexOf('/') >= 0 || jobId.indexOf('\\') >= 0 || jobId.startsWith(".")) {
+            return null;
+        }
+        try {
+            final Map<String, Object> done = readJson(status.resolve(jobId + JSON));
+            if (done != null) {
+                return done;
+            }
+        } catch (final IOException | JsonSyntaxException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Error reading status of job {}: {}", jobId, e.getMessage());
+            }
+        }
+        final boolean queued = Files.exists(pending.resolve(jobId + JSON))
+            || list(running).stream().anyMatch(file -> file.getFileName().toString().startsWith(jobId + OWNER))
+            || list(finishing).stream().anyMatch(file -> file.getFileName().toString().startsWith(jobId + OWNER));
+        if (!queued) {
+            return null;
+        }
+        final Map<String, Object> processing = new LinkedHashMap<>();
+        processing.put("jobId", jobId);
+        processing.put("status", "processing");
+        return processing;
+    }
+
+    /**
+     * Records that this node is alive, renewing all of its leases. The heartbeat file is
+     * replaced atomically, so a peer never reads it empty or half-written and mistakes
+     * this node for dead.
+     *
+     * @throws IOException if the heartbeat cannot be written
+     */
+    public void heartbeat() throws IOException {
+        Files.createDirectories(nodes);
+        final Path file = nodes.resolve(nodeId + ".heartbeat");
+        final Path tmp = nodes.resolve(nodeId + ".heartbeat.tmp");
+        Files.writeString(tmp, Long.toString(System.currentTimeMillis()), StandardCharsets.UTF_8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the nodes whose heartbeat is within the lease time.
+     *
+     * @return live node IDs
+     */
+    public List<String> liveNodes() {
+        final List<String> live = new ArrayList<>();
+        for (final Path file : list(nodes)) {
+            final String name = file.getFileName().toString();
+            if (name.endsWith(".heartbeat")) {
+                final String node = name.substring(0, name.length() - ".heartbeat".length());
+                if (isAlive(node)) {
+                    live.add(node);
+                }
+            }
+        }
+        return live;
+    }
+
+    /**
+     * Deletes published statuses older than the TTL and heartbeats of long-dead nodes.
+     *
+     * @param ttlMillis how long finished statuses are kept
+     */
+    public void sweep(final long ttlMillis) {
+        final long now = System.currentTimeMillis();
+        for (final Path file : list(status)) {
+            if (now - modified(file).toMillis() > ttlMillis) {
+                deleteQuietly(file);
+            }
+        }
+        for (final Path file : list(nodes)) {
+            if (now - modified(file).toMillis() > Math.max(ttlMillis, leaseMillis)) {
+                deleteQuietly(file);
+            }
+        }
+    }
+
+    /** Moves a job file to this node's lease and bumps its attempt count. */
+    private Claim lease(final Path file, final String jobId) {
+        final Path target = runningFile(jobId);
+        try {
+            Files.createDirectories(running);
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final NoSuchFileException | FileAlreadyExistsException e) {
+            // Another node got there first
+            return null;
+        } catch (final IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Error leasing job {}: {}", jobId, e.getMessage());
+            }
+            return null;
+        }
+        try {
+            final Map<String, Object> spec = readJson(target);
+            if (spec == null) {
+                return null;
+            }
+            final int attempts = spec.get("attempts") instanceof Number n ? n.intValue() : 0;
+            spec.put("attempts", attempts + 1);
+            writeJson(target, spec);
+            return new Claim(jobId, spec);
+        } catch (final IOException | JsonSyntaxException e) {
+            if (log.isErrorEnabled()) {
+                log.error("Unreadable job {}, dropping its lease", jobId, e);
+            }
+            deleteQuietly(target);
+            return null;
+        }
+    }
+
+    private boolean isAlive(final String node) {
+        final Path file = nodes.resolve(node + ".heartbeat");
+        try {
+            final long beat = Long.parseLong(Files.readString(file, StandardCharsets.UTF_8).trim());
+            return System.currentTimeMillis() - beat <= leaseMillis;
+        } catch (final IOException | NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private Path runningFile(final String jobId) {
+        return running.resolve(jobId + OWNER + nodeId + JSON);
+    }
+
+    private static String stripJson(final String name) {
+        return name.endsWith(JSON) ? name.substring(0, name.length() - JSON.length()) : name;
+    }
+
+    private static List<Path> list(final Path dir) {
+        final List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (final Path file : stream) {
+                // Skip files still being written
+                if (!file.getFileName().toString().endsWith(".tmp")) {
+                    files.add(file);
+                }
+            }
+        } catch (final IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Error listing {}: {}", dir, e.getMessage());
+            }
+        }
+        return files;
+    }
+
+    private static FileTime modified(final Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (final IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void writeJson(final Path file, final Map<String, Object> value) throws IOException {
+        Files.createDirectories(file.getParent());
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer buffer = ByteBuffer.wrap(gson.toJson(value).getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Map<String, Object> readJson(final Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        return gson.fromJson(Files.readString(file, StandardCharsets.UTF_8), RECORD_TYPE);
+    }
+
+    private static void deleteQuietly(final Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (final IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Error deleting {}: {}", file, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.hulft.mcp;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Streams processed jobs as newline-delimited JSON or CSV.
+ * Jobs are enumerated from the {@link JobIndex} by date range and type, so
+ * non-matching jobs are never read. Metadata files are read in parallel through a
+ * bounded window of futures and written in index order, keeping memory constant
+ * regardless of how many jobs are exported.
+ */
+@Slf4j
+public class JobExporter {
+    /** Fields exported when the caller does not select any */
+    public static final List<String> DEFAULT_FIELDS = List.of(
+        "jobId", "uploadTime", "filename", "finalClassification.type", "extractedFields");
+
+    @SuppressWarnings("PMD.FieldNamingConventions") // Gson instance, not primitive constant
+    private static final Gson gson = new Gson();
+
+    private final JobStore store;
+    private final JobIndex index;
+    private final ExecutorService readers;
+    private final int window;
+
+    public JobExporter(final JobStore store, final JobIndex index, final int parallelism) {
+        this.store = store;
+        this.index = index;
+        this.window = parallelism * 4;
+        this.readers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            final Thread thread = new Thread(runnable, "export-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Writes matching jobs to a writer.
+     *
+     * @param fromDate first date ({@code yyyy-MM-dd}), inclusive, or null
+     * @param toDate last date ({@code yyyy-MM-dd}), inclusive, or null
+     * @param docType document type filter, or null for all types
+     * @param format {@code ndjson} or {@code csv}
+     * @param fields dotted field paths to export, or empty for {@link #DEFAULT_FIELDS}
+     * @param out destination, flushed but not closed
+     * @return number of jobs written
+     * @throws IOException if writing fails
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    public long export(final String fromDate, final String toDate, final String docType, final String format,
+            final List<String> fields, final Writer out) throws IOException {
+        final boolean csv = "csv".equals(format);
+        if (!csv && !"ndjson".equals(format)) {
+            throw new IllegalArgumentException("Unknown export format: " + format);
+        }
+        final List<String> columns = fields == null || fields.isEmpty() ? DEFAULT_FIELDS : fields;
+        if (csv) {
+            writeCsvRow(out, new ArrayList<>(columns));
+        }
+
+        final Deque<Future<Map<String, Object>>> pending = new ArrayDeque<>();
+        long written = 0;
+        try {
+            for (final JobIndex.Entry entry : index.range(fromDate, toDate)) {
+                if (docType != null && !docType.equals(entry.type)) {
+                    continue;
+                }
+                if (pending.size() >= window) {
+                    written += write(pending.removeFirst(), columns, csv, out);
+                }
+                pending.addLast(readers.submit(() -> read(entry)));
+            }
+            while (!pending.isEmpty()) {
+                written += write(pending.removeFirst(), columns, csv, out);
+            }
+        } finally {
+            pending.forEach(f -> f.cancel(true));
+        }
+        out.flush();
+        return written;
+    }
+
+    private Map<String, Object> read(final JobIndex.Entry entry) throws IOException {
+        final Path jobPath = store.findJobFolder(entry.jobId);
+        return jobPath == null ? null : store.readMetadata(jobPath);
+    }
+
+    private static int write(final Future<Map<String, Object>> future, final List<String> columns, final boolean csv,
+            final Writer out) throws IOException {
+        final Map<String, Object> meta;
+        try {
+            meta = future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", e);
+        } catch (final ExecutionException e) {
+            throw new IOException("Error reading job metadata", e.getCause());
+        }
+        if (meta == null || meta.isEmpty()) {
+            return 0;
+        }
+        if (csv) {
+            final List<String> values = new ArrayList<>();
+            for (final String column : columns) {
+                final Object value = lookup(meta, column);
+                values.add(value == null ? "" : value instanceof String ? (String) value : gson.toJson(value));
+            }
+            writeCsvRow(out, values);
+        } else {
+            final Map<String, Object> record = new LinkedHashMap<>();
+            for (final String column : columns) {
+                record.put(column, lookup(meta, column));
+            }
+            out.write(gson.toJson(record));
+            out.write('\n');
+        }
+        return 1;
+    }
+
+    /**
+     * Resolves a dotted path such as {@code extractedFields.total_amount}.
+     *
+     * @param meta job metadata
+     * @param path dotted field path
+     * @return the value, or null if any segment is missing
+     */
+    @SuppressWarnings("unchecked")
+    static Object lookup(final Map<String, Object> meta, final String path) {
+        Object current = meta;
+        for (final String part : path.split("\\.")) {
+            if (!(current instanceof Map)) {
+                return null;
+            }
+            current = ((Map<String, Object>) current).get(part);
+        }
+        return current;
+    }
+
+    private static void writeCsvRow(final Writer out, final List<String> values) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            final String value = values.get(i);
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                out.write('"');
+                out.write(value.replace("\"", "\"\""));
+                out.write('"');
+            } else {
+                out.write(value);
+            }
+        }
+        out.write("\r\n");
+    }
+
+    public void shutdown() {
+        readers.shutdown();
+    }
+}
@@ -0,0 +1,305 @@
+package com.hulft.mcp;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compact index of the job store, ordered by date and job ID.
+ * Each entry holds only the date, ID, document type and status columns, so listing
+ * jobs never walks {@code jobs/yyyy/mm/dd/*} or parses {@code meta.json}.
+ * The index is kept in memory and persisted as an append-only TSV file that is
+ * replayed (and compacted) on load.
+ */
+@Slf4j
+public class JobIndex {
+    private static final char SEPARATOR = '\t';
+
+    private final Path file;
+    /** Entries examined per filtered page before it is returned short with a cursor */
+    private final int maxScan;
+    /** Entries keyed by {@code yyyy-MM-dd/jobId} */
+    private final ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+    private final Map<String, String> keysById = new ConcurrentHashMap<>();
+    private BufferedWriter writer;
+    private volatile boolean loaded;
+
+    public JobIndex(final Path file) {
+        this(file, Integer.getInteger("hulft.jobIndex.maxScan", 10_000));
+    }
+
+    /**
+     * Creates an index that bounds the work of each filtered page.
+     *
+     * @param file the index file
+     * @param maxScan entries examined per page before it is cut short
+     */
+    public JobIndex(final Path file, final int maxScan) {
+        this.file = file;
+        this.maxScan = maxScan;
+    }
+
+    /**
+     * A single indexed job.
+     */
+    public static class Entry {
+        /** Job identifier */
+        public final String jobId;
+        /** Job folder date as {@code yyyy-MM-dd} */
+        public final String date;
+        /** Document type, or the job kind when unclassified */
+        public final String type;
+        /** Job status */
+        public final String status;
+
+        Entry(final String jobId, final String date, final String type, final String status) {
+            this.jobId = jobId;
+            this.date = date;
+            this.type = type;
+            this.status = status;
+        }
+    }
+
+    /**
+     * One page of index entries.
+     */
+    public static class Page {
+        /** Entries on this page, newest day first */
+        public final List<Entry> entries;
+        /** Opaque cursor for the next page, or null on the last page */
+        public final String nextCursor;
+
+        Page(final List<Entry> entries, final String nextCursor) {
+            this.entries = entries;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    /**
+     * Loads the index from disk. When no index file exists yet, it is built once
+     * from the job store so existing jobs are listed.
+     *
+     * @param store job store used to build a missing index
+     * @throws IOException if the index cannot be read or written
+     */
+    public void load(final JobStore store) throws IOException {
+        if (!loaded) {
+            loadOnce(store);
+        }
+    }
+
+    private synchronized void loadOnce(final JobStore store) throws IOException {
+        if (loaded) {
+            return;
+        }
+        int lines = 0;
+        if (Files.exists(file)) {
+            for (final String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                final String[] columns = line.split(String.valueOf(SEPARATOR), -1);
+                if (columns.length == 4) {
+                    apply(new Entry(columns[1], columns[0], columns[2], columns[3]));
+                    lines++;
+                }
+            }
+        } else if (store != null) {
+            for (final Path jobPath : store.listJobFolders(Integer.MAX_VALUE)) {
+                final Map<String, Object> meta = store.readMetadata(jobPath);
+                apply(new Entry(jobPath.getFileName().toString(), JobStore.dateOf(jobPath), typeOf(meta), statusOf(meta)));
+            }
+            lines = -1;
+        }
+        if (lines != entries.size()) {
+            compact();
+        }
+        loaded = true;
+        if (log.isInfoEnabled()) {
+            log.info("Job index loaded: {} jobs", entries.size());
+        }
+    }
+
+    /**
+     * Records a job's metadata, replacing any previous entry for the job.
+     *
+     * @param jobPath the job folder
+     * @param metadata the job metadata as saved to {@code meta.json}
+     */
+    public void record(final Path jobPath, final Map<String, Object> metadata) {
+        put(new Entry(jobPath.getFileName().toString(), JobStore.dateOf(jobPath), typeOf(metadata), statusOf(metadata)));
+    }
+
+    /**
+     * Adds or replaces an entry and appends it to the index file.
+     *
+     * @param entry the entry
+     */
+    public synchronized void put(final Entry entry) {
+        apply(entry);
+        try {
+            if (writer == null) {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(format(entry));
+            writer.flush();
+        } catch (final IOException e) {
+            if (log.isErrorEnabled()) {
+                log.error("Error appending to job index {}", file, e);
+            }
+        }
+    }
+
+    /**
+     * Looks up a job by ID.
+     *
+     * @param jobId the job identifier
+     * @return the entry, or null if the job is not indexed
+     */
+    public Entry get(final String jobId) {
+        final String key = keysById.get(jobId);
+        return key == null ? null : entries.get(key);
+    }
+
+    /**
+     * Returns the number of indexed jobs.
+     *
+     * @return job count
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns a page of jobs, newest day first. Jobs of the same day are in no
+     * particular order, since job IDs are random and job folders record no time of day.
+     * Each page is a seek into the ordered key space followed by at most {@code limit}
+     * steps, independent of index size.
+     * With a type filter, at most {@code maxScan} entries (or {@code limit}, if larger)
+     * are examined, so a rare type cannot make one page walk the whole index; the page
+     * may then hold fewer than {@code limit} entries, or none, and its cursor resumes
+     * after the last entry examined.
+     *
+     * @param cursor cursor from a previous page, or null for the first page
+     * @param limit maximum entries per page
+     * @param type document type filter, or null for all types
+     * @return the page
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public Page list(final String cursor, final int limit, final String type) {
+        final NavigableMap<String, Entry> newestFirst = cursor == null
+            ? entries.descendingMap()
+            : entries.headMap(decodeCursor(cursor), false).descendingMap();
+        final List<Entry> page = new ArrayList<>();
+        final Iterator<Map.Entry<String, Entry>> it = newestFirst.entrySet().iterator();
+        String lastKey = null;
+        int scanned = 0;
+        final int scanLimit = Math.max(limit, maxScan);
+        while (it.hasNext() && page.size() < limit && scanned++ < scanLimit) {
+            final Map.Entry<String, Entry> next = it.next();
+            lastKey = next.getKey();
+            if (type == null || type.equals(next.getValue().type)) {
+                page.add(next.getValue());
+            }
+        }
+        final String nextCursor = it.hasNext() && lastKey != null ? encodeCursor(lastKey) : null;
+        return new Page(page, nextCursor);
+    }
+
+    /**
+     * Returns entries dated within a range, oldest first. The returned view is
+     * backed by the index and iterated lazily.
+     *
+     * @param fromDate first date ({@code yyyy-MM-dd}), inclusive, or null
+     * @param toDate last date ({@code yyyy-MM-dd}), inclusive, or null
+     * @return entries in range
+     */
+    public Iterable<Entry> range(final String fromDate, final String toDate) {
+        final String from = fromDate == null ? "" : fromDate;
+        final String to = (toDate == null ? "9999-12-31" : toDate) + "/\uffff";
+        return entries.subMap(from, true, to, true).values();
+    }
+
+    /**
+     * Closes the index file.
+     */
+    public synchronized void close() {
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        } catch (final IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Error closing job index: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void apply(final Entry entry) {
+        final String key = entry.date + "/" + entry.jobId;
+        final String previous = keysById.put(entry.jobId, key);
+        if (previous != null && !previous.equals(key)) {
+            entries.remove(previous);
+        }
+        entries.put(key, entry);
+    }
+
+    /** Rewrites the index file with one line per job. */
+    private void compact() throws IOException {
+        close();
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (final Entry entry : entries.values()) {
+                out.write(format(entry));
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String format(final Entry entry) {
+        return entry.date + SEPARATOR + entry.jobId + SEPARATOR + clean(entry.type) + SEPARATOR + clean(entry.status) + '\n';
+    }
+
+    private static String clean(final String value) {
+        return value == null ? "" : value.replace(SEPARATOR, ' ').replace('\n', ' ');
+    }
+
+    @SuppressWarnings("unchecked")
+    static String typeOf(final Map<String, Object> metadata) {
+        final Object consensus = metadata.get("finalClassification");
+        if (consensus instanceof Map && ((Map<String, Object>) consensus).get("type") != null) {
+            return (String) ((Map<String, Object>) consensus).get("type");
+        }
+        return (String) metadata.getOrDefault("type", "unknown");
+    }
+
+    static String statusOf(final Map<String, Object> metadata) {
+        return (String) metadata.getOrDefault("status", "completed");
+    }
+
+    private static String encodeCursor(final String key) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(final String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (final IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package com.hulft.mcp;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only write-ahead log of job creation, state transitions and results.
+ * Records are JSON lines in {@code journal.log}. Appends from all threads are
+ * handed to a single writer thread that writes whatever has queued up and issues
+ * one {@code fsync} for the whole batch (group commit), so concurrent submits
+ * share the cost of a sync instead of paying for one each. Once the log has grown past
+ * {@code hulft.journal.compactBytes} (64 MB), or twice its size after the last
+ * compaction, the writer rewrites it between batches with one merged record per job
+ * that has not been evicted, so a long-running server's log stays proportional to the
+ * jobs it holds.
+ * Large job payloads are spooled to {@code <jobId>.json} and large results are
+ * offloaded to {@code <jobId>.result.json} beside the log, which only records
+ * their presence.
+ */
+@Slf4j
+public class JobJournal {
+    private static final String LOG_FILE = "journal.log";
+    private static final int MAX_BATCH = 512;
+    private static final Type RECORD_TYPE = new TypeToken<Map<String, Object>>() { }.getType();
+    /** Queued by {@link #close()} to stop the writer; not interrupting it keeps the channel open mid-write */
+    private static final Pending STOP = new Pending(new byte[0]);
+
+    @SuppressWarnings("PMD.FieldNamingConventions") // Gson instance, not primitive constant
+    private static final Gson gson = new Gson();
+
+    private final Path dir;
+    private final long compactBytes;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    /** Replaced by the writer thread when it compacts the log */
+    private volatile FileChannel channel;
+    private Thread writer;
+    private volatile boolean closed;
+    /** Log size at which the writer compacts next */
+    private long compactAt;
+
+    public JobJournal(final Path dir) {
+        this(dir, Long.getLong("hulft.journal.compactBytes", 64L * 1024 * 1024));
+    }
+
+    /**
+     * Creates a journal that compacts itself as it grows.
+     *
+     * @param dir directory holding the log, payloads and results
+     * @param compactBytes log size that triggers a compaction
+     */
+    public JobJournal(final Path dir, final long compactBytes) {
+        this.dir = dir;
+        this.compactBytes = compactBytes;
+    }
+
+    /** A record waiting for the writer thread. */
+    private static final class Pending {
+        final byte[] line;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(final byte[] line) {
+            this.line = line;
+        }
+    }
+
+    /**
+     * Appends a record and waits until it is durable on disk.
+     *
+     * @param record the record, serialized as one JSON line
+     * @throws IOException if the record cannot be written or synced
+     */
+    public void append(final Map<String, Object> record) throws IOException {
+        try {
+            appendAsync(record).join();
+        } catch (final CompletionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Appends a record without waiting for it to be synced.
+     *
+     * @param record the record, serialized as one JSON line
+     * @return future completed once the batch holding the record is synced
+     * @throws IOException if the journal cannot be opened
+     */
+    public CompletableFuture<Void> appendAsync(final Map<String, Object> record) throws IOException {
+        open();
+        final Pending pending = new Pending((gson.toJson(record) + "\n").getBytes(StandardCharsets.UTF_8));
+        queue.add(pending);
+        if (closed) {
+            // Lost the race with close(), the writer may never see this record
+            pending.done.completeExceptionally(new IOException("Job journal is closed"));
+        }
+        return pending.done;
+    }
+
+    /**
+     * Spools a job payload beside the log. The file is synced and atomically renamed
+     * into place before returning, so a journaled job never refers to a partial payload.
+     *
+     * @param jobId the job identifier
+     * @param payload the payload
+     * @throws IOException if the payload cannot be written
+     */
+    public void writePayload(final String jobId, final Map<String, Object> payload) throws IOException {
+        writeJson(payloadFile(jobId), payload);
+    }
+
+    /**
+     * Reads a spooled payload.
+     *
+     * @param jobId the job identifier
+     * @return the payload, or null if none was spooled
+     * @throws IOException if the payload cannot be read
+     */
+    public Map<String, Object> readPayload(final String jobId) throws IOException {
+        return readJson(payloadFile(jobId));
+    }
+
+    /**
+     * Deletes a spooled payload once its job has finished.
+     *
+     * @param jobId the job identifier
+     */
+    public void deletePayload(final String jobId) {
+        delete(payloadFile(jobId));
+    }
+
+    /**
+     * Offloads a job result beside the log, synced like a payload.
+     *
+     * @param jobId the job identifier
+     * @param result the result
+     * @return the result file
+     * @throws IOException if the result cannot be written
+     */
+    public Path writeResult(final String jobId, final Map<String, Object> result) throws IOException {
+        final Path file = resultFile(jobId);
+        writeJson(file, result);
+        return file;
+    }
+
+    /**
+     * Reads an offloaded result.
+     *
+     * @param jobId the job identifier
+     * @return the result, or null if none was offloaded
+     * @throws IOException if the result cannot be read
+     */
+    public Map<String, Object> readResult(final String jobId) throws IOException {
+        return readJson(resultFile(jobId));
+    }
+
+    /**
+     * Deletes an offloaded result once its job is evicted.
+     *
+     * @param jobId the job identifier
+     */
+    public void deleteResult(final String jobId) {
+        delete(resultFile(jobId));
+    }
+
+    /**
+     * Replays the log, merging records per job so the latest value of each key wins.
+     * A torn final line left by a crash is ignored.
+     *
+     * @return merged records keyed by job ID, in creation order
+     * @throws IOException if the log cannot be read
+     */
+    public Map<String, Map<String, Object>> replay() throws IOException {
+        final Map<String, Map<String, Object>> jobs = new LinkedHashMap<>();
+        final Path file = dir.resolve(LOG_FILE);
+        if (!Files.exists(file)) {
+            return jobs;
+        }
+        for (final String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            final Map<String, Object> record;
+            try {
+                record = gson.fromJson(line, RECORD_TYPE);
+            } catch (final JsonSyntaxException e) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Skipping corrupt job journal record: {}", e.getMessage());
+                }
+                continue;
+            }
+            final Object jobId = record.get("jobId");
+            if (jobId != null) {
+                jobs.computeIfAbsent((String) jobId, id -> new LinkedHashMap<>()).putAll(record);
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Rewrites the log with one merged record per job. Must be called before any
+     * new appends, typically right after {@link #replay()}.
+     *
+     * @param records merged records to keep
+     * @throws IOException if the log cannot be rewritten
+     */
+    public synchronized void compact(final Collection<Map<String, Object>> records) throws IOException {
+        if (channel != null) {
+            throw new IllegalStateException("Job journal is already open for appends");
+        }
+        rewrite(records);
+    }
+
+    /** Replaces the log with the given records through a synced temporary file. */
+    private void rewrite(final Collection<Map<String, Object>> records) throws IOException {
+        Files.createDirectories(dir);
+        final Path tmp = dir.resolve(LOG_FILE + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (final Map<String, Object> record : records) {
+                out.write(gson.toJson(record));
+                out.write('\n');
+            }
+        }
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            out.force(false);
+        }
+        Files.move(tmp, dir.resolve(LOG_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Compacts the log once it has reached {@link #compactAt}. Runs on the writer thread
+     * between batches, so no append can land in the log being replaced.
+     */
+    private void compactIfGrown() {
+        try {
+            final long size = channel.size();
+            if (size < compactAt) {
+                return;
+            }
+            final Map<String, Map<String, Object>> records = replay();
+            records.values().removeIf(record -> "evicted".equals(record.get("status")));
+            rewrite(records.values());
+            final FileChannel compacted = openLog();
+            channel.close();
+            channel = compacted;
+            compactAt = Math.max(compactBytes, compacted.size() * 2);
+            if (log.isInfoEnabled()) {
+                log.info("Job journal compacted from {} to {} bytes, {} jobs", size, compacted.size(), records.size());
+            }
+        } catch (final IOException e) {
+            compactAt += compactBytes;
+            if (log.isWarnEnabled()) {
+                log.warn("Error compacting job journal, appending to it as before: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stops the writer thread after flushing queued records and closes the log.
+     */
+    public synchronized void close() {
+        closed = true;
+        if (writer != null) {
+            queue.add(STOP);
+            try {
+                writer.join(5000);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writer = null;
+        }
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        } catch (final IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Error closing job journal: {}", e.getMessage());
+            }
+        }
+    }
+
+    private synchronized void open() throws IOException {
+        if (closed) {
+            throw new IOException("Job journal is closed");
+        }
+        if (channel != null) {
+            return;
+        }
+        Files.createDirectories(dir);
+        channel = openLog();
+        compactAt = Math.max(compactBytes, channel.size() * 2);
+        writer = new Thread(this::writeLoop, "job-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private FileChannel openLog() throws IOException {
+        return FileChannel.open(dir.resolve(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+    }
+
+    private void writeLoop() {
+        final List<Pending> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            final boolean stop = batch.remove(STOP);
+            if (!batch.isEmpty()) {
+                commit(batch);
+                batch.clear();
+                compactIfGrown();
+            }
+            if (stop) {
+                return;
+            }
+        }
+    }
+
+    /** Writes a batch and syncs it once, then releases every waiting caller. */
+    private void commit(final List<Pending> batch) {
+        int size = 0;
+        for (final Pending pending : batch) {
+            size += pending.line.length;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (final Pending pending : batch) {
+            buffer.put(pending.line);
+        }
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            for (final Pending pending : batch) {
+                pending.done.complete(null);
+            }
+        } catch (final IOException e) {
+            if (log.isErrorEnabled()) {
+                log.error("Error writing job journal", e);
+            }
+            for (final Pending pending : batch) {
+                pending.done.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void writeJson(final Path file, final Map<String, Object> value) throws IOException {
+        Files.createDirectories(dir);
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer buffer = ByteBuffer.wrap(gson.toJson(value).getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Map<String, Object> readJson(final Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        return gson.fromJson(Files.readString(file, StandardCharsets.UTF_8), RECORD_TYPE);
+    }
+
+    private static void delete(final Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (final IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Error deleting {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    private Path payloadFile(final String jobId) {
+        return dir.resolve(jobId + ".json");
+    }
+
+    private Path resultFile(final String jobId) {
+        return dir.resolve(jobId + ".result.json");
+    }
+}
@@ -1,17 +1,179 @@
 package com.hulft.mcp;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
 
 /**
- * Manages asynchronous job processing and status tracking.
- * Provides a thread pool for background task execution with job status monitoring.
+ * Runs jobs on a bounded pool of workers and tracks their status. Jobs can be
+ * journaled to survive a restart and shared with other nodes through a
+ * {@link JobCluster}; finished jobs are kept until a TTL or size limit evicts them.
  */
+@Slf4j
 public class JobManager {
+    /** Runs before a job that keeps crashing the server is given up on */
+    static final int MAX_ATTEMPTS = 3;
+    /** Serialized result size above which results are offloaded to disk */
+    static final int OFFLOAD_THRESHOLD = 16 * 1024;
+
+    @SuppressWarnings("PMD.FieldNamingConventions") // Gson instance, not primitive constant
+    private static final com.google.gson.Gson gson = new com.google.gson.Gson();
+
     private final Map<String, JobStatus> jobs = new ConcurrentHashMap<>();
-    private final ExecutorService executor = Executors.newFixedThreadPool(10);
+    private final ThreadPoolExecutor executor;
+    private final FairShareQueue queue;
+    private final RejectionPolicy rejectionPolicy;
+    /** Handlers by job kind, given the job ID and the payload */
+    private final Map<String, BiFunction<String, Map<String, Object>, Map<String, Object>>> handlers = new ConcurrentHashMap<>();
+    private final JobJournal journal;
+    private final JobCluster cluster;
+    private final ScheduledExecutorService poller;
+    /** Cluster jobs this node holds the lease on */
+    private final Set<String> leased = ConcurrentHashMap.newKeySet();
+    private volatile int liveNodes = 1;
+    private volatile boolean draining;
+    private final int maxJobs;
+    private final long ttlMillis;
+    /** Finished job IDs in the order they finished */
+    private final Deque<String> finished = new ArrayDeque<>();
+    /** Recovered jobs that found the queue full, fed into it as workers finish */
+    private final Deque<Runnable> deferred = new ArrayDeque<>();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong ran = new AtomicLong();
+    private final AtomicLong runNanos = new AtomicLong();
+
+    /**
+     * What happens to a job submitted while the queue is full.
+     */
+    public enum RejectionPolicy {
+        /** Refuse the job with a {@link ServerBusyException} */
+        ABORT,
+        /** Run the job on the submitting thread, slowing the caller down */
+        CALLER_RUNS
+    }
+
+    /**
+     * Creates an in-memory job manager; jobs do not survive a restart.
+     */
+    public JobManager() {
+        this(null);
+    }
+
+    /**
+     * Creates a job manager backed by a write-ahead journal, bounded by the
+     * {@code hulft.jobs.max} and {@code hulft.jobs.ttlMillis} system properties
+     * (10000 jobs and one hour by default).
+     *
+     * @param journal the journal, or null to keep jobs in memory only
+     */
+    public JobManager(final JobJournal journal) {
+        this(journal, null);
+    }
+
+    /**
+     * Creates a job manager that shares work with other nodes through a cluster
+     * directory, bounded like {@link #JobManager(JobJournal)}. Submitted jobs go to the
+     * cluster directory instead of the local queue; every node claims pending jobs when
+     * it has an idle worker, takes over the jobs of nodes that stopped heartbeating, and
+     * answers status queries for jobs that ran anywhere in the cluster. Cluster jobs are
+     * polled every {@code hulft.cluster.pollMillis} (500) milliseconds.
+     *
+     * @param journal the journal, or null to keep local jobs in memory only
+     * @param cluster the cluster, or null to run jobs locally
+     */
+    public JobManager(final JobJournal journal, final JobCluster cluster) {
+        this(journal, Integer.getInteger("hulft.jobs.max", 10_000), Long.getLong("hulft.jobs.ttlMillis", 3_600_000L),
+            Integer.getInteger("hulft.jobs.workers", VirtualThreads.enabled() ? 1000 : 10),
+            Integer.getInteger("hulft.jobs.queueCapacity", 100),
+            RejectionPolicy.valueOf(System.getProperty("hulft.jobs.rejectionPolicy", "ABORT")),
+            cluster, Long.getLong("hulft.cluster.pollMillis", 500L));
+    }
+
+    /**
+     * Creates a bounded job manager. Workers, queue capacity and rejection policy come
+     * from the {@code hulft.jobs.workers} (10, or 1000 in virtual-thread mode),
+     * {@code hulft.jobs.queueCapacity} (100) and {@code hulft.jobs.rejectionPolicy}
+     * ({@code ABORT}) system properties. One session may hold half of the queue.
+     *
+     * @param journal the journal, or null to keep jobs in memory only
+     * @param maxJobs jobs kept before the oldest finished jobs are evicted
+     * @param ttlMillis how long finished jobs are kept
+     */
+    public JobManager(final JobJournal journal, final int maxJobs, final long ttlMillis) {
+        this(journal, maxJobs, ttlMillis, Integer.getInteger("hulft.jobs.workers", VirtualThreads.enabled() ? 1000 : 10),
+            Integer.getInteger("hulft.jobs.queueCapacity", 100),
+            RejectionPolicy.valueOf(System.getProperty("hulft.jobs.rejectionPolicy", "ABORT")));
+    }
+
+    /**
+     * Creates a bounded job manager.
+     *
+     * @param journal the journal, or null to keep jobs in memory only
+     * @param maxJobs jobs kept before the oldest finished jobs are evicted
+     * @param ttlMillis how long finished jobs are kept
+     * @param workers worker threads, virtual in virtual-thread mode
+     * @param queueCapacity jobs that may wait for a worker
+     * @param rejectionPolicy what to do when the queue is full
+     */
+    public JobManager(final JobJournal journal, final int maxJobs, final long ttlMillis, final int workers,
+            final int queueCapacity, final RejectionPolicy rejectionPolicy) {
+        this(journal, maxJobs, ttlMillis, workers, queueCapacity, rejectionPolicy, null, 0);
+    }
+
+    /**
+     * Creates a bounded job manager that is a member of a cluster.
+     *
+     * @param journal the journal, or null to keep local jobs in memory only
+     * @param maxJobs jobs kept before the oldest finished jobs are evicted
+     * @param ttlMillis how long finished jobs are kept, locally and in the cluster
+     * @param workers worker threads, virtual in virtual-thread mode
+     * @param queueCapacity jobs that may wait for a worker, per live node in the cluster
+     * @param rejectionPolicy what to do when the queue is full
+     * @param cluster the cluster, or null to run jobs locally
+     * @param pollMillis interval between heartbeats and claims of cluster jobs
+     */
+    public JobManager(final JobJournal journal, final int maxJobs, final long ttlMillis, final int workers,
+            final int queueCapacity, final RejectionPolicy rejectionPolicy, final JobCluster cluster,
+            final long pollMillis) {
+        this.journal = journal;
+        this.cluster = cluster;
+        this.maxJobs = maxJobs;
+        this.ttlMillis = ttlMillis;
+        this.rejectionPolicy = rejectionPolicy;
+        final RejectedExecutionHandler handler = rejectionPolicy == RejectionPolicy.CALLER_RUNS
+            ? new ThreadPoolExecutor.CallerRunsPolicy()
+            : new ThreadPoolExecutor.AbortPolicy();
+        this.queue = new FairShareQueue(queueCapacity, Integer.getInteger("hulft.jobs.sessionQueueLimit", queueCapacity / 2));
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+            queue, VirtualThreads.factory("job-worker-"), handler);
+        if (cluster == null) {
+            this.poller = null;
+        } else {
+            this.poller = Executors.newSingleThreadScheduledExecutor(VirtualThreads.platform("job-cluster-"));
+            poller.scheduleWithFixedDelay(this::poll, 0, pollMillis, TimeUnit.MILLISECONDS);
+            poller.scheduleWithFixedDelay(() -> cluster.sweep(ttlMillis), 1, 1, TimeUnit.MINUTES);
+        }
+    }
     
     /**
      * Represents the status of an asynchronous job.
@@ -23,6 +185,12 @@ public class JobManager {
         public Map<String, Object> result;
         /** Error message if job fails */
         public String error;
+        /** Offloaded result file when the result was too large to keep in memory */
+        public String resultFile;
+        /** When the job completed or failed, in epoch milliseconds */
+        public long finishedAt;
+        /** Partial results reported while the job runs on this node, or null; not journaled */
+        public volatile Map<String, Object> progress;
     }
     
     /**
@@ -35,8 +203,199 @@ public class JobManager {
         final JobStatus status = new JobStatus();
         status.status = "processing";
         jobs.put(jobId, status);
+        journal(record(jobId, "processing"));
+        return jobId;
+    }
+
+    /**
+     * Registers the handler that runs jobs of a kind. Only jobs submitted through
+     * {@link #submit(String, Map)} can be resumed after a restart, since their work is
+     * described by a kind and a payload rather than a closure.
+     *
+     * @param kind the job kind
+     * @param handler turns a payload into a result
+     */
+    public void registerHandler(final String kind, final Function<Map<String, Object>, Map<String, Object>> handler) {
+        handlers.put(kind, (jobId, payload) -> handler.apply(payload));
+    }
+
+    /**
+     * Registers a handler that is also given the job ID, so it can
+     * {@link #reportProgress report progress} while it runs.
+     *
+     * @param kind the job kind
+     * @param handler turns a job ID and payload into a result
+     */
+    public void registerHandler(final String kind, final BiFunction<String, Map<String, Object>, Map<String, Object>> handler) {
+        handlers.put(kind, handler);
+    }
+
+    /**
+     * Records a partial result of a running job, such as the fields extracted so far,
+     * which {@link #getJobStatus} returns until the job finishes. Progress lives only in
+     * this node's memory; it is dropped when the job finishes and is not journaled.
+     *
+     * @param jobId the job identifier
+     * @param key what the progress is about, such as a file name
+     * @param value the partial result, replacing the previous one for the key
+     */
+    public void reportProgress(final String jobId, final String key, final Object value) {
+        final JobStatus status = jobs.get(jobId);
+        if (status == null) {
+            return;
+        }
+        synchronized (status) {
+            if ("processing".equals(status.status)) {
+                if (status.progress == null) {
+                    status.progress = new ConcurrentHashMap<>();
+                }
+                status.progress.put(key, value);
+            }
+        }
+    }
+
+    /**
+     * Creates a job for the default session at normal priority and submits it.
+     *
+     * @param kind the job kind, which must have a registered handler
+     * @param payload the job input, serializable as JSON
+     * @return unique job identifier
+     * @throws IllegalArgumentException if no handler is registered for the kind
+     * @throws ServerBusyException if the queue is full
+     * @throws IOException if the job cannot be journaled
+     * @see #submit(String, Map, String, FairShareQueue.Priority, double)
+     */
+    public String submit(final String kind, final Map<String, Object> payload) throws IOException {
+        return submit(kind, payload, null, FairShareQueue.Priority.NORMAL, 1);
+    }
+
+    /**
+     * Creates a job and submits it for asynchronous execution. With a journal, the
+     * payload and the creation record are durable before the job ID is returned.
+     * Waiting jobs are scheduled fairly across sessions by a {@link FairShareQueue}, so
+     * one session's bulk uploads cannot hold every worker while another session waits.
+     *
+     * @param kind the job kind, which must have a registered handler
+     * @param payload the job input, serializable as JSON
+     * @param session session the job is scheduled under, or null for the default session
+     * @param priority scheduling hint
+     * @param cost relative cost used for fair sharing, e.g. megabytes of input
+     * @return unique job identifier
+     * @throws IllegalArgumentException if no handler is registered for the kind
+     * @throws ServerBusyException if the queue or the session's share of it is full
+     * @throws IOException if the job cannot be journaled
+     */
+    public String submit(final String kind, final Map<String, Object> payload, final String session,
+            final FairShareQueue.Priority priority, final double cost) throws IOException {
+        if (!handlers.containsKey(kind)) {
+            throw new IllegalArgumentException("No handler for job kind: " + kind);
+        }
+        if (draining) {
+            throw new ServerBusyException("Server is shutting down", 5000);
+        }
+        if (cluster != null) {
+            return publish(kind, payload, session, priority, cost);
+        }
+        if (rejectionPolicy == RejectionPolicy.ABORT && !queue.accepts(session)) {
+            // Refuse before spooling anything for a job that would not be queued
+            rejected.incrementAndGet();
+            throw busy();
+        }
+        final String jobId = java.util.UUID.randomUUID().toString();
+        if (journal != null) {
+            journal.writePayload(jobId, payload);
+            final Map<String, Object> record = record(jobId, "processing");
+            record.put("kind", kind);
+            record.put("session", session);
+            record.put("priority", priority.name());
+            record.put("cost", cost);
+            journal.append(record);
+        }
+        final JobStatus status = new JobStatus();
+        status.status = "processing";
+        jobs.put(jobId, status);
+        try {
+            run(jobId, kind, payload, 0, new FairShareQueue.Task(session, priority, cost, null), false);
+        } catch (final ServerBusyException e) {
+            // Lost the race for the last queue slot
+            failJob(jobId, e.getMessage());
+            throw e;
+        }
         return jobId;
     }
+
+    /**
+     * Replays the journal: finished jobs are restored so {@code check_job} still finds
+     * them, and unfinished jobs are re-enqueued with their spooled payload. Jobs that
+     * cannot be resumed, or have already been attempted {@link #MAX_ATTEMPTS} times,
+     * are marked failed. The journal is compacted to one record per job.
+     * Handlers must be registered before calling this. Jobs that do not fit the queue
+     * wait outside it and are fed in as workers finish, so this never blocks startup.
+     *
+     * @return number of jobs re-enqueued
+     * @throws IOException if the journal cannot be read or compacted
+     */
+    public int recover() throws IOException {
+        if (journal == null) {
+            return 0;
+        }
+        final Map<String, Map<String, Object>> records = journal.replay();
+        records.values().removeIf(record -> "evicted".equals(record.get("status")));
+        final List<Map<String, Object>> resume = new ArrayList<>();
+        final List<String> done = new ArrayList<>();
+        for (final Map<String, Object> record : records.values()) {
+            final String jobId = (String) record.get("jobId");
+            final JobStatus status = toStatus(record);
+            if ("processing".equals(status.status)) {
+                final String kind = (String) record.get("kind");
+                final int attempts = record.get("attempts") instanceof Number n ? n.intValue() : 0;
+                if (kind == null || !handlers.containsKey(kind)) {
+                    status.status = "failed";
+                    status.error = "Interrupted by server restart";
+                } else if (attempts >= MAX_ATTEMPTS) {
+                    status.status = "failed";
+                    status.error = "Gave up after " + attempts + " attempts";
+                } else {
+                    resume.add(record);
+                }
+                if ("failed".equals(status.status)) {
+                    record.put("status", status.status);
+                    record.put("error", status.error);
+                    journal.deletePayload(jobId);
+                }
+            }
+            if (!"processing".equals(status.status)) {
+                done.add(jobId);
+            }
+            jobs.put(jobId, status);
+        }
+        journal.compact(records.values());
+        done.sort(Comparator.comparingLong(jobId -> jobs.get(jobId).finishedAt));
+        synchronized (finished) {
+            finished.addAll(done);
+        }
+        evict();
+
+        int resumed = 0;
+        for (final Map<String, Object> record : resume) {
+            final String jobId = (String) record.get("jobId");
+            final Map<String, Object> payload = journal.readPayload(jobId);
+            if (payload == null) {
+                failJob(jobId, "Payload missing after restart");
+                continue;
+            }
+            final int attempts = record.get("attempts") instanceof Number n ? n.intValue() : 0;
+            final FairShareQueue.Task ticket = new FairShareQueue.Task((String) record.get("session"),
+                record.get("priority") == null ? null : FairShareQueue.Priority.valueOf((String) record.get("priority")),
+                record.get("cost") instanceof Number n ? n.doubleValue() : 1, null);
+            run(jobId, (String) record.get("kind"), payload, attempts, ticket, true);
+            resumed++;
+        }
+        if (log.isInfoEnabled()) {
+            log.info("Job journal recovered: {} jobs, {} resumed", records.size(), resumed);
+        }
+        return resumed;
+    }
     
     /**
      * Submits a task for asynchronous execution.
@@ -44,6 +403,7 @@ public class JobManager {
      * @param jobId the job identifier
      * @param task the task to execute
      * @throws IllegalArgumentException if job ID not found
+     * @throws ServerBusyException if the queue is full
      */
     public void submitJob(final String jobId, final Runnable task) {
         final JobStatus status = jobs.get(jobId);
@@ -51,24 +411,119 @@ public class JobManager {
             throw new IllegalArgumentException("Job not found: " + jobId);
         }
         
-        executor.submit(() -> {
+        enqueue(() -> {
             try {
                 task.run();
             } catch (final Exception e) { // NOPMD - Catch all for async error handling
-                status.error = e.getMessage();
-                status.status = "failed";
+                failJob(jobId, e.getMessage());
             }
-        });
+        }, null, false);
     }
     
     /**
-     * Retrieves the current status of a job.
+     * Retrieves the current status of a job. Finished jobs past the TTL are evicted
+     * first, so an expired job is not found even when no other job has finished since.
+     * In a cluster, jobs this node does not hold are looked up in the cluster directory.
      *
      * @param jobId the job identifier
      * @return job status, or null if not found
      */
     public JobStatus getJobStatus(final String jobId) {
-        return jobs.get(jobId);
+        evict();
+        final JobStatus status = jobs.get(jobId);
+        if (status != null || cluster == null) {
+            return status;
+        }
+        final Map<String, Object> record = cluster.status(jobId);
+        return record == null ? null : toStatus(record);
+    }
+
+    /**
+     * Returns a completed job's result, reading it back from disk if it was offloaded.
+     * With a journal, results larger than {@link #OFFLOAD_THRESHOLD} are kept on disk
+     * rather than on the heap.
+     *
+     * @param jobId the job identifier
+     * @return the result, or null if the job is unknown, unfinished or its result is gone
+     */
+    public Map<String, Object> getResult(final String jobId) {
+        final JobStatus status = getJobStatus(jobId);
+        if (status == null || status.result != null || status.resultFile == null || journal == null) {
+            return status == null ? null : status.result;
+        }
+        try {
+            return journal.readResult(jobId);
+        } catch (final IOException e) {
+            if (log.isErrorEnabled()) {
+                log.error("Error reading offloaded result for job {}", jobId, e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns the number of jobs currently held in memory.
+     *
+     * @return live job count
+     */
+    public int liveJobs() {
+        evict();
+        return jobs.size();
+    }
+
+    /**
+     * Returns the number of jobs waiting for a worker.
+     *
+     * @return queue depth
+     */
+    public int queueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Returns the number of jobs that may wait for a worker.
+     *
+     * @return queue capacity
+     */
+    public int queueCapacity() {
+        return executor.getQueue().size() + executor.getQueue().remainingCapacity();
+    }
+
+    /**
+     * Returns the number of sessions with jobs waiting for a worker.
+     *
+     * @return waiting session count
+     */
+    public int waitingSessions() {
+        return queue.waitingSessions();
+    }
+
+    /**
+     * Returns the mean time jobs waited in the queue before a worker picked them up.
+     *
+     * @return mean queue wait in milliseconds
+     */
+    public long averageWaitMillis() {
+        final long count = started.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos.get() / count);
+    }
+
+    /**
+     * Returns the number of submissions refused because the queue was full.
+     *
+     * @return rejected job count
+     */
+    public long rejectedJobs() {
+        return rejected.get();
+    }
+
+    /**
+     * Returns the number of finished jobs evicted since startup.
+     *
+     * @return evicted job count
+     */
+    public long evictedJobs() {
+        return evicted.get();
     }
     
     /**
@@ -80,8 +535,18 @@ public class JobManager {
     public void completeJob(final String jobId, final Map<String, Object> result) {
         final JobStatus status = jobs.get(jobId);
         if (status != null) {
-            status.result = result;
+            final Map<String, Object> record = record(jobId, "completed");
+            final String offloaded = offload(jobId, result);
+            if (offloaded == null) {
+                record.put("result", result);
+                status.result = result;
+            } else {
+                record.put("resultFile", offloaded);
+                status.resultFile = offloaded;
+            }
+            journal(record);
             status.status = "completed";
+            finish(jobId, status);
         }
     }
     
@@ -94,12 +559,345 @@ public class JobManager {
     public void failJob(final String jobId, final String error) {
         final JobStatus status = jobs.get(jobId);
         if (status != null) {
+            final Map<String, Object> record = record(jobId, "failed");
+            record.put("error", error);
+            journal(record);
             status.error = error;
             status.status = "failed";
+            finish(jobId, status);
         }
     }
     
+    /**
+     * Drains the manager for shutdown. New submissions are refused and queued jobs are
+     * not started: journaled jobs stay unfinished for {@link #recover()}, and cluster
+     * jobs go back to the shared queue. Running jobs get until the deadline to finish;
+     * jobs still running after it are resumed later from their stage artifacts.
+     * The manager is shut down afterwards.
+     *
+     * @param timeoutMillis how long to wait for running jobs
+     * @return true if every running job finished in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean drain(final long timeoutMillis) throws InterruptedException {
+        draining = true;
+        executor.shutdown();
+        final boolean drained = executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        shutdown();
+        return drained;
+    }
+
+    /**
+     * Returns whether the manager is draining for shutdown.
+     *
+     * @return true once {@link #drain(long)} was called
+     */
+    public boolean isDraining() {
+        return draining;
+    }
+
     public void shutdown() {
+        if (poller != null) {
+            // Running jobs keep their leases until other nodes see the heartbeat expire
+            poller.shutdownNow();
+        }
         executor.shutdown();
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private void run(final String jobId, final String kind, final Map<String, Object> payload, final int attempts,
+            final FairShareQueue.Task ticket, final boolean wait) {
+        enqueue(() -> {
+            if (draining) {
+                // Not started before the drain: leave it to recovery or another node
+                if (cluster != null && leased.remove(jobId)) {
+                    cluster.release(jobId);
+                }
+                return;
+            }
+            try {
+                if (journal != null) {
+                    final Map<String, Object> record = record(jobId, "processing");
+                    record.put("attempts", attempts + 1);
+                    journal.append(record);
+                }
+                completeJob(jobId, handlers.get(kind).apply(jobId, payload));
+            } catch (final Exception e) { // NOPMD - Catch all for async error handling
+                failJob(jobId, e.getMessage());
+            }
+            if (journal != null) {
+                journal.deletePayload(jobId);
+            }
+        }, ticket, wait);
+    }
+
+    /**
+     * Queues a task, timing its wait and run for metrics.
+     *
+     * @param task the task
+     * @param ticket session, priority and cost to schedule the task with, or null for defaults
+     * @param wait defer the task until a queue slot frees up instead of applying the
+     *     rejection policy
+     * @throws ServerBusyException if the queue is full and the policy aborts
+     */
+    private void enqueue(final Runnable task, final FairShareQueue.Task ticket, final boolean wait) {
+        final long queuedAt = System.nanoTime();
+        final Runnable timed = () -> {
+            final long startedAt = System.nanoTime();
+            waitNanos.addAndGet(startedAt - queuedAt);
+            started.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                runNanos.addAndGet(System.nanoTime() - startedAt);
+                ran.incrementAndGet();
+                requeueDeferred();
+            }
+        };
+        final FairShareQueue.Task scheduled = ticket == null
+            ? new FairShareQueue.Task(null, FairShareQueue.Priority.NORMAL, 1, timed)
+            : new FairShareQueue.Task(ticket.session, ticket.priority, ticket.cost, timed);
+        if (wait) {
+            executor.prestartAllCoreThreads();
+            synchronized (deferred) {
+                // Keep recovered jobs in order behind any that are already deferred
+                if (!deferred.isEmpty() || !executor.getQueue().offer(scheduled)) {
+                    deferred.addLast(scheduled);
+                }
+            }
+            return;
+        }
+        try {
+            executor.execute(scheduled);
+        } catch (final RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw busy();
+        }
+    }
+
+    /** Moves deferred tasks into the queue while it has room for them. */
+    private void requeueDeferred() {
+        synchronized (deferred) {
+            final java.util.Iterator<Runnable> pending = deferred.iterator();
+            while (pending.hasNext() && executor.getQueue().remainingCapacity() > 0) {
+                if (executor.getQueue().offer(pending.next())) {
+                    pending.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds a busy error whose retry hint is the time the workers need to drain
+     * the current queue at the observed mean run time, between one second and a minute.
+     */
+    private ServerBusyException busy() {
+        final long count = ran.get();
+        final long meanRunMillis = count == 0 ? 1000 : TimeUnit.NANOSECONDS.toMillis(runNanos.get() / count);
+        final long drainMillis = meanRunMillis * (queueDepth() / executor.getMaximumPoolSize() + 1);
+        return new ServerBusyException("Server busy: job queue is full",
+            Math.min(60_000, Math.max(1000, drainMillis)));
+    }
+
+    /** Writes a large result to disk, returning its file, or null to keep it in memory. */
+    private String offload(final String jobId, final Map<String, Object> result) {
+        if (journal == null || result == null) {
+            return null;
+        }
+        final String json = gson.toJson(result);
+        if (json.length() <= OFFLOAD_THRESHOLD) {
+            return null;
+        }
+        try {
+            return journal.writeResult(jobId, result).toString();
+        } catch (final IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Error offloading result for job {}, keeping it in memory: {}", jobId, e.getMessage());
+            }
+            return null;
+        }
+    }
+
+    private void finish(final String jobId, final JobStatus status) {
+        status.finishedAt = System.currentTimeMillis();
+        synchronized (status) {
+            status.progress = null;
+        }
+        if (cluster != null && leased.contains(jobId)) {
+            release(jobId, status);
+        }
+        synchronized (finished) {
+            finished.addLast(jobId);
+        }
+        evict();
+    }
+
+    /**
+     * Evicts finished jobs, oldest first, while they are past the TTL or the registry
+     * is over its maximum size. Running jobs are never evicted.
+     */
+    void evict() {
+        final long cutoff = System.currentTimeMillis() - ttlMillis;
+        synchronized (finished) {
+            while (!finished.isEmpty()) {
+                final String jobId = finished.peekFirst();
+                final JobStatus status = jobs.get(jobId);
+                if (status != null && status.finishedAt >= cutoff && jobs.size() <= maxJobs) {
+                    break;
+                }
+                finished.removeFirst();
+                if (status != null) {
+                    jobs.remove(jobId);
+                    evicted.incrementAndGet();
+                    forget(jobId, status);
+                }
+            }
+        }
+    }
+
+    /** Records an eviction so replay drops the job; durability is not needed. */
+    private void forget(final String jobId, final JobStatus status) {
+        if (journal == null) {
+            return;
+        }
+        if (status.resultFile != null) {
+            journal.deleteResult(jobId);
+        }
+        try {
+            journal.appendAsync(record(jobId, "evicted"));
+        } catch (final IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Error journaling eviction of job {}: {}", jobId, e.getMessage());
+            }
+        }
+    }
+
+    /** Writes a job to the cluster for whichever node has a free worker first. */
+    private String publish(final String kind, final Map<String, Object> payload, final String session,
+            final FairShareQueue.Priority priority, final double cost) throws IOException {
+        if (rejectionPolicy == RejectionPolicy.ABORT && cluster.pendingJobs() >= queueCapacity() * liveNodes) {
+            rejected.incrementAndGet();
+            throw busy();
+        }
+        final String jobId = java.util.UUID.randomUUID().toString();
+        final Map<String, Object> spec = new HashMap<>();
+        spec.put("jobId", jobId);
+        spec.put("kind", kind);
+        spec.put("session", session);
+        spec.put("priority", priority.name());
+        spec.put("cost", cost);
+        spec.put("payload", payload);
+        spec.put("time", System.currentTimeMillis());
+        cluster.enqueue(jobId, spec);
+        return jobId;
+    }
+
+    /**
+     * Heartbeats, takes over jobs of dead nodes, then claims as many pending jobs as
+     * there are idle workers, so work stays in the shared queue for whichever node
+     * frees up first.
+     */
+    private void poll() {
+        try {
+            cluster.heartbeat();
+            liveNodes = Math.max(1, cluster.liveNodes().size());
+            if (draining) {
+                // Keep heartbeating so running jobs keep their leases, but take no new work
+                return;
+            }
+            for (final JobCluster.Claim claim : cluster.takeOver(leased)) {
+                dispatch(claim);
+            }
+            final int idle = executor.getMaximumPoolSize() - executor.getActiveCount() - queue.size();
+            for (final JobCluster.Claim claim : cluster.claim(idle)) {
+                dispatch(claim);
+            }
+        } catch (final Exception e) { // NOPMD - Keep polling after any failure
+            if (log.isErrorEnabled()) {
+                log.error("Error polling job cluster", e);
+            }
+        }
+    }
+
+    /** Runs a claimed cluster job on this node. */
+    @SuppressWarnings("unchecked")
+    private void dispatch(final JobCluster.Claim claim) {
+        final String jobId = claim.jobId;
+        final String kind = (String) claim.spec.get("kind");
+        final JobStatus status = new JobStatus();
+        status.status = "processing";
+        leased.add(jobId);
+        jobs.put(jobId, status);
+        if (kind == null || !handlers.containsKey(kind)) {
+            failJob(jobId, "No handler for job kind: " + kind);
+            return;
+        }
+        if (claim.attempts() > MAX_ATTEMPTS) {
+            failJob(jobId, "Gave up after " + (claim.attempts() - 1) + " attempts");
+            return;
+        }
+        final Object priority = claim.spec.get("priority");
+        final FairShareQueue.Task ticket = new FairShareQueue.Task((String) claim.spec.get("session"),
+            priority == null ? null : FairShareQueue.Priority.valueOf((String) priority),
+            claim.spec.get("cost") instanceof Number n ? n.doubleValue() : 1, null);
+        try {
+            run(jobId, kind, (Map<String, Object>) claim.spec.get("payload"), claim.attempts() - 1, ticket, false);
+        } catch (final ServerBusyException e) {
+            jobs.remove(jobId);
+            leased.remove(jobId);
+            cluster.release(jobId);
+        }
+    }
+
+    /** Publishes a finished cluster job's status and drops its lease. */
+    private void release(final String jobId, final JobStatus status) {
+        final Map<String, Object> record = record(jobId, status.status);
+        record.put("result", status.result);
+        record.put("resultFile", status.resultFile);
+        record.put("error", status.error);
+        record.put("time", status.finishedAt);
+        try {
+            cluster.finish(jobId, record);
+            leased.remove(jobId);
+        } catch (final IOException e) {
+            if (log.isErrorEnabled()) {
+                log.error("Error publishing status of cluster job {}", jobId, e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JobStatus toStatus(final Map<String, Object> record) {
+        final JobStatus status = new JobStatus();
+        status.status = (String) record.get("status");
+        status.result = (Map<String, Object>) record.get("result");
+        status.resultFile = (String) record.get("resultFile");
+        status.error = (String) record.get("error");
+        status.finishedAt = record.get("time") instanceof Number n ? n.longValue() : System.currentTimeMillis();
+        return status;
+    }
+
+    private static Map<String, Object> record(final String jobId, final String status) {
+        final Map<String, Object> record = new HashMap<>();
+        record.put("jobId", jobId);
+        record.put("status", status);
+        record.put("time", System.currentTimeMillis());
+        return record;
+    }
+
+    /** Appends a state transition, waiting for it to be durable. */
+    private void journal(final Map<String, Object> record) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.append(record);
+        } catch (final IOException e) {
+            if (log.isErrorEnabled()) {
+                log.error("Error journaling job {}", record.get("jobId"), e);
+            }
+        }
     }
 }
@@ -0,0 +1,362 @@
+package com.hulft.mcp;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Provides access to the on-disk job store laid out as {@code jobs/yyyy/mm/dd/<jobId>}.
+ * Job artifacts are exposed as MCP resources ({@code job://<id>/markdown}, {@code /text},
+ * {@code /original}) and served with range reads, so large files can be fetched
+ * incrementally instead of being inlined into tool results.
+ */
+@Slf4j
+@SuppressWarnings("PMD.AvoidCatchingGenericException") // Generic exception handling for robustness
+public class JobStore {
+    public static final String URI_PREFIX = "job://";
+    public static final String META_FILE = "meta.json";
+    public static final String TEXT_FILE = "text.txt";
+    public static final String MARKDOWN_FILE = "markdown.md";
+    /** Largest number of bytes returned by a single range read. */
+    public static final int MAX_READ_LENGTH = 1024 * 1024;
+    /** Reads at least this large are served through a memory-mapped buffer. */
+    private static final int MAP_THRESHOLD = 64 * 1024;
+    private static final Pattern JOB_ID = Pattern.compile("[0-9a-fA-F-]{36}");
+    private static final Pattern DATE_PART = Pattern.compile("\\d+");
+
+    @SuppressWarnings("PMD.FieldNamingConventions") // Gson instance, not primitive constant
+    private static final Gson gson = new Gson();
+
+    private final Path root;
+    private final JobIndex index;
+
+    public JobStore(final Path root) {
+        this(root, null);
+    }
+
+    public JobStore(final Path root, final JobIndex index) {
+        this.root = root;
+        this.index = index;
+    }
+
+    /**
+     * A slice of an artifact file.
+     */
+    public static class Chunk {
+        /** Bytes read from the file */
+        public final byte[] data;
+        /** Offset of the first byte in the file */
+        public final long offset;
+        /** Total size of the file */
+        public final long size;
+
+        Chunk(final byte[] data, final long offset, final long size) {
+            this.data = data;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        /**
+         * Returns the offset following this chunk.
+         *
+         * @return next offset to request, equal to size at end of file
+         */
+        public long nextOffset() {
+            return offset + data.length;
+        }
+    }
+
+    /**
+     * Creates the dated folder for a job.
+     *
+     * @param jobId the job identifier
+     * @return path of the created folder
+     * @throws IOException if the folder cannot be created
+     */
+    public Path createJobFolder(final String jobId) throws IOException {
+        final LocalDate now = LocalDate.now();
+        final Path path = root
+            .resolve(String.valueOf(now.getYear()))
+            .resolve(String.format("%02d", now.getMonthValue()))
+            .resolve(String.format("%02d", now.getDayOfMonth()))
+            .resolve(jobId);
+        Files.createDirectories(path);
+        return path;
+    }
+
+    /**
+     * Locates the folder of a job through the index, falling back to scanning
+     * date folders, newest first.
+     *
+     * @param jobId the job identifier
+     * @return job folder, or null if no such job exists
+     * @throws IOException if the store cannot be read
+     */
+    public Path findJobFolder(final String jobId) throws IOException {
+        if (!isValidJobId(jobId)) {
+            return null;
+        }
+        final JobIndex.Entry entry = index == null ? null : index.get(jobId);
+        if (entry != null) {
+            final Path indexed = root.resolve(entry.date.replace('-', '/')).resolve(jobId);
+            if (Files.isDirectory(indexed)) {
+                return indexed;
+            }
+        }
+        for (final Path day : listDayFolders()) {
+            final Path candidate = day.resolve(jobId);
+            if (Files.isDirectory(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lists job identifiers, newest date folder first.
+     *
+     * @param limit maximum number of identifiers to return
+     * @return job identifiers
+     * @throws IOException if the store cannot be read
+     */
+    public List<String> listJobIds(final int limit) throws IOException {
+        return listJobFolders(limit).stream().map(p -> p.getFileName().toString()).toList();
+    }
+
+    /**
+     * Lists job folders by walking the date folders, newest first.
+     *
+     * @param limit maximum number of folders to return
+     * @return job folders
+     * @throws IOException if the store cannot be read
+     */
+    public List<Path> listJobFolders(final int limit) throws IOException {
+        final List<Path> folders = new ArrayList<>();
+        for (final Path day : listDayFolders()) {
+            for (final Path job : sortedChildren(day)) {
+                if (folders.size() >= limit) {
+                    return folders;
+                }
+                if (isValidJobId(job.getFileName().toString())) {
+                    folders.add(job);
+                }
+            }
+        }
+        return folders;
+    }
+
+    /**
+     * Returns the {@code yyyy-MM-dd} date of a job folder from its path.
+     *
+     * @param jobPath the job folder
+     * @return date key of the folder
+     */
+    public static String dateOf(final Path jobPath) {
+        final Path day = jobPath.getParent();
+        final Path month = day.getParent();
+        return month.getParent().getFileName() + "-" + month.getFileName() + "-" + day.getFileName();
+    }
+
+    /**
+     * Writes the text and markdown artifacts of a job next to its metadata.
+     *
+     * @param jobPath the job folder
+     * @param text extracted document text
+     * @param markdown markdown rendering of the document
+     */
+    public void writeArtifacts(final Path jobPath, final String text, final String markdown) {
+        try {
+            Files.writeString(jobPath.resolve(TEXT_FILE), text == null ? "" : text);
+            Files.writeString(jobPath.resolve(MARKDOWN_FILE), markdown == null ? "" : markdown);
+        } catch (final IOException e) {
+            if (log.isErrorEnabled()) {
+                log.error("Error saving artifacts to {}", jobPath, e);
+            }
+        }
+    }
+
+    /**
+     * Reads the metadata of a job.
+     *
+     * @param jobPath the job folder
+     * @return parsed metadata, or an empty map if missing or unreadable
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> readMetadata(final Path jobPath) {
+        try {
+            final Path metaPath = jobPath.resolve(META_FILE);
+            if (!Files.exists(metaPath)) {
+                return Map.of();
+            }
+            final Map<String, Object> meta = gson.fromJson(Files.readString(metaPath), Map.class);
+            return meta == null ? Map.of() : meta;
+        } catch (final Exception e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Unreadable metadata in {}: {}", jobPath, e.getMessage());
+            }
+            return Map.of();
+        }
+    }
+
+    /**
+     * Resolves a {@code job://<id>/<artifact>} URI to a file.
+     *
+     * @param uri the resource URI
+     * @return artifact file, or null if the URI does not name an existing artifact
+     * @throws IOException if the store cannot be read
+     */
+    public Path resolve(final String uri) throws IOException {
+        if (uri == null || !uri.startsWith(URI_PREFIX)) {
+            return null;
+        }
+        final String[] parts = uri.substring(URI_PREFIX.length()).split("/", 2);
+        if (parts.length != 2) {
+            return null;
+        }
+        final Path jobPath = findJobFolder(parts[0]);
+        if (jobPath == null) {
+            return null;
+        }
+        final Path file = switch (parts[1]) {
+            case "markdown" -> jobPath.resolve(MARKDOWN_FILE);
+            case "text" -> jobPath.resolve(TEXT_FILE);
+            case "original" -> {
+                final Object filename = readMetadata(jobPath).get("filename");
+                yield filename == null ? null : jobPath.resolve((String) filename).normalize();
+            }
+            default -> null;
+        };
+        if (file == null || !file.startsWith(jobPath) || !Files.isRegularFile(file)) {
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Returns the MIME type served for an artifact URI.
+     *
+     * @param uri the resource URI
+     * @return MIME type
+     */
+    public static String mimeType(final String uri) {
+        if (uri.endsWith("/markdown")) {
+            return "text/markdown";
+        }
+        if (uri.endsWith("/text")) {
+            return "text/plain";
+        }
+        return "application/octet-stream";
+    }
+
+    /**
+     * Reads a byte range of a file. Large ranges are memory-mapped, small ranges
+     * use a positional channel read.
+     *
+     * @param file the file to read
+     * @param offset first byte to read
+     * @param length maximum number of bytes, capped at {@link #MAX_READ_LENGTH}
+     * @return the chunk read, empty when offset is past the end
+     * @throws IOException if the file cannot be read
+     */
+    public Chunk read(final Path file, final long offset, final int length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final long start = Math.max(0, Math.min(offset, size));
+            final int count = (int) Math.min(Math.min(Math.max(length, 0), MAX_READ_LENGTH), size - start);
+            final byte[] data = new byte[count];
+            if (count >= MAP_THRESHOLD) {
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, count);
+                buffer.get(data);
+            } else {
+                final ByteBuffer buffer = ByteBuffer.wrap(data);
+                long position = start;
+                while (buffer.hasRemaining()) {
+                    final int read = channel.read(buffer, position);
+                    if (read < 0) {
+                        break;
+                    }
+                    position += read;
+                }
+            }
+            return new Chunk(data, start, size);
+        }
+    }
+
+    /**
+     * Decodes a chunk of UTF-8 text, leaving an incomplete trailing character for the next read.
+     *
+     * @param chunk the chunk to decode
+     * @return decoded text and the offset the next read should start at
+     */
+    public static Map.Entry<String, Long> decodeText(final Chunk chunk) {
+        int end = chunk.data.length;
+        if (chunk.nextOffset() < chunk.size) {
+            // Back off to the lead byte of a multi-byte sequence cut by the range
+            int lead = end - 1;
+            int continuation = 0;
+            while (lead >= 0 && continuation < 3 && (chunk.data[lead] & 0xC0) == 0x80) {
+                lead--;
+                continuation++;
+            }
+            if (lead >= 0 && (chunk.data[lead] & 0x80) != 0 && sequenceLength(chunk.data[lead]) > continuation + 1) {
+                end = lead;
+            }
+        }
+        return Map.entry(new String(chunk.data, 0, end, StandardCharsets.UTF_8), chunk.offset + end);
+    }
+
+    private static int sequenceLength(final byte lead) {
+        if ((lead & 0xE0) == 0xC0) {
+            return 2;
+        }
+        if ((lead & 0xF0) == 0xE0) {
+            return 3;
+        }
+        if ((lead & 0xF8) == 0xF0) {
+            return 4;
+        }
+        return 1;
+    }
+
+    static boolean isValidJobId(final String jobId) {
+        return jobId != null && JOB_ID.matcher(jobId).matches();
+    }
+
+    private List<Path> listDayFolders() throws IOException {
+        final List<Path> days = new ArrayList<>();
+        if (!Files.isDirectory(root)) {
+            return days;
+        }
+        for (final Path year : sortedChildren(root)) {
+            for (final Path month : sortedChildren(year)) {
+                days.addAll(sortedChildren(month));
+            }
+        }
+        return days;
+    }
+
+    private static List<Path> sortedChildren(final Path dir) throws IOException {
+        try (Stream<Path> children = Files.list(dir)) {
+            return children
+                .filter(Files::isDirectory)
+                .filter(p -> DATE_PART.matcher(p.getFileName().toString()).matches()
+                    || isValidJobId(p.getFileName().toString()))
+                .sorted(Comparator.comparing((Path p) -> p.getFileName().toString()).reversed())
+                .toList();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.hulft.mcp;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parses a JSON object incrementally as text arrives in chunks, such as tokens streamed
+ * from a model. Anything before the first {@code {} (a markdown fence or a preamble) is
+ * skipped. Each top-level member is parsed as soon as the {@code ,} or {@code }} after
+ * its value arrives, so fields become available while the rest of the object is still
+ * being generated, and {@link #isClosed()} reports when the object has ended.
+ * <p>
+ * Every character is scanned once; only finished members are handed to Gson.
+ */
+public class JsonObjectStream {
+    private static final Type MEMBER_TYPE = new TypeToken<Map<String, Object>>() { }.getType();
+
+    @SuppressWarnings("PMD.FieldNamingConventions") // Gson instance, not primitive constant
+    private static final Gson gson = new Gson();
+
+    private final StringBuilder text = new StringBuilder();
+    private final Map<String, Object> fields = new LinkedHashMap<>();
+    private int scanned;
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+    private boolean closed;
+    /** Start of the current top-level member in {@link #text}, or -1 before the object */
+    private int memberStart = -1;
+
+    /**
+     * Adds the next chunk of text.
+     *
+     * @param chunk text following the previous chunk
+     * @return true if the chunk finished at least one top-level member
+     */
+    public boolean feed(final String chunk) {
+        if (closed || chunk == null || chunk.isEmpty()) {
+            return false;
+        }
+        text.append(chunk);
+        boolean added = false;
+        for (; scanned < text.length() && !closed; scanned++) {
+            final char c = text.charAt(scanned);
+            if (depth == 0) {
+                // Skip a preamble or markdown fence up to the object
+                if (c == '{') {
+                    depth = 1;
+                    memberStart = scanned + 1;
+                }
+            } else if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                if (depth == 1) {
+                    added |= finishMember();
+                    closed = true;
+                }
+                depth--;
+            } else if (c == ',' && depth == 1) {
+                added |= finishMember();
+                memberStart = scanned + 1;
+            }
+        }
+        return added;
+    }
+
+    /** Parses the member between {@link #memberStart} and the current character. */
+    private boolean finishMember() {
+        final String member = text.substring(memberStart, scanned).strip();
+        if (member.isEmpty()) {
+            return false;
+        }
+        try {
+            final Map<String, Object> parsed = gson.fromJson("{" + member + "}", MEMBER_TYPE);
+            if (parsed == null || parsed.isEmpty()) {
+                return false;
+            }
+            fields.putAll(parsed);
+            return true;
+        } catch (final JsonSyntaxException e) {
+            // A malformed member is dropped; the rest of the object may still be usable
+            return false;
+        }
+    }
+
+    /**
+     * Returns the top-level members parsed so far, in arrival order.
+     *
+     * @return read-only view of the parsed members
+     */
+    public Map<String, Object> fields() {
+        return Collections.unmodifiableMap(fields);
+    }
+
+    /**
+     * Returns whether the top-level object has ended; later text is ignored.
+     *
+     * @return true after the closing brace
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns all text fed so far.
+     *
+     * @return the accumulated text
+     */
+    public String text() {
+        return text.toString();
+    }
+}
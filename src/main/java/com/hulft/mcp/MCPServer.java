@@ -5,10 +5,7 @@ import io.javalin.Javalin;
 import io.javalin.http.Context;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 import lombok.extern.slf4j.Slf4j;
-import software.amazon.awssdk.services.textract.model.Block;
-import software.amazon.awssdk.services.textract.model.BlockType;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -43,10 +40,23 @@ public class MCPServer {
     private static final Gson gson = new Gson();
 
     // Service components
-    private static final JobManager jobManager = new JobManager();
+    private static final JobManager jobManager = createJobManager();
     private static final SchemaManager schemaManager = new SchemaManager();
     private static final ArchiveExtractor archiveExtractor = new ArchiveExtractor();
     private static final MarkdownConverter markdownConverter = new MarkdownConverter();
+    private static final JobIndex jobIndex = new JobIndex(Paths.get("jobs", "index.tsv"));
+    private static final JobStore jobStore = new JobStore(Paths.get("jobs"), jobIndex);
+    private static final SearchIndex searchIndex = new SearchIndex(Paths.get("jobs", "search.log"));
+    private static final FieldStore fieldStore = new FieldStore(Paths.get("jobs", "fields"), schemaManager);
+    private static final JobExporter jobExporter = new JobExporter(jobStore, jobIndex, 8);
+    private static final StagePools stagePools = createStagePools();
+    private static final StageArtifacts stageArtifacts = new StageArtifacts();
+    /** Classify and extract in one Bedrock call, see {@link FieldExtractor#classifyAndExtract} */
+    private static final boolean COMBINED_EXTRACTION = Boolean.getBoolean("hulft.bedrock.combined");
+    /** Files of one multi-file upload that may be in the pipeline at once */
+    private static final int UPLOAD_FILES_IN_FLIGHT = Math.max(1, Integer.getInteger("hulft.upload.filesInFlight", 8));
+    private static final java.util.concurrent.atomic.AtomicInteger inFlight = new java.util.concurrent.atomic.AtomicInteger();
+    private static volatile boolean draining;
 
     // AWS clients
     private static final software.amazon.awssdk.auth.credentials.ProfileCredentialsProvider credentialsProvider =
@@ -70,15 +80,41 @@ public class MCPServer {
             .credentialsProvider(credentialsProvider)
             .build();
 
-    // Service instances
-    private static final TextExtractor textExtractor = new TextExtractor(textractClient);
-    private static final DocumentClassifier classifier = new DocumentClassifier(comprehendClient, bedrockClient);
-    private static final FieldExtractor fieldExtractor = new FieldExtractor(bedrockClient, schemaManager);
+    // Non-blocking clients, sharing one event-loop HTTP client, when hulft.aws.async is set
+    private static final software.amazon.awssdk.http.async.SdkAsyncHttpClient asyncHttpClient = createAsyncHttpClient();
+
+    private static final software.amazon.awssdk.services.textract.TextractAsyncClient textractAsyncClient =
+        asyncHttpClient == null ? null : software.amazon.awssdk.services.textract.TextractAsyncClient.builder()
+            .region(software.amazon.awssdk.regions.Region.US_EAST_1)
+            .credentialsProvider(credentialsProvider)
+            .httpClient(asyncHttpClient)
+            .build();
+
+    private static final software.amazon.awssdk.services.comprehend.ComprehendAsyncClient comprehendAsyncClient =
+        asyncHttpClient == null ? null : software.amazon.awssdk.services.comprehend.ComprehendAsyncClient.builder()
+            .region(software.amazon.awssdk.regions.Region.US_EAST_1)
+            .credentialsProvider(credentialsProvider)
+            .httpClient(asyncHttpClient)
+            .build();
 
-    private static final ThreadLocal<Float> ocrConfidence = new ThreadLocal<>();
+    private static final software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient bedrockAsyncClient =
+        asyncHttpClient == null ? null : software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient.builder()
+            .region(software.amazon.awssdk.regions.Region.US_EAST_1)
+            .credentialsProvider(credentialsProvider)
+            .httpClient(asyncHttpClient)
+            .build();
 
-    @SuppressWarnings("PMD.CloseResource") // Server runs until shutdown
-    private static final Map<String, String> sessions = new ConcurrentHashMap<>();
+    // Service instances
+    private static final TextExtractor textExtractor = new TextExtractor(textractClient, textractAsyncClient);
+    private static final DocumentClassifier classifier =
+        new DocumentClassifier(comprehendClient, bedrockClient, comprehendAsyncClient, bedrockAsyncClient, schemaManager, stagePools);
+    private static final FieldExtractor fieldExtractor = new FieldExtractor(bedrockClient, bedrockAsyncClient, schemaManager, stagePools);
+
+    private static final SessionTokens sessionTokens = SessionTokens.fromConfig();
+    private static final String UPLOAD_JOB = "upload_files";
+    /** Tools refused while draining, since they start new work */
+    private static final Set<String> WORK_TOOLS = Set.of(UPLOAD_JOB, "reprocess_job");
+    private static final Set<String> EXPORT_FORMATS = Set.of("ndjson", "csv");
     private static final String SUPPORTED_PROTOCOL_VERSION = "2025-11-25";
     private static final Set<String> ALLOWED_ORIGINS = Set.of(
         "http://localhost",
@@ -90,18 +126,73 @@ public class MCPServer {
     public static void main(final String[] args) {
         log.info("Starting HULFT MCP Server v2.1.0");
 
-        final Javalin app = Javalin.create().start("0.0.0.0", 3333);
+        loadJobIndex();
+        loadSearchIndex();
+        loadFieldStore();
+        try {
+            jobManager.recover();
+        } catch (java.io.IOException e) {
+            log.error("Error recovering job queue", e);
+        }
+
+        // Jetty runs request handlers on virtual threads only in virtual-thread mode
+        io.javalin.util.ConcurrencyUtil.INSTANCE.setUseLoom(VirtualThreads.enabled());
+        if (VirtualThreads.enabled()) {
+            log.info("Virtual-thread mode enabled");
+        }
+        final int port = Integer.getInteger("hulft.port", 3333);
+        final Javalin app = Javalin.create().start("0.0.0.0", port);
 
         app.post("/mcp", ctx -> handlePost(ctx));
         app.get("/mcp", ctx -> handleGet(ctx));
         app.get("/health", ctx -> handleHealth(ctx));
+        app.get("/export", ctx -> handleExport(ctx));
+        app.get("/metrics", ctx -> handleMetrics(ctx));
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> drain(app), "drain"));
+
+        log.info("HULFT MCP Server ready at http://localhost:{}/mcp", port);
+    }
 
-        log.info("HULFT MCP Server ready at http://localhost:3333/mcp");
+    /** Returns whether a request is a tool call that starts new work, such as an upload. */
+    private static boolean startsWork(final Map<String, Object> request) {
+        return "tools/call".equals(request.get("method"))
+            && request.get("params") instanceof Map<?, ?> params
+            && WORK_TOOLS.contains(params.get("name"));
+    }
+
+    /**
+     * Drains the server on SIGTERM. /health reports not-ready so the load balancer stops
+     * routing here, and uploads and reprocessing are refused while reads keep working. In-flight requests and running
+     * jobs then get until {@code hulft.drain.timeoutMillis} (25 seconds, inside the ECS
+     * default stop timeout) to finish; unfinished jobs resume from their stage artifacts.
+     */
+    private static void drain(final Javalin app) {
+        draining = true;
+        log.info("Draining: refusing new work");
+        final long deadline = System.currentTimeMillis() + Long.getLong("hulft.drain.timeoutMillis", 25_000L);
+        try {
+            while (inFlight.get() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            if (jobManager.drain(Math.max(0, deadline - System.currentTimeMillis()))) {
+                log.info("Drained all running jobs");
+            } else {
+                log.warn("Drain deadline reached, unfinished jobs will resume from their stage artifacts");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        stagePools.shutdown();
+        app.stop();
     }
 
     private static void handleHealth(final Context ctx) {
         final Map<String, Object> health = new HashMap<>();
-        health.put("status", "healthy");
+        if (draining) {
+            ctx.status(503);
+        }
+        health.put("status", draining ? "draining" : "healthy");
         health.put("version", "2.1.0");
         health.put("service", "hulft-mcp");
         health.put("timestamp", System.currentTimeMillis());
@@ -137,10 +228,17 @@ public class MCPServer {
         final String method = (String) request.get("method");
         final Object id = request.get("id");
 
+        // While draining, calls that start work are refused; status and read calls keep
+        // working so clients can collect the results of jobs that are finishing
+        if (draining && startsWork(request)) {
+            ctx.status(503).header("Retry-After", "5").json(createError(-32_000, "Server is shutting down", id));
+            return;
+        }
+
         // 4. Validate session (except for initialize)
         if (!"initialize".equals(method)) {
             final String sessionId = ctx.header("MCP-Session-Id");
-            if (sessionId != null && !sessions.containsKey(sessionId)) {
+            if (sessionId != null && sessionTokens.verify(sessionId) == null) {
                 ctx.status(404).json(createError(-32600, "Session not found", null));
                 return;
             }
@@ -153,12 +251,21 @@ public class MCPServer {
             return;
         }
 
-        final Map<String, Object> response = createResponse(method, request, id);
+        final Map<String, Object> response;
+        inFlight.incrementAndGet();
+        try {
+            response = createResponse(method, request, id, ctx.header("MCP-Session-Id"));
+        } finally {
+            inFlight.decrementAndGet();
+        }
+        if (response.get("error") instanceof Map<?, ?> error && error.get("data") instanceof Map<?, ?> data
+                && data.get("retryAfterMs") instanceof Long retryAfter) {
+            ctx.header("Retry-After", String.valueOf((retryAfter + 999) / 1000));
+        }
 
         // 5. Add session ID for initialize response
         if ("initialize".equals(method) && response.containsKey("result")) {
-            final String sessionId = UUID.randomUUID().toString();
-            sessions.put(sessionId, "active");
+            final String sessionId = sessionTokens.issue();
             ctx.header("MCP-Session-Id", sessionId);
             log.info("Created session: {}", sessionId);
         }
@@ -170,6 +277,42 @@ public class MCPServer {
         }
     }
 
+    /**
+     * Streams an export of processed jobs straight into the HTTP response.
+     * Query parameters mirror the export_jobs tool: from, to, type, format, fields.
+     * Requires a valid MCP-Session-Id header.
+     */
+    private static void handleExport(final Context ctx) {
+        if (!isAuthorized(ctx)) {
+            ctx.status(403).result("Forbidden");
+            return;
+        }
+        final String format = ctx.queryParam("format") == null ? "ndjson" : ctx.queryParam("format");
+        if (!EXPORT_FORMATS.contains(format)) {
+            ctx.status(400).result("Unknown export format: " + format);
+            return;
+        }
+        final String fields = ctx.queryParam("fields");
+        ctx.contentType("csv".equals(format) ? "text/csv" : "application/x-ndjson");
+        try (java.io.Writer out = new java.io.BufferedWriter(
+                new java.io.OutputStreamWriter(ctx.outputStream(), java.nio.charset.StandardCharsets.UTF_8))) {
+            final long count = jobExporter.export(ctx.queryParam("from"), ctx.queryParam("to"), ctx.queryParam("type"),
+                format, fields == null ? List.of() : List.of(fields.split(",")), out);
+            log.info("Exported {} jobs over HTTP", count);
+        } catch (Exception e) {
+            log.error("Error streaming export", e);
+        }
+    }
+
+    /** Serves the metrics snapshot to clients holding a session, like {@code /export}. */
+    private static void handleMetrics(final Context ctx) {
+        if (!isAuthorized(ctx)) {
+            ctx.status(403).result("Forbidden");
+            return;
+        }
+        ctx.json(Metrics.snapshot());
+    }
+
     private static void handleGet(final Context ctx) {
         // 1. Validate Origin header
         final String origin = ctx.header("Origin");
@@ -190,6 +333,16 @@ public class MCPServer {
         ctx.status(405).result("SSE streaming not supported. Use POST for requests.");
     }
 
+    /**
+     * Checks a request outside the MCP endpoint: the Origin must be allowed, as for
+     * /mcp, and the MCP-Session-Id header must carry a valid session token, since these
+     * routes have no initialize step of their own.
+     */
+    private static boolean isAuthorized(final Context ctx) {
+        final String sessionId = ctx.header("MCP-Session-Id");
+        return isAllowedOrigin(ctx.header("Origin")) && sessionId != null && sessionTokens.verify(sessionId) != null;
+    }
+
     private static boolean isAllowedOrigin(final String origin) {
         if (origin == null) {
             return true;
@@ -198,9 +351,17 @@ public class MCPServer {
     }
 
     private static Map<String, Object> createError(final int code, final String message, final Object id) {
+        return createError(code, message, id, null);
+    }
+
+    private static Map<String, Object> createError(final int code, final String message, final Object id,
+            final Map<String, Object> data) {
         final Map<String, Object> error = new HashMap<>();
         error.put("code", code);
         error.put("message", message);
+        if (data != null) {
+            error.put("data", data);
+        }
 
         final Map<String, Object> response = new HashMap<>();
         response.put("jsonrpc", "2.0");
@@ -212,7 +373,8 @@ public class MCPServer {
     }
 
     @SuppressWarnings({"PMD.AvoidReassigningParameters", "PMD.CognitiveComplexity"}) // Intentional ID conversion, complex routing
-    private static Map<String, Object> createResponse(final String method, final Map<String, Object> request, Object id) {
+    private static Map<String, Object> createResponse(final String method, final Map<String, Object> request, Object id,
+            final String sessionId) {
         // Convert double IDs to integers for cleaner JSON
         if (id instanceof Double) {
             final double d = (Double) id;
@@ -277,7 +439,8 @@ public class MCPServer {
                                             "required", List.of("filename", "content", "type")
                                         )
                                     ),
-                                    "async", Map.of("type", "boolean", "description", "Process asynchronously (returns job ID)")
+                                    "async", Map.of("type", "boolean", "description", "Process asynchronously (returns job ID)"),
+                                    "priority", Map.of("type", "string", "enum", List.of("high", "normal", "low"), "description", "Scheduling priority of the async job (default normal)")
                                 ),
                                 "required", List.of("files")
                             )
@@ -293,6 +456,80 @@ public class MCPServer {
                                 "required", List.of("job_id")
                             )
                         ),
+                        Map.of(
+                            "name", "reprocess_job",
+                            "description", "Re-run the pipeline of a single-file job, skipping stages whose stored output is still current",
+                            "inputSchema", Map.of(
+                                "type", "object",
+                                "properties", Map.of(
+                                    "job_id", Map.of("type", "string", "description", "Job ID"),
+                                    "from", Map.of("type", "string", "enum", List.of("detect", "ocr", "tables", "classification", "fields"),
+                                        "description", "Force this stage and all later stages to be recomputed")
+                                ),
+                                "required", List.of("job_id")
+                            )
+                        ),
+                        Map.of(
+                            "name", "list_jobs",
+                            "description", "List processed jobs, newest day first (jobs of the same day in no particular order), one page at a time. A filtered page may be short or empty while a next cursor is returned",
+                            "inputSchema", Map.of(
+                                "type", "object",
+                                "properties", Map.of(
+                                    "cursor", Map.of("type", "string", "description", "Cursor from a previous page"),
+                                    "limit", Map.of("type", "integer", "description", "Jobs per page (default 50, max 500)"),
+                                    "type", Map.of("type", "string", "description", "Filter by document type")
+                                )
+                            )
+                        ),
+                        Map.of(
+                            "name", "search_documents",
+                            "description", "Full-text search over extracted document text, ranked by relevance. Use quotes for phrases.",
+                            "inputSchema", Map.of(
+                                "type", "object",
+                                "properties", Map.of(
+                                    "query", Map.of("type", "string", "description", "Search terms, e.g. acme \"total amount\""),
+                                    "doc_type", Map.of("type", "string", "description", "Filter by classification (e.g., INVOICE_PRODUCTION)"),
+                                    "date_from", Map.of("type", "string", "description", "First upload date, yyyy-MM-dd"),
+                                    "date_to", Map.of("type", "string", "description", "Last upload date, yyyy-MM-dd"),
+                                    "limit", Map.of("type", "integer", "description", "Maximum results (default 10, max 100)")
+                                ),
+                                "required", List.of("query")
+                            )
+                        ),
+                        Map.of(
+                            "name", "query_fields",
+                            "description", "Aggregate extracted fields across documents of one type, e.g. sum total_amount by customer",
+                            "inputSchema", Map.of(
+                                "type", "object",
+                                "properties", Map.of(
+                                    "doc_type", Map.of("type", "string", "description", "Document type (e.g., INVOICE_PRODUCTION)"),
+                                    "aggregate", Map.of("type", "string", "enum", List.of("count", "sum", "avg", "min", "max"),
+                                        "description", "Aggregate function (default count)"),
+                                    "field", Map.of("type", "string", "description", "Field to aggregate (not needed for count)"),
+                                    "group_by", Map.of("type", "string", "description", "Field to group by"),
+                                    "filters", Map.of("type", "object", "description", "Field values that must match exactly"),
+                                    "date_from", Map.of("type", "string", "description", "First upload date, yyyy-MM-dd"),
+                                    "date_to", Map.of("type", "string", "description", "Last upload date, yyyy-MM-dd")
+                                ),
+                                "required", List.of("doc_type")
+                            )
+                        ),
+                        Map.of(
+                            "name", "export_jobs",
+                            "description", "Export processed jobs in a date range as NDJSON or CSV to a file. "
+                                + "For direct streaming use GET /export?from=&to=&type=&format=&fields= with the MCP-Session-Id header",
+                            "inputSchema", Map.of(
+                                "type", "object",
+                                "properties", Map.of(
+                                    "date_from", Map.of("type", "string", "description", "First upload date, yyyy-MM-dd"),
+                                    "date_to", Map.of("type", "string", "description", "Last upload date, yyyy-MM-dd"),
+                                    "doc_type", Map.of("type", "string", "description", "Filter by document type"),
+                                    "format", Map.of("type", "string", "enum", List.of("ndjson", "csv"), "description", "Output format (default ndjson)"),
+                                    "fields", Map.of("type", "array", "items", Map.of("type", "string"),
+                                        "description", "Dotted field paths, e.g. extractedFields.total_amount")
+                                )
+                            )
+                        ),
                         Map.of(
                             "name", "add_schema",
                             "description", "Add custom extraction schema for a document type",
@@ -335,7 +572,7 @@ public class MCPServer {
                             "inputSchema", Map.of(
                                 "type", "object",
                                 "properties", Map.of(
-                                    "uri", Map.of("type", "string", "description", "Resource URI (e.g., file:///example.txt)")
+                                    "uri", Map.of("type", "string", "description", "Resource URI (e.g., job://<id>/markdown)")
                                 ),
                                 "required", List.of("uri")
                             )
@@ -360,12 +597,27 @@ public class MCPServer {
                 final String toolName = (String) params.get("name");
                 final Map<String, Object> arguments = (Map<String, Object>) params.get("arguments");
 
+                // Set when a tool is refused for lack of capacity, reported as a JSON-RPC error
+                ServerBusyException busy = null;
                 final String resultText = switch (toolName) {
                     case "echo" -> "Echo: " + arguments.get("text");
-                    case "list_resources" -> "Available resources:\n- file:///example.txt (Example File) - An example text resource";
+                    case "list_resources" -> {
+                        final Map<String, Object> page = listJobResources(null);
+                        final StringBuilder sb = new StringBuilder("Available resources:\n");
+                        for (Map<String, Object> resource : (List<Map<String, Object>>) page.get("resources")) {
+                            sb.append("- ").append(resource.get("uri")).append(" (").append(resource.get("name")).append(")\n");
+                        }
+                        yield sb.toString();
+                    }
                     case "read_resource" -> {
                         final String uri = (String) arguments.get("uri");
-                        yield "Content of " + uri + ":\nThis is example content from: " + uri;
+                        final Map<String, Object> content = readJobResource(uri, 0, JobStore.MAX_READ_LENGTH);
+                        if (content == null) {
+                            yield "Resource not found: " + uri;
+                        }
+                        yield content.containsKey("text")
+                            ? "Content of " + uri + ":\n" + content.get("text")
+                            : "Binary resource " + uri + " (" + content.get("size") + " bytes), use resources/read to fetch it";
                     }
                     case "get_prompt" -> {
                         final String code = (String) arguments.get("code");
@@ -376,16 +628,25 @@ public class MCPServer {
                         final boolean async = arguments.containsKey("async") && (Boolean) arguments.get("async");
 
                         if (async) {
-                            final String jobId = jobManager.createJob();
-                            jobManager.submitJob(jobId, () -> {
-                                try {
-                                    final String result = handleMultiFileUpload(files);
-                                    jobManager.completeJob(jobId, Map.of("text", result));
-                                } catch (Exception e) { // NOPMD - Catch all for async error handling
-                                    jobManager.failJob(jobId, e.getMessage());
-                                }
-                            });
-                            yield "Job started: " + jobId + "\nUse check_job tool to get status.";
+                            try {
+                                final FairShareQueue.Priority priority = arguments.get("priority") instanceof String p
+                                    ? FairShareQueue.Priority.valueOf(p.toUpperCase(java.util.Locale.ROOT))
+                                    : FairShareQueue.Priority.NORMAL;
+                                // Cost in megabytes of encoded input, so large uploads take a larger share
+                                final double cost = 1 + files.stream()
+                                    .mapToLong(f -> String.valueOf(f.get("content")).length()).sum() / (1024.0 * 1024.0);
+                                final String jobId = jobManager.submit(UPLOAD_JOB,
+                                    Map.of("files", files, "batchId", UUID.randomUUID().toString()), sessionId, priority, cost);
+                                yield "Job started: " + jobId + "\nUse check_job tool to get status.";
+                            } catch (ServerBusyException e) {
+                                busy = e;
+                                yield e.getMessage();
+                            } catch (IllegalArgumentException e) {
+                                yield "Invalid priority: " + arguments.get("priority");
+                            } catch (java.io.IOException e) {
+                                log.error("Error queuing upload job", e);
+                                yield "Error queuing job: " + e.getMessage();
+                            }
                         } else {
                             yield handleMultiFileUpload(files);
                         }
@@ -396,13 +657,99 @@ public class MCPServer {
                         if (status == null) {
                             yield "Job not found: " + jobId;
                         } else if ("completed".equals(status.status)) {
-                            yield (String) status.result.get("text");
+                            final Map<String, Object> result = jobManager.getResult(jobId);
+                            yield result == null ? "Job result is no longer available: " + jobId : (String) result.get("text");
                         } else if ("failed".equals(status.status)) {
                             yield "Job failed: " + status.error;
+                        } else if (status.progress != null) {
+                            // Fields streamed so far for files still being extracted
+                            yield "Job status: " + status.status + "\nFields so far: " + gson.toJson(status.progress);
                         } else {
                             yield "Job status: " + status.status;
                         }
                     }
+                    case "reprocess_job" -> reprocessJob((String) arguments.get("job_id"), (String) arguments.get("from"));
+                    case "list_jobs" -> {
+                        final int limit = arguments.get("limit") instanceof Number n ? Math.min(Math.max(n.intValue(), 1), 500) : 50;
+                        final JobIndex.Page page;
+                        try {
+                            page = loadJobIndex().list((String) arguments.get("cursor"), limit, (String) arguments.get("type"));
+                        } catch (IllegalArgumentException e) {
+                            yield e.getMessage();
+                        }
+                        final StringBuilder sb = new StringBuilder(String.format("Jobs (%d):\n", page.entries.size()));
+                        for (JobIndex.Entry entry : page.entries) {
+                            sb.append("- ").append(entry.jobId).append(' ').append(entry.date)
+                                .append(' ').append(entry.type).append(' ').append(entry.status).append('\n');
+                        }
+                        if (page.nextCursor != null) {
+                            sb.append("Next cursor: ").append(page.nextCursor).append('\n');
+                        }
+                        yield sb.toString();
+                    }
+                    case "search_documents" -> {
+                        final int limit = arguments.get("limit") instanceof Number n ? Math.min(Math.max(n.intValue(), 1), 100) : 10;
+                        final long start = System.nanoTime();
+                        final SearchIndex.Result found = loadSearchIndex().search((String) arguments.get("query"),
+                            (String) arguments.get("doc_type"), (String) arguments.get("date_from"), (String) arguments.get("date_to"), limit);
+                        final StringBuilder sb = new StringBuilder(String.format("Found %d documents (%.1f ms)\n",
+                            found.total, (System.nanoTime() - start) / 1_000_000.0));
+                        for (SearchIndex.Hit hit : found.hits) {
+                            sb.append(String.format("- %s %s %s (score %.2f)\n", hit.jobId, hit.date, hit.type, hit.score));
+                        }
+                        yield sb.toString();
+                    }
+                    case "query_fields" -> {
+                        final String docType = (String) arguments.get("doc_type");
+                        final String aggregate = (String) arguments.getOrDefault("aggregate", "count");
+                        final String groupBy = (String) arguments.get("group_by");
+                        final Map<String, String> filters = new HashMap<>();
+                        if (arguments.get("filters") instanceof Map<?, ?> given) {
+                            given.forEach((k, v) -> filters.put(String.valueOf(k), String.valueOf(v)));
+                        }
+                        final List<FieldStore.Row> rows;
+                        try {
+                            rows = loadFieldStore().query(docType, filters, (String) arguments.get("date_from"),
+                                (String) arguments.get("date_to"), groupBy, aggregate, (String) arguments.get("field"));
+                        } catch (IllegalArgumentException e) {
+                            yield e.getMessage();
+                        }
+                        if (rows.isEmpty()) {
+                            yield "No matching " + docType + " documents";
+                        }
+                        final StringBuilder sb = new StringBuilder();
+                        sb.append(groupBy == null ? "" : groupBy + " | ").append("count | ").append(aggregate).append('\n');
+                        for (FieldStore.Row row : rows) {
+                            if (groupBy != null) {
+                                sb.append(row.group.isEmpty() ? "(none)" : row.group).append(" | ");
+                            }
+                            sb.append(row.count).append(" | ").append(Double.isNaN(row.value) ? "-" : String.format("%.2f", row.value)).append('\n');
+                        }
+                        yield sb.toString();
+                    }
+                    case "export_jobs" -> {
+                        final String format = (String) arguments.getOrDefault("format", "ndjson");
+                        if (!EXPORT_FORMATS.contains(format)) {
+                            // Checked before the format becomes part of a file name
+                            yield "Unknown export format: " + format;
+                        }
+                        final List<String> fields = (List<String>) arguments.getOrDefault("fields", List.of());
+                        final Path exportPath = Paths.get("jobs", "exports",
+                            Instant.now().toString().replace(':', '-') + "-" + UUID.randomUUID() + "." + format);
+                        try {
+                            Files.createDirectories(exportPath.getParent());
+                            try (java.io.Writer out = Files.newBufferedWriter(exportPath)) {
+                                final long count = jobExporter.export((String) arguments.get("date_from"), (String) arguments.get("date_to"),
+                                    (String) arguments.get("doc_type"), format, fields, out);
+                                yield String.format("Exported %d jobs\nPath: %s", count, exportPath);
+                            }
+                        } catch (IllegalArgumentException e) {
+                            yield e.getMessage();
+                        } catch (java.io.IOException e) {
+                            log.error("Error exporting jobs", e);
+                            yield "Export failed: " + e.getMessage();
+                        }
+                    }
                     case "add_schema" -> {
                         final String docType = (String) arguments.get("doc_type");
                         final String schema = (String) arguments.get("schema");
@@ -426,6 +773,9 @@ public class MCPServer {
                     }
                     default -> "Unknown tool: " + toolName;
                 };
+                if (busy != null) {
+                    yield createError(-32_000, busy.getMessage(), id, Map.of("retryAfterMs", busy.getRetryAfterMillis()));
+                }
 
                 yield Map.of(
                     "jsonrpc", "2.0",
@@ -438,32 +788,33 @@ public class MCPServer {
                     )
                 );
             }
-            case "resources/list" -> Map.of(
-                "jsonrpc", "2.0",
-                "id", id,
-                "result", Map.of(
-                    "resources", List.of(
-                        Map.of(
-                            "uri", "file:///example.txt",
-                            "name", "Example File",
-                            "description", "An example text resource",
-                            "mimeType", "text/plain"
-                        )
-                    )
-                )
-            );
+            case "resources/list" -> {
+                final Map<String, Object> params = (Map<String, Object>) request.get("params");
+                final String cursor = params == null ? null : (String) params.get("cursor");
+                try {
+                    yield Map.of(
+                        "jsonrpc", "2.0",
+                        "id", id,
+                        "result", listJobResources(cursor)
+                    );
+                } catch (IllegalArgumentException e) {
+                    yield createError(-32_602, e.getMessage(), id);
+                }
+            }
             case "resources/read" -> {
                 final Map<String, Object> params = (Map<String, Object>) request.get("params");
                 final String uri = (String) params.get("uri");
+                final long offset = params.get("offset") instanceof Number n ? n.longValue() : 0;
+                final int length = params.get("length") instanceof Number n ? n.intValue() : JobStore.MAX_READ_LENGTH;
+                final Map<String, Object> content = readJobResource(uri, offset, length);
+                if (content == null) {
+                    yield createError(-32_002, "Resource not found: " + uri, id);
+                }
                 yield Map.of(
                     "jsonrpc", "2.0",
                     "id", id,
                     "result", Map.of(
-                        "contents", List.of(Map.of(
-                            "uri", uri,
-                            "mimeType", "text/plain",
-                            "text", "This is example content from: " + uri
-                        ))
+                        "contents", List.of(content)
                     )
                 );
             }
@@ -519,14 +870,42 @@ public class MCPServer {
         };
     }
 
-    @SuppressWarnings({"PMD.NcssCount", "PMD.CognitiveComplexity"}) // Complex multi-file processing
     static String handleMultiFileUpload(final List<Map<String, Object>> files) {
+        return handleMultiFileUpload(files, null);
+    }
+
+    /**
+     * Processes uploaded files. With a batch ID, each file's job ID is derived from the
+     * batch ID and the file's position, so a resumed async job finds the job folders and
+     * stage artifacts of its earlier attempt.
+     *
+     * @param files the uploaded files
+     * @param batchId stable ID of the upload, or null for random job IDs
+     * @return the upload report
+     */
+    static String handleMultiFileUpload(final List<Map<String, Object>> files, final String batchId) {
+        return handleMultiFileUpload(files, batchId, null);
+    }
+
+    /**
+     * Processes uploaded files, reporting the fields of each file as they are streamed
+     * from Bedrock.
+     *
+     * @param files the uploaded files
+     * @param batchId stable ID of the upload, or null for random job IDs
+     * @param progress receives a file name and its fields so far, or null
+     * @return the upload report
+     */
+    @SuppressWarnings({"PMD.NcssCount", "PMD.CognitiveComplexity"}) // Complex multi-file processing
+    static String handleMultiFileUpload(final List<Map<String, Object>> files, final String batchId,
+            final java.util.function.BiConsumer<String, Map<String, Object>> progress) {
         try {
             final StringBuilder result = new StringBuilder();
             final Map<String, Object> metadata = new HashMap<>();
             metadata.put("uploadTime", Instant.now().toString());
             metadata.put("fileCount", files.size());
             List<Map<String, Object>> fileMetadata = new ArrayList<>();
+            final StringBuilder archiveText = new StringBuilder();
 
             // Check if any file is an archive
             final boolean hasArchive = files.stream()
@@ -580,7 +959,7 @@ public class MCPServer {
                             structuredData = extractStructuredFromExcel(fileBytes);
                             markdown = markdownConverter.convertExcelToMarkdown(fileBytes);
                         } else {
-                            textractResult = analyzeWithTextract(fileBytes, filename);
+                            textractResult = textExtractor.ocr(fileBytes, filename).text;
                             structuredData = extractStructuredWithTextract(fileBytes);
                             markdown = convertToMarkdown(textractResult, structuredData);
                         }
@@ -588,6 +967,7 @@ public class MCPServer {
                         fileMeta.put("textractAnalysis", textractResult);
                         fileMeta.put("structuredData", structuredData);
                         fileMeta.put("markdown", markdown);
+                        archiveText.append(textractResult).append('\n');
 
                         result.append(String.format("✓ %s (%s) - %d bytes\n", filename, type, fileBytes.length));
                     }
@@ -598,87 +978,382 @@ public class MCPServer {
 
                 metadata.put("files", fileMetadata);
                 saveMetadata(jobPath, metadata);
+                loadSearchIndex().add(jobId, JobStore.dateOf(Paths.get(jobPath)), "archive", archiveText.toString());
                 result.append(String.format("\nPath: %s", jobPath));
             } else {
                 // Each file gets its own job folder
                 result.append(String.format("Files: %d (separate jobs)\n\n", files.size()));
 
-                for (Map<String, Object> file : files) {
-                    final String filename = (String) file.get("filename");
-                    final String content = (String) file.get("content");
-                    final String type = (String) file.get("type");
+                // Files go through the stage pools concurrently, at most UPLOAD_FILES_IN_FLIGHT
+                // at a time so a large upload waits for the stages instead of overflowing
+                // their queues; results are reported in upload order, failures per file
+                final java.util.concurrent.Semaphore window = new java.util.concurrent.Semaphore(UPLOAD_FILES_IN_FLIGHT);
+                final List<java.util.concurrent.CompletableFuture<String>> uploads = new ArrayList<>();
+                for (int i = 0; i < files.size(); i++) {
+                    final String docId = batchId == null ? null
+                        : UUID.nameUUIDFromBytes((batchId + "/" + i).getBytes(java.nio.charset.StandardCharsets.UTF_8)).toString();
+                    final UploadState upload = new UploadState(files.get(i), docId);
+                    upload.progress = progress;
+                    window.acquire();
+                    uploads.add(processUpload(upload)
+                        .whenComplete((line, error) -> window.release())
+                        .exceptionally(error -> uploadFailed(upload, error)));
+                }
+                for (java.util.concurrent.CompletableFuture<String> upload : uploads) {
+                    result.append(upload.join());
+                }
+            }
 
-                    final String jobId = java.util.UUID.randomUUID().toString();
-                    final String jobPath = createJobFolder(jobId);
-                    final byte[] fileBytes = java.util.Base64.getDecoder().decode(content);
+            return result.toString();
 
-                    // Detect actual file type
-                    final String detectedType = detectFileType(fileBytes, filename);
-                    log.info("File {} - Declared: {}, Detected: {}", filename, type, detectedType);
+        } catch (Exception e) {
+            log.error("Error uploading files", e);
+            return "Error uploading files: " + e.getMessage();
+        }
+    }
 
-                    final Path filePath = Paths.get(jobPath, filename);
-                    Files.write(filePath, fileBytes);
+    /** Reports a file whose processing failed, without failing the rest of the upload. */
+    private static String uploadFailed(final UploadState upload, final Throwable error) {
+        final Throwable cause = error instanceof java.util.concurrent.CompletionException && error.getCause() != null
+            ? error.getCause() : error;
+        if (log.isErrorEnabled()) {
+            log.error("Error processing {}", upload.filename, cause);
+        }
+        return String.format("✗ %s (%s)\n  Error: %s\n\n", upload.filename, upload.type, cause.getMessage());
+    }
 
-                    // Extract text and structured data
-                    String textractResult;
-                    Map<String, Object> structuredData = new HashMap<>();
-                    String markdown = "";
+    /**
+     * State of one uploaded file as it moves through the pipeline stages.
+     */
+    private static final class UploadState {
+        final String filename;
+        final String content;
+        final String type;
+        /** Deterministic or existing job ID whose stage artifacts are reused, or null */
+        final String docId;
+        /** Stages that were computed rather than taken from an artifact */
+        final List<String> computed = new java.util.concurrent.CopyOnWriteArrayList<>();
+        String jobId;
+        String jobPath;
+        byte[] fileBytes;
+        String fileHash;
+        String detectedType;
+        String text;
+        Float ocrConfidence;
+        Map<String, Object> structuredData = new HashMap<>();
+        String markdown = "";
+        Map<String, Object> classification;
+        Map<String, Object> consensus;
+        Map<String, Object> extractedFields;
+        /** Type and fields from a combined Bedrock call, or null */
+        Map<String, Object> combined;
+        /** Receives the file name and fields so far while fields are streamed, or null */
+        java.util.function.BiConsumer<String, Map<String, Object>> progress;
+
+        UploadState(final Map<String, Object> file, final String docId) {
+            this.filename = (String) file.get("filename");
+            this.content = (String) file.get("content");
+            this.type = (String) file.get("type");
+            this.docId = docId;
+        }
+    }
 
-                    if ("excel".equals(type) || detectedType.contains("spreadsheet") || detectedType.contains("ooxml")) {
-                        textractResult = extractExcelText(fileBytes);
-                        structuredData = extractStructuredFromExcel(fileBytes);
-                        markdown = markdownConverter.convertExcelToMarkdown(fileBytes);
-                    } else {
-                        textractResult = analyzeWithTextract(fileBytes, filename);
-                        structuredData = extractStructuredWithTextract(fileBytes);
-                        markdown = convertToMarkdown(textractResult, structuredData);
-                    }
+    /**
+     * Processes one file as its own job. Parsing and conversion run on the CPU stage,
+     * OCR on the Textract stage (concurrently with Tabula table extraction), and
+     * classification and field extraction on the Comprehend and Bedrock stages.
+     * Every stage's output is stored as a {@link StageArtifacts} artifact in the job
+     * folder, and a current artifact is reused instead of running the stage again.
+     *
+     * @param upload the uploaded file
+     * @return future completed with the file's result line
+     */
+    private static java.util.concurrent.CompletableFuture<String> processUpload(final UploadState upload) {
+        final java.util.concurrent.Executor cpu = stagePools.executor(StagePools.Stage.PARSE);
+        return stagePools.supply(StagePools.Stage.PARSE, () -> parseUpload(upload))
+            .thenCompose(parsed -> parsed.text != null
+                ? java.util.concurrent.CompletableFuture.completedFuture(parsed)
+                : ocrUpload(parsed, cpu)
+                    .thenCombine(stagePools.supply(StagePools.Stage.PARSE, () -> tablesUpload(parsed)),
+                        (ocr, structured) -> {
+                            ocr.structuredData = structured;
+                            return ocr;
+                        })
+                    .thenApplyAsync(ocr -> {
+                        ocr.markdown = convertToMarkdown(ocr.text, ocr.structuredData);
+                        return ocr;
+                    }, cpu))
+            .thenCompose(MCPServer::classifyUpload)
+            .thenCompose(classified -> extractUpload(classified, cpu))
+            .thenApplyAsync(MCPServer::saveUpload, cpu);
+    }
 
-                    // Save metadata for this job
-                    final Map<String, Object> jobMeta = new HashMap<>();
-                    jobMeta.put("jobId", jobId);
-                    jobMeta.put("uploadTime", Instant.now().toString());
-                    jobMeta.put("type", "single");
-                    jobMeta.put("filename", filename);
-                    jobMeta.put("declaredType", type);
-                    jobMeta.put("detectedType", detectedType);
-                    jobMeta.put("size", fileBytes.length);
-                    jobMeta.put("textractAnalysis", textractResult);
-                    jobMeta.put("structuredData", structuredData);
-                    jobMeta.put("markdown", markdown);
-
-                    // Add OCR confidence if available
-                    Float confidence = ocrConfidence.get();
-                    if (confidence != null) {
-                        jobMeta.put("ocrConfidence", confidence);
-                        ocrConfidence.remove();
-                    }
+    /**
+     * Runs OCR unless the file's OCR artifact is current, as a non-blocking call when
+     * the async Textract client is configured and otherwise on the Textract pool.
+     */
+    private static java.util.concurrent.CompletableFuture<UploadState> ocrUpload(final UploadState upload,
+            final java.util.concurrent.Executor cpu) {
+        final Path jobPath = Paths.get(upload.jobPath);
+        if (stageArtifacts.load(jobPath, StageArtifacts.Stage.OCR, upload.fileHash) instanceof Map<?, ?> ocr) {
+            upload.text = (String) ocr.get("text");
+            upload.ocrConfidence = ocr.get("confidence") instanceof Number n ? n.floatValue() : null;
+            return java.util.concurrent.CompletableFuture.completedFuture(upload);
+        }
+        final java.util.concurrent.CompletableFuture<TextExtractor.OcrResult> call = textExtractor.isAsync()
+            ? textExtractor.ocrAsync(upload.fileBytes, upload.filename)
+            : stagePools.supply(StagePools.Stage.TEXTRACT, () -> textExtractor.ocr(upload.fileBytes, upload.filename));
+        return call.thenApplyAsync(ocr -> {
+            upload.text = ocr.text;
+            upload.ocrConfidence = ocr.confidence;
+            upload.computed.add("ocr");
+            // Failed recognition has no confidence and is retried rather than stored
+            if (ocr.confidence != null) {
+                final Map<String, Object> saved = new HashMap<>();
+                saved.put("text", ocr.text);
+                saved.put("confidence", ocr.confidence);
+                stageArtifacts.save(jobPath, StageArtifacts.Stage.OCR, upload.fileHash, saved);
+            }
+            return upload;
+        }, cpu);
+    }
 
-                    // Classify document
-                    final Map<String, Object> classification = classifier.classify(textractResult);
-                    final Map<String, Object> consensus = classifier.getConsensus(classification);
+    /** Extracts tables unless the file's table artifact is current. */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> tablesUpload(final UploadState upload) {
+        final Path jobPath = Paths.get(upload.jobPath);
+        if (stageArtifacts.load(jobPath, StageArtifacts.Stage.TABLES, upload.fileHash) instanceof Map<?, ?> tables) {
+            return (Map<String, Object>) tables;
+        }
+        final Map<String, Object> tables = extractStructuredWithTextract(upload.fileBytes);
+        upload.computed.add("tables");
+        stageArtifacts.save(jobPath, StageArtifacts.Stage.TABLES, upload.fileHash, tables);
+        return tables;
+    }
 
-                    // Extract structured fields with Bedrock
-                    final Map<String, Object> extractedFields = fieldExtractor.extractFields(textractResult, (String) consensus.get("type"));
+    /**
+     * Classifies the text unless the classification artifact for this text is current.
+     * With {@code -Dhulft.bedrock.combined=true}, the Bedrock vote comes from one call that
+     * also extracts the fields, which {@link #extractUpload} reuses when the consensus
+     * agrees with the model's type.
+     */
+    @SuppressWarnings("unchecked")
+    private static java.util.concurrent.CompletableFuture<UploadState> classifyUpload(final UploadState upload) {
+        final Path jobPath = Paths.get(upload.jobPath);
+        final String input = StageArtifacts.fingerprint(upload.text);
+        if (stageArtifacts.load(jobPath, StageArtifacts.Stage.CLASSIFICATION, input) instanceof Map<?, ?> saved) {
+            upload.classification = (Map<String, Object>) saved.get("classification");
+            upload.consensus = (Map<String, Object>) saved.get("consensus");
+            return java.util.concurrent.CompletableFuture.completedFuture(upload);
+        }
+        final java.util.concurrent.CompletableFuture<Map<String, Object>> classified;
+        if (COMBINED_EXTRACTION) {
+            final java.util.concurrent.CompletableFuture<Map<String, Object>> combined = fieldExtractor.isAsync()
+                ? fieldExtractor.classifyAndExtractAsync(upload.text)
+                : stagePools.supply(StagePools.Stage.BEDROCK, () -> fieldExtractor.classifyAndExtract(upload.text));
+            classified = classifier.classifyAsync(upload.text, stagePools, combined.thenApply(answer -> {
+                upload.combined = answer;
+                return DocumentClassifier.combinedVote(answer);
+            }));
+        } else {
+            classified = classifier.classifyAsync(upload.text, stagePools);
+        }
+        return classified.thenApply(classification -> {
+            upload.classification = classification;
+            upload.consensus = classifier.getConsensus(classification);
+            upload.computed.add("classification");
+            // A vote that failed is retried on the next run rather than stored
+            if (classification.values().stream().noneMatch(vote -> vote instanceof Map<?, ?> m && m.containsKey("error"))) {
+                stageArtifacts.save(jobPath, StageArtifacts.Stage.CLASSIFICATION, input,
+                    Map.of("classification", classification, "consensus", upload.consensus));
+            }
+            return upload;
+        });
+    }
 
-                    jobMeta.put("classification", classification);
-                    jobMeta.put("finalClassification", consensus);
-                    jobMeta.put("extractedFields", extractedFields);
+    /**
+     * Extracts fields unless the fields artifact is current. Its input includes the
+     * document type's schema and how the text was put into prompts, so changing the
+     * schema or turning chunking or packing on invalidates it. An error from Bedrock, or
+     * fields merged from chunks some of which failed, are returned but not saved, so the
+     * next run retries them.
+     */
+    @SuppressWarnings("unchecked")
+    private static java.util.concurrent.CompletableFuture<UploadState> extractUpload(final UploadState upload,
+            final java.util.concurrent.Executor cpu) {
+        final Path jobPath = Paths.get(upload.jobPath);
+        final String docType = (String) upload.consensus.get("type");
+        final String input = StageArtifacts.fingerprint(upload.text, docType, schemaManager.getSchema(docType),
+            fieldExtractor.mode(upload.text));
+        if (stageArtifacts.load(jobPath, StageArtifacts.Stage.FIELDS, input) instanceof Map<?, ?> saved) {
+            upload.extractedFields = (Map<String, Object>) saved;
+            return java.util.concurrent.CompletableFuture.completedFuture(upload);
+        }
+        if (upload.combined != null && docType.equals(upload.combined.get("type"))) {
+            Metrics.counter("bedrock.combined.reused").incrementAndGet();
+            upload.extractedFields = (Map<String, Object>) upload.combined.get("fields");
+            upload.computed.add("fields");
+            if (upload.extractedFields != null && !upload.extractedFields.containsKey("error")) {
+                stageArtifacts.save(jobPath, StageArtifacts.Stage.FIELDS, input, upload.extractedFields);
+            }
+            return java.util.concurrent.CompletableFuture.completedFuture(upload);
+        }
+        if (upload.combined != null) {
+            // The consensus overruled the model's type, so extract with the agreed schema
+            Metrics.counter("bedrock.combined.followups").incrementAndGet();
+        }
+        final java.util.concurrent.CompletableFuture<Map<String, Object>> call;
+        if (fieldExtractor.isChunked(upload.text)) {
+            call = fieldExtractor.extractFieldsChunked(upload.text, docType);
+        } else if (fieldExtractor.isBatching()) {
+            // Batching wins over streaming; FieldExtractor warns at startup when both are set
+            call = fieldExtractor.extractFieldsBatched(upload.text, docType);
+        } else if (fieldExtractor.isStreaming()) {
+            call = fieldExtractor.extractFieldsStreaming(upload.text, docType, partial -> {
+                if (upload.progress != null) {
+                    upload.progress.accept(upload.filename, partial);
+                }
+            });
+        } else if (fieldExtractor.isAsync()) {
+            call = fieldExtractor.extractFieldsAsync(upload.text, docType);
+        } else {
+            call = stagePools.supply(StagePools.Stage.BEDROCK, () -> fieldExtractor.extractFields(upload.text, docType));
+        }
+        return call.thenApplyAsync(fields -> {
+            upload.extractedFields = fields;
+            upload.computed.add("fields");
+            // Failed extractions and partly failed chunked ones are retried rather than stored
+            if (fields != null && !fields.containsKey("error") && !fields.containsKey(FieldExtractor.PARTIAL_CHUNKS)) {
+                stageArtifacts.save(jobPath, StageArtifacts.Stage.FIELDS, input, fields);
+            }
+            return upload;
+        }, cpu);
+    }
 
-                    saveMetadata(jobPath, jobMeta);
+    /**
+     * Decodes and stores the file, reusing the job folder of a resumed or reprocessed
+     * job; spreadsheets are fully parsed here since they need no OCR.
+     */
+    private static UploadState parseUpload(final UploadState upload) {
+        try {
+            final Path existing = upload.docId == null ? null : jobStore.findJobFolder(upload.docId);
+            upload.jobId = upload.docId != null ? upload.docId : java.util.UUID.randomUUID().toString();
+            upload.jobPath = existing != null ? existing.toString() : createJobFolder(upload.jobId);
+            if (upload.fileBytes == null) {
+                upload.fileBytes = java.util.Base64.getDecoder().decode(upload.content);
+            }
+            upload.fileHash = StageArtifacts.fingerprint(upload.fileBytes);
 
-                    result.append(String.format("✓ %s (%s)\n  Job ID: %s\n  Size: %d bytes\n\n",
-                        filename, type, jobId, fileBytes.length));
-                    log.info("Saved {} to {}", filename, filePath);
-                }
+            // Detect actual file type
+            final Path jobPath = Paths.get(upload.jobPath);
+            if (stageArtifacts.load(jobPath, StageArtifacts.Stage.DETECT, upload.fileHash) instanceof String detected) {
+                upload.detectedType = detected;
+            } else {
+                upload.detectedType = detectFileType(upload.fileBytes, upload.filename);
+                upload.computed.add("detect");
+                stageArtifacts.save(jobPath, StageArtifacts.Stage.DETECT, upload.fileHash, upload.detectedType);
             }
+            log.info("File {} - Declared: {}, Detected: {}", upload.filename, upload.type, upload.detectedType);
 
-            return result.toString();
+            Files.write(jobPath.resolve(upload.filename), upload.fileBytes);
 
-        } catch (Exception e) {
-            log.error("Error uploading files", e);
-            return "Error uploading files: " + e.getMessage();
+            if ("excel".equals(upload.type) || upload.detectedType.contains("spreadsheet") || upload.detectedType.contains("ooxml")) {
+                upload.text = extractExcelText(upload.fileBytes);
+                upload.structuredData = extractStructuredFromExcel(upload.fileBytes);
+                upload.markdown = markdownConverter.convertExcelToMarkdown(upload.fileBytes);
+            }
+            return upload;
+        } catch (java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Re-runs the pipeline of a single-file job on its stored file. Stages with a
+     * current artifact are skipped; {@code from} invalidates a stage and all later ones.
+     *
+     * @param jobId the job to reprocess
+     * @param from first stage to recompute (detect, ocr, tables, classification, fields), or null
+     * @return the upload report with the stages that were recomputed
+     */
+    static String reprocessJob(final String jobId, final String from) {
+        final StageArtifacts.Stage fromStage;
+        try {
+            fromStage = from == null ? null : StageArtifacts.Stage.valueOf(from.toUpperCase(java.util.Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return "Unknown stage: " + from;
+        }
+        try {
+            final Path jobPath = jobStore.findJobFolder(jobId);
+            if (jobPath == null) {
+                return "Job not found: " + jobId;
+            }
+            final Map<String, Object> meta = jobStore.readMetadata(jobPath);
+            if (!"single".equals(meta.get("type")) || !(meta.get("filename") instanceof String filename)) {
+                return "Only single-file jobs can be reprocessed: " + jobId;
+            }
+            if (fromStage != null) {
+                stageArtifacts.invalidateFrom(jobPath, fromStage);
+            }
+            final Map<String, Object> file = new HashMap<>();
+            file.put("filename", filename);
+            file.put("type", meta.get("declaredType"));
+            final UploadState upload = new UploadState(file, jobId);
+            upload.fileBytes = Files.readAllBytes(jobPath.resolve(filename));
+            final String report = processUpload(upload).join();
+            return report + "Recomputed stages: " + (upload.computed.isEmpty() ? "none" : String.join(", ", upload.computed));
+        } catch (java.util.concurrent.CompletionException e) {
+            log.error("Error reprocessing job {}", jobId, e.getCause());
+            return "Error reprocessing job: " + e.getCause().getMessage();
+        } catch (java.io.IOException e) {
+            log.error("Error reprocessing job {}", jobId, e);
+            return "Error reprocessing job: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Saves metadata and artifacts and indexes the job. A job folder that already has
+     * metadata keeps its upload time and records when it was reprocessed.
+     */
+    private static String saveUpload(final UploadState upload) {
+        final Map<String, Object> jobMeta = new HashMap<>();
+        jobMeta.put("jobId", upload.jobId);
+        final Object uploadTime = jobStore.readMetadata(Paths.get(upload.jobPath)).get("uploadTime");
+        if (uploadTime == null) {
+            jobMeta.put("uploadTime", Instant.now().toString());
+        } else {
+            jobMeta.put("uploadTime", uploadTime);
+            jobMeta.put("reprocessedAt", Instant.now().toString());
         }
+        jobMeta.put("type", "single");
+        jobMeta.put("filename", upload.filename);
+        jobMeta.put("declaredType", upload.type);
+        jobMeta.put("detectedType", upload.detectedType);
+        jobMeta.put("size", upload.fileBytes.length);
+        jobMeta.put("textractAnalysis", upload.text);
+        jobMeta.put("structuredData", upload.structuredData);
+        jobMeta.put("markdown", upload.markdown);
+
+        // Add OCR confidence if available
+        if (upload.ocrConfidence != null) {
+            jobMeta.put("ocrConfidence", upload.ocrConfidence);
+        }
+
+        jobMeta.put("classification", upload.classification);
+        jobMeta.put("finalClassification", upload.consensus);
+        jobMeta.put("extractedFields", upload.extractedFields);
+
+        final Path jobPath = Paths.get(upload.jobPath);
+        saveMetadata(upload.jobPath, jobMeta);
+        jobStore.writeArtifacts(jobPath, upload.text, upload.markdown);
+        loadSearchIndex().add(upload.jobId, JobStore.dateOf(jobPath),
+            (String) upload.consensus.getOrDefault("type", "UNKNOWN"), upload.text);
+        loadFieldStore().append(upload.jobId, JobStore.dateOf(jobPath),
+            (String) upload.consensus.get("type"), upload.extractedFields);
+
+        log.info("Saved {} to {}", upload.filename, jobPath.resolve(upload.filename));
+        return String.format("✓ %s (%s)\n  Job ID: %s\n  Size: %d bytes\n\n",
+            upload.filename, upload.type, upload.jobId, upload.fileBytes.length);
     }
 
     @SuppressWarnings("PMD.GuardLogStatement") // Simple log, not expensive
@@ -759,19 +1434,156 @@ public class MCPServer {
     }
 
     private static String createJobFolder(final String jobId) throws java.io.IOException {
-        java.time.LocalDate now = java.time.LocalDate.now();
-        final String year = String.valueOf(now.getYear());
-        final String month = String.format("%02d", now.getMonthValue());
-        final String day = String.format("%02d", now.getDayOfMonth());
-
-        final String jobPath = String.format("jobs/%s/%s/%s/%s", year, month, day, jobId);
-        final Path path = Paths.get(jobPath);
-        Files.createDirectories(path);
-
+        final String jobPath = jobStore.createJobFolder(jobId).toString();
         log.info("Created job folder: {}", jobPath);
         return jobPath;
     }
 
+    /**
+     * Creates the journaled job manager. Async uploads are submitted as payloads rather
+     * than closures so they can be re-run after a restart. With {@code -Dhulft.cluster=true},
+     * nodes sharing the {@code jobs/} volume share one queue in {@code jobs/cluster}
+     * instead; set {@code hulft.nodeId} and {@code hulft.port} to run several locally.
+     */
+    @SuppressWarnings("unchecked")
+    private static JobManager createJobManager() {
+        final JobManager manager;
+        if (Boolean.getBoolean("hulft.cluster")) {
+            final JobCluster cluster = new JobCluster(Paths.get("jobs", "cluster"), JobCluster.defaultNodeId(),
+                Long.getLong("hulft.cluster.leaseMillis", 30_000L));
+            log.info("Joining job cluster as node {}", cluster.nodeId());
+            manager = new JobManager(null, cluster);
+            Metrics.gauge("jobs.cluster.pending", cluster::pendingJobs);
+            Metrics.gauge("jobs.cluster.nodes", () -> cluster.liveNodes().size());
+        } else {
+            manager = new JobManager(new JobJournal(Paths.get("jobs", "queue")));
+        }
+        manager.registerHandler(UPLOAD_JOB, (jobId, payload) ->
+            Map.of("text", handleMultiFileUpload((List<Map<String, Object>>) payload.get("files"), (String) payload.get("batchId"),
+                (filename, fields) -> manager.reportProgress(jobId, filename, fields))));
+        Metrics.gauge("jobs.live", manager::liveJobs);
+        Metrics.gauge("jobs.evicted", manager::evictedJobs);
+        Metrics.gauge("jobs.queue.depth", manager::queueDepth);
+        Metrics.gauge("jobs.queue.capacity", manager::queueCapacity);
+        Metrics.gauge("jobs.queue.waitMillis.avg", manager::averageWaitMillis);
+        Metrics.gauge("jobs.queue.sessions", manager::waitingSessions);
+        Metrics.gauge("jobs.rejected", manager::rejectedJobs);
+        return manager;
+    }
+
+    private static StagePools createStagePools() {
+        final StagePools pools = new StagePools();
+        pools.registerMetrics();
+        return pools;
+    }
+
+    /**
+     * Creates the event-loop HTTP client shared by the async AWS clients when
+     * {@code -Dhulft.aws.async=true}; {@code hulft.aws.maxConcurrency} (200) bounds its
+     * open connections. Without it, AWS calls block threads of the stage pools.
+     */
+    private static software.amazon.awssdk.http.async.SdkAsyncHttpClient createAsyncHttpClient() {
+        if (!Boolean.getBoolean("hulft.aws.async")) {
+            return null;
+        }
+        return software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient.builder()
+            .maxConcurrency(Integer.getInteger("hulft.aws.maxConcurrency", 200))
+            .build();
+    }
+
+    private static JobIndex loadJobIndex() {
+        try {
+            jobIndex.load(jobStore);
+        } catch (Exception e) {
+            log.error("Error loading job index", e);
+        }
+        return jobIndex;
+    }
+
+    private static SearchIndex loadSearchIndex() {
+        try {
+            searchIndex.load();
+        } catch (Exception e) {
+            log.error("Error loading search index", e);
+        }
+        return searchIndex;
+    }
+
+    private static FieldStore loadFieldStore() {
+        try {
+            fieldStore.load();
+        } catch (Exception e) {
+            log.error("Error loading field store", e);
+        }
+        return fieldStore;
+    }
+
+    /**
+     * Lists job artifacts as MCP resources, one index page of jobs at a time.
+     *
+     * @param cursor cursor from the previous page, or null for the first page
+     * @return result map with {@code resources} and, if more remain, {@code nextCursor}
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    private static Map<String, Object> listJobResources(final String cursor) {
+        final JobIndex.Page page = loadJobIndex().list(cursor, 50, null);
+        final List<Map<String, Object>> resources = new ArrayList<>();
+        for (JobIndex.Entry entry : page.entries) {
+            if ("archive".equals(entry.type)) {
+                continue;
+            }
+            final String name = entry.type + " " + entry.jobId;
+            resources.add(Map.of("uri", JobStore.URI_PREFIX + entry.jobId + "/markdown", "name", name + " (markdown)",
+                "mimeType", "text/markdown"));
+            resources.add(Map.of("uri", JobStore.URI_PREFIX + entry.jobId + "/text", "name", name + " (text)",
+                "mimeType", "text/plain"));
+            resources.add(Map.of("uri", JobStore.URI_PREFIX + entry.jobId + "/original", "name", name + " (original)",
+                "mimeType", "application/octet-stream"));
+        }
+        final Map<String, Object> result = new HashMap<>();
+        result.put("resources", resources);
+        if (page.nextCursor != null) {
+            result.put("nextCursor", page.nextCursor);
+        }
+        return result;
+    }
+
+    /**
+     * Reads a byte range of a job artifact as an MCP resource content entry.
+     * Text artifacts are returned as {@code text}, originals as base64 {@code blob};
+     * {@code size} and {@code nextOffset} let clients fetch the rest incrementally.
+     */
+    private static Map<String, Object> readJobResource(final String uri, final long offset, final int length) {
+        try {
+            final Path file = jobStore.resolve(uri);
+            if (file == null) {
+                return null;
+            }
+            final String mimeType = JobStore.mimeType(uri);
+            final JobStore.Chunk chunk = jobStore.read(file, offset, length);
+            final Map<String, Object> content = new HashMap<>();
+            content.put("uri", uri);
+            content.put("mimeType", mimeType);
+            content.put("offset", chunk.offset);
+            content.put("size", chunk.size);
+            long nextOffset = chunk.nextOffset();
+            if (mimeType.startsWith("text/")) {
+                final Map.Entry<String, Long> decoded = JobStore.decodeText(chunk);
+                content.put("text", decoded.getKey());
+                nextOffset = decoded.getValue();
+            } else {
+                content.put("blob", java.util.Base64.getEncoder().encodeToString(chunk.data));
+            }
+            if (nextOffset < chunk.size) {
+                content.put("nextOffset", nextOffset);
+            }
+            return content;
+        } catch (Exception e) {
+            log.error("Error reading resource {}", uri, e);
+            return null;
+        }
+    }
+
     private static String detectFileType(final byte[] fileBytes, final String filename) {
         try {
             // Use Apache Tika to detect MIME type from content
@@ -793,50 +1605,6 @@ public class MCPServer {
         }
     }
 
-    private static String analyzeWithTextract(final byte[] fileBytes, final String filename) {
-        try {
-            software.amazon.awssdk.services.textract.model.DetectDocumentTextRequest request =
-                software.amazon.awssdk.services.textract.model.DetectDocumentTextRequest.builder()
-                    .document(software.amazon.awssdk.services.textract.model.Document.builder()
-                        .bytes(software.amazon.awssdk.core.SdkBytes.fromByteArray(fileBytes))
-                        .build())
-                    .build();
-
-            software.amazon.awssdk.services.textract.model.DetectDocumentTextResponse response =
-                textractClient.detectDocumentText(request);
-
-            final StringBuilder text = new StringBuilder();
-            final List<Float> confidences = new ArrayList<>();
-
-            for (Block block : response.blocks()) {
-                if (block.blockType() == BlockType.LINE) {
-                    text.append(block.text()).append('\n');
-                    if (block.confidence() != null) {
-                        confidences.add(block.confidence());
-                    }
-                }
-            }
-
-            // Calculate average confidence
-            final float avgConfidence = confidences.isEmpty()
-                ? 0
-                : (float) confidences.stream().mapToDouble(Float::doubleValue).average().orElse(0);
-
-            final String extractedText = text.toString();
-            log.info("Textract extracted {} characters from {} (avg confidence: {:.2f}%)",
-                extractedText.length(), filename, avgConfidence);
-
-            // Store confidence in thread-local for metadata
-            ocrConfidence.set(avgConfidence);
-
-            return extractedText;
-
-        } catch (Exception e) {
-            log.error("Error with Textract analysis", e);
-            return "Textract analysis failed: " + e.getMessage();
-        }
-    }
-
     private static String extractExcelText(final byte[] fileBytes) {
         try {
             org.apache.poi.ss.usermodel.Workbook workbook = org.apache.poi.ss.usermodel.WorkbookFactory.create(new java.io.ByteArrayInputStream(fileBytes));
@@ -956,6 +1724,7 @@ public class MCPServer {
             final Path metaPath = Paths.get(jobPath, "meta.json");
             final String json = gson.toJson(metadata);
             Files.writeString(metaPath, json);
+            loadJobIndex().record(Paths.get(jobPath), metadata);
             log.info("Saved metadata to {}", metaPath);
         } catch (Exception e) {
             log.error("Error saving metadata", e);
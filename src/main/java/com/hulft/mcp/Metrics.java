@@ -0,0 +1,53 @@
+package com.hulft.mcp;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide registry of named counters and gauges, served as JSON from {@code /metrics}
+ * to clients with a valid {@code MCP-Session-Id}.
+ * Counters are monotonically increasing values owned by the registry; gauges are
+ * sampled from their supplier whenever a snapshot is taken.
+ */
+public final class Metrics {
+    private static final Map<String, AtomicLong> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, Supplier<? extends Number>> GAUGES = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns the counter with a name, creating it at zero.
+     *
+     * @param name metric name, dot separated
+     * @return the counter
+     */
+    public static AtomicLong counter(final String name) {
+        return COUNTERS.computeIfAbsent(name, key -> new AtomicLong());
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge with the same name.
+     *
+     * @param name metric name, dot separated
+     * @param supplier samples the current value
+     */
+    public static void gauge(final String name, final Supplier<? extends Number> supplier) {
+        GAUGES.put(name, supplier);
+    }
+
+    /**
+     * Samples every counter and gauge.
+     *
+     * @return metric values sorted by name
+     */
+    public static Map<String, Number> snapshot() {
+        final Map<String, Number> values = new TreeMap<>();
+        COUNTERS.forEach((name, counter) -> values.put(name, counter.get()));
+        GAUGES.forEach((name, gauge) -> values.put(name, gauge.get()));
+        return values;
+    }
+}
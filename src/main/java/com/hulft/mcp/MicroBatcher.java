@@ -0,0 +1,171 @@
+package com.hulft.mcp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Collects requests for a short window and sends them as one batch. A batch is sent
+ * when the first request has waited {@code windowMillis}, or as soon as it holds
+ * {@code maxItems} requests or {@code maxWeight} worth of them (for example characters
+ * of text, as a proxy for tokens). The batch call answers with one result per request,
+ * in order, and each caller's future is completed with its own result; if the batch
+ * call fails, every caller in it fails.
+ *
+ * @param <I> request type
+ * @param <O> result type
+ */
+public class MicroBatcher<I, O> {
+    @SuppressWarnings("PMD.FieldNamingConventions") // Executor instance, not primitive constant
+    private static final ScheduledExecutorService timer =
+        Executors.newSingleThreadScheduledExecutor(VirtualThreads.platform("micro-batch-"));
+
+    private final int maxItems;
+    private final int maxWeight;
+    private final long windowMillis;
+    private final ToIntFunction<I> weigher;
+    private final Function<List<I>, CompletableFuture<List<O>>> call;
+
+    private List<Pending<I, O>> pending = new ArrayList<>();
+    private int pendingWeight;
+    private ScheduledFuture<?> deadline;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong items = new AtomicLong();
+
+    /** A request and the future of its caller. */
+    private record Pending<I, O>(I request, CompletableFuture<O> result) {
+    }
+
+    /**
+     * Creates a batcher.
+     *
+     * @param maxItems requests per batch
+     * @param maxWeight total weight per batch; a heavier single request is sent alone
+     * @param windowMillis longest time a request waits for others
+     * @param weigher weight of a request
+     * @param call sends a batch, answering with one result per request in order
+     */
+    public MicroBatcher(final int maxItems, final int maxWeight, final long windowMillis, final ToIntFunction<I> weigher,
+            final Function<List<I>, CompletableFuture<List<O>>> call) {
+        this.maxItems = maxItems;
+        this.maxWeight = maxWeight;
+        this.windowMillis = windowMillis;
+        this.weigher = weigher;
+        this.call = call;
+    }
+
+    /**
+     * Adds a request to the current batch.
+     *
+     * @param request the request
+     * @return future completed with the request's result
+     */
+    public CompletableFuture<O> submit(final I request) {
+        final CompletableFuture<O> result = new CompletableFuture<>();
+        final int weight = weigher.applyAsInt(request);
+        List<Pending<I, O>> full = null;
+        List<Pending<I, O>> ready = null;
+        synchronized (this) {
+            if (!pending.isEmpty() && pendingWeight + weight > maxWeight) {
+                // Would overflow: send what is waiting and start a new batch
+                full = take();
+            }
+            pending.add(new Pending<>(request, result));
+            pendingWeight += weight;
+            if (pending.size() >= maxItems || pendingWeight >= maxWeight) {
+                ready = take();
+            } else if (deadline == null) {
+                deadline = timer.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        send(full);
+        send(ready);
+        return result;
+    }
+
+    /**
+     * Sends the current batch without waiting for the window to end.
+     */
+    public void flush() {
+        final List<Pending<I, O>> batch;
+        synchronized (this) {
+            batch = take();
+        }
+        send(batch);
+    }
+
+    /** Takes the current batch; must hold the lock. */
+    private List<Pending<I, O>> take() {
+        final List<Pending<I, O>> batch = pending;
+        pending = new ArrayList<>();
+        pendingWeight = 0;
+        if (deadline != null) {
+            deadline.cancel(false);
+            deadline = null;
+        }
+        return batch;
+    }
+
+    private void send(final List<Pending<I, O>> batch) {
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+        batches.incrementAndGet();
+        items.addAndGet(batch.size());
+        final CompletableFuture<List<O>> answer;
+        try {
+            answer = call.apply(batch.stream().map(Pending::request).toList());
+        } catch (final RuntimeException e) {
+            batch.forEach(p -> p.result().completeExceptionally(e));
+            return;
+        }
+        answer.whenComplete((results, error) -> {
+            if (error != null) {
+                batch.forEach(p -> p.result().completeExceptionally(error));
+            } else if (results.size() != batch.size()) {
+                batch.forEach(p -> p.result().completeExceptionally(new IllegalStateException(
+                    "Batch answered " + results.size() + " results for " + batch.size() + " requests")));
+            } else {
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).result().complete(results.get(i));
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the number of batches sent.
+     *
+     * @return batch count
+     */
+    public long batches() {
+        return batches.get();
+    }
+
+    /**
+     * Returns the number of requests sent in batches.
+     *
+     * @return request count
+     */
+    public long items() {
+        return items.get();
+    }
+
+    /**
+     * Publishes batch and request counts to {@link Metrics}.
+     *
+     * @param prefix metric name prefix, e.g. {@code bedrock.batch}
+     */
+    public void registerMetrics(final String prefix) {
+        Metrics.gauge(prefix + ".batches", this::batches);
+        Metrics.gauge(prefix + ".items", this::items);
+    }
+}
@@ -0,0 +1,201 @@
+package com.hulft.mcp;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Chooses which parts of a long document go into a prompt. Instead of the first
+ * characters, which are often letterhead and boilerplate, lines are scored by the
+ * density of keywords taken from the schema field names the prompt is about (document
+ * type names count for less, as words like "order" also appear in letterhead), and the
+ * best lines, each with the line after it (where a label's
+ * value often sits), are kept within a character budget. Budget left over is filled
+ * from the start of the document, and the kept lines stay in document order. Text that
+ * already fits is returned unchanged.
+ */
+public class PromptPacker {
+    /** Longer lines (such as OCR text without line breaks) are scored in pieces of this size */
+    private static final int SEGMENT_CHARS = 200;
+    /** Extra score for a matching line with digits, which usually carries a value */
+    private static final double DIGIT_BONUS = 0.1;
+    /** Weight of a word that appears only in a document type name, not in any field name */
+    private static final double TYPE_NAME_WEIGHT = 0.25;
+
+    /** Keyword weights, 1 for words of field names */
+    private final Map<String, Double> keywords = new HashMap<>();
+
+    /**
+     * Creates a packer for the given names.
+     *
+     * @param names schema field names, such as {@code invoice_number}
+     */
+    public PromptPacker(final Collection<String> names) {
+        this(names, List.of());
+    }
+
+    private PromptPacker(final Collection<String> fieldNames, final Collection<String> typeNames) {
+        addKeywords(typeNames, TYPE_NAME_WEIGHT);
+        addKeywords(fieldNames, 1);
+    }
+
+    private void addKeywords(final Collection<String> names, final double weight) {
+        for (final String name : names) {
+            for (final String word : words(name)) {
+                if (word.length() > 1) {
+                    keywords.put(word, weight);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a packer for the fields of the given document types' schemas and, with
+     * less weight, for the type names themselves.
+     *
+     * @param schemaManager source of the schemas
+     * @param docTypes document types
+     * @return the packer
+     */
+    public static PromptPacker forTypes(final SchemaManager schemaManager, final Collection<String> docTypes) {
+        final List<String> fieldNames = new ArrayList<>();
+        for (final String docType : docTypes) {
+            fieldNames.addAll(schemaManager.getFieldNames(docType));
+        }
+        return new PromptPacker(fieldNames, docTypes);
+    }
+
+    /**
+     * Packers for sets of document types, built once per set and rebuilt when one of
+     * their schemas changes.
+     */
+    public static class Cache {
+        private final SchemaManager schemaManager;
+        private final Map<List<String>, Cached> packers = new ConcurrentHashMap<>();
+
+        /** A packer with the schemas it was built from. */
+        private record Cached(List<String> schemas, PromptPacker packer) {
+        }
+
+        /**
+         * Creates a cache over the given schemas.
+         *
+         * @param schemaManager source of the schemas, including custom ones
+         */
+        public Cache(final SchemaManager schemaManager) {
+            this.schemaManager = schemaManager;
+        }
+
+        /**
+         * Returns the packer for a set of document types, as {@link PromptPacker#forTypes}.
+         *
+         * @param docTypes document types
+         * @return the packer
+         */
+        public PromptPacker forTypes(final List<String> docTypes) {
+            final List<String> schemas = docTypes.stream().map(schemaManager::getSchema).toList();
+            final Cached cached = packers.get(docTypes);
+            if (cached != null && cached.schemas().equals(schemas)) {
+                return cached.packer();
+            }
+            final PromptPacker packer = PromptPacker.forTypes(schemaManager, docTypes);
+            packers.put(List.copyOf(docTypes), new Cached(schemas, packer));
+            return packer;
+        }
+    }
+
+    /**
+     * Returns the most relevant text within a budget.
+     *
+     * @param text document text
+     * @param maxChars budget in characters, as a proxy for tokens
+     * @return the text if it fits, otherwise the selected lines joined by newlines
+     */
+    public String pack(final String text, final int maxChars) {
+        if (text.length() <= maxChars) {
+            return text;
+        }
+        final List<String> segments = segments(text);
+        final double[] scores = segments.stream().mapToDouble(this::score).toArray();
+        final boolean[] kept = new boolean[segments.size()];
+        int used = 0;
+        final int[] byScore = IntStream.range(0, segments.size()).boxed()
+            .sorted(Comparator.<Integer>comparingDouble(i -> -scores[i]).thenComparingInt(i -> i))
+            .mapToInt(Integer::intValue).toArray();
+        for (final int i : byScore) {
+            if (scores[i] <= 0) {
+                break;
+            }
+            for (int j = i; j <= Math.min(i + 1, segments.size() - 1); j++) {
+                used += keep(segments, kept, j, used, maxChars);
+            }
+        }
+        for (int j = 0; j < segments.size(); j++) {
+            used += keep(segments, kept, j, used, maxChars);
+        }
+        final StringBuilder packed = new StringBuilder(used);
+        for (int j = 0; j < segments.size(); j++) {
+            if (kept[j]) {
+                if (packed.length() > 0) {
+                    packed.append('\n');
+                }
+                packed.append(segments.get(j));
+            }
+        }
+        return packed.toString();
+    }
+
+    /** Keeps a segment if it fits, returning the characters it adds with its newline. */
+    private static int keep(final List<String> segments, final boolean[] kept, final int index, final int used,
+            final int maxChars) {
+        final int cost = segments.get(index).length() + 1;
+        if (kept[index] || used + cost > maxChars + 1) {
+            return 0;
+        }
+        kept[index] = true;
+        return cost;
+    }
+
+    /** Scores a line by the weighted share of its words that are keywords. */
+    private double score(final String line) {
+        final List<String> words = words(line);
+        if (words.isEmpty()) {
+            return 0;
+        }
+        final double hits = words.stream().mapToDouble(word -> keywords.getOrDefault(word, 0.0)).sum();
+        if (hits == 0) {
+            return 0;
+        }
+        final boolean digits = line.chars().anyMatch(Character::isDigit);
+        return hits / words.size() + (digits ? DIGIT_BONUS : 0);
+    }
+
+    /** Splits text into non-blank lines, cutting long lines into segments. */
+    private static List<String> segments(final String text) {
+        final List<String> segments = new ArrayList<>();
+        for (final String line : text.split("\\R")) {
+            final String stripped = line.strip();
+            for (int start = 0; start < stripped.length(); start += SEGMENT_CHARS) {
+                segments.add(stripped.substring(start, Math.min(stripped.length(), start + SEGMENT_CHARS)));
+            }
+        }
+        return segments;
+    }
+
+    /** Lower-cases and splits on anything but letters and digits, dropping a plural s. */
+    private static List<String> words(final String text) {
+        final List<String> words = new ArrayList<>();
+        for (final String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word.length() > 3 && word.endsWith("s") ? word.substring(0, word.length() - 1) : word);
+            }
+        }
+        return words;
+    }
+}
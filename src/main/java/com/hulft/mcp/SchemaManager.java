@@ -9,6 +9,10 @@ import java.util.concurrent.ConcurrentHashMap;
  * with built-in schemas for common document types.
  */
 public class SchemaManager {
+    /** Document types with a built-in schema */
+    public static final java.util.List<String> BUILT_IN_TYPES = java.util.List.of(
+        "SCHEDULE_PRODUCTION", "INVOICE_PRODUCTION", "PURCHASE_ORDER", "CUSTOMS_DECLARATION");
+
     private final Map<String, String> customSchemas = new ConcurrentHashMap<>();
     
     /**
@@ -54,6 +58,57 @@ public class SchemaManager {
         return new ConcurrentHashMap<>(customSchemas);
     }
     
+    /**
+     * Returns every document type with a schema: the built-in types, then custom types
+     * in name order.
+     *
+     * @return document types
+     */
+    public java.util.List<String> getDocumentTypes() {
+        final java.util.Set<String> types = new java.util.LinkedHashSet<>(BUILT_IN_TYPES);
+        types.addAll(new java.util.TreeSet<>(customSchemas.keySet()));
+        return java.util.List.copyOf(types);
+    }
+    
+    /**
+     * Returns the top-level fields of a document type's schema, in schema order.
+     *
+     * @param docType the document type identifier
+     * @return field names, empty if the schema is missing or not valid JSON
+     */
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    public java.util.List<String> getFieldNames(final String docType) {
+        try {
+            final com.google.gson.JsonElement schema = com.google.gson.JsonParser.parseString(getSchema(docType));
+            return schema.isJsonObject() ? java.util.List.copyOf(schema.getAsJsonObject().keySet()) : java.util.List.of();
+        } catch (final Exception e) {
+            return java.util.List.of();
+        }
+    }
+
+    /**
+     * Returns the top-level scalar fields of a document type's schema, in schema order.
+     * Array and object fields (such as line items) are excluded.
+     *
+     * @param docType the document type identifier
+     * @return scalar field names, empty if the schema is missing or not valid JSON
+     */
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    public java.util.List<String> getScalarFields(final String docType) {
+        try {
+            final com.google.gson.JsonElement schema = com.google.gson.JsonParser.parseString(getSchema(docType));
+            if (!schema.isJsonObject()) {
+                return java.util.List.of();
+            }
+            return schema.getAsJsonObject().entrySet().stream()
+                .filter(e -> e.getValue().isJsonPrimitive())
+                .map(Map.Entry::getKey)
+                .toList();
+        } catch (final Exception e) {
+            return java.util.List.of();
+        }
+    }
+
     private String getBuiltInSchema(final String docType) {
         return switch (docType) {
             case "INVOICE_PRODUCTION" -> """
@@ -0,0 +1,575 @@
+package com.hulft.mcp;
+
+import com.google.gson.Gson;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Embedded full-text index over extracted document text.
+ * Maps each term to a posting list of documents with term positions, supporting
+ * BM25-ranked conjunctive queries, quoted phrase matching, and filters on
+ * classification and date. Documents are appended incrementally as uploads are
+ * saved and persisted to an append-only log that is replayed on load.
+ *
+ * <p>Once {@code hulft.search.compactBytes} (64 MB) of text has been appended, the
+ * postings of the live documents are written to a binary snapshot beside the log and
+ * the log starts over, so re-indexed documents stop taking space and a restart reads
+ * the snapshot and tokenizes only the documents added since. The snapshot and the log
+ * carry a generation number, so a log left over from before a crash mid-compaction
+ * is recognised as already covered by the snapshot.
+ *
+ * <p>Text is tokenized into lower-cased letter/digit runs; CJK characters are
+ * indexed one per token so phrase queries match Japanese text as well.
+ */
+@Slf4j
+public class SearchIndex {
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final Pattern PHRASE = Pattern.compile("\"([^\"]+)\"");
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final String GENERATION = "generation";
+
+    @SuppressWarnings("PMD.FieldNamingConventions") // Gson instance, not primitive constant
+    private static final Gson gson = new Gson();
+
+    private final Path file;
+    private final Path snapshot;
+    private final long compactBytes;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Doc> docs = new ArrayList<>();
+    private final Map<String, Integer> docsByJob = new HashMap<>();
+    private final Map<String, Postings> postings = new HashMap<>();
+    private long totalLength;
+    private int liveDocs;
+    private BufferedWriter writer;
+    private volatile boolean loaded;
+    /** Generation of the snapshot and of the log that continues it */
+    private long generation;
+    /** Characters appended to the log since the last compaction */
+    private long appended;
+
+    public SearchIndex(final Path file) {
+        this(file, Long.getLong("hulft.search.compactBytes", 64L * 1024 * 1024));
+    }
+
+    /**
+     * Creates an index that compacts its log as it grows.
+     *
+     * @param file the log; the snapshot is kept beside it
+     * @param compactBytes characters appended to the log that trigger a compaction
+     */
+    public SearchIndex(final Path file, final long compactBytes) {
+        this.file = file;
+        this.snapshot = file.resolveSibling(file.getFileName() + ".snapshot");
+        this.compactBytes = compactBytes;
+    }
+
+    /**
+     * A ranked search hit.
+     */
+    public static class Hit {
+        /** Job identifier */
+        public final String jobId;
+        /** Job date as {@code yyyy-MM-dd} */
+        public final String date;
+        /** Document classification */
+        public final String type;
+        /** BM25 score */
+        public final double score;
+
+        Hit(final String jobId, final String date, final String type, final double score) {
+            this.jobId = jobId;
+            this.date = date;
+            this.type = type;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Search results.
+     */
+    public static class Result {
+        /** Top hits, best first */
+        public final List<Hit> hits;
+        /** Number of matching documents before the limit was applied */
+        public final int total;
+
+        Result(final List<Hit> hits, final int total) {
+            this.hits = hits;
+            this.total = total;
+        }
+    }
+
+    private static class Doc {
+        final String jobId;
+        final String date;
+        final String type;
+        final int length;
+        boolean deleted;
+
+        Doc(final String jobId, final String date, final String type, final int length) {
+            this.jobId = jobId;
+            this.date = date;
+            this.type = type;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Posting list of one term: ascending document numbers, each with its
+     * positions stored contiguously in a shared array.
+     */
+    private static class Postings {
+        int[] docs = new int[4];
+        int[] positionStart = new int[5];
+        int[] positions = new int[8];
+        int size;
+
+        void add(final int doc, final List<Integer> termPositions) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, docs.length * 2);
+                positionStart = Arrays.copyOf(positionStart, docs.length + 1);
+            }
+            final int start = positionStart[size];
+            if (start + termPositions.size() > positions.length) {
+                positions = Arrays.copyOf(positions, Math.max(positions.length * 2, start + termPositions.size()));
+            }
+            for (int i = 0; i < termPositions.size(); i++) {
+                positions[start + i] = termPositions.get(i);
+            }
+            docs[size] = doc;
+            size++;
+            positionStart[size] = start + termPositions.size();
+        }
+
+        int find(final int doc) {
+            return Arrays.binarySearch(docs, 0, size, doc);
+        }
+
+        int frequency(final int slot) {
+            return positionStart[slot + 1] - positionStart[slot];
+        }
+
+        boolean hasPosition(final int slot, final int position) {
+            return Arrays.binarySearch(positions, positionStart[slot], positionStart[slot + 1], position) >= 0;
+        }
+    }
+
+    /**
+     * Loads the index from its snapshot, if any, and replays the log written since.
+     *
+     * @throws IOException if the snapshot or the log cannot be read
+     */
+    public void load() throws IOException {
+        if (!loaded) {
+            loadOnce();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized void loadOnce() throws IOException {
+        if (loaded) {
+            return;
+        }
+        if (Files.exists(snapshot)) {
+            readSnapshot();
+        }
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line = reader.readLine();
+                // A log without a header predates snapshots and belongs to generation 0
+                if (line != null && gson.fromJson(line, Map.class) instanceof Map<?, ?> header
+                        && header.get(GENERATION) instanceof Number logGeneration) {
+                    line = logGeneration.longValue() == generation ? reader.readLine() : null;
+                } else if (generation != 0) {
+                    line = null;
+                }
+                while (line != null) {
+                    final Map<String, String> doc = gson.fromJson(line, Map.class);
+                    if (doc != null) {
+                        addToMemory(doc.get("jobId"), doc.get("date"), doc.get("type"), doc.get("text"));
+                    }
+                    line = reader.readLine();
+                }
+            }
+        }
+        loaded = true;
+        if (log.isInfoEnabled()) {
+            log.info("Search index loaded: {} documents, {} terms", liveDocs, postings.size());
+        }
+    }
+
+    /**
+     * Indexes (or re-indexes) the text of a job.
+     *
+     * @param jobId the job identifier
+     * @param date job date as {@code yyyy-MM-dd}
+     * @param type document classification
+     * @param text extracted document text
+     */
+    public void add(final String jobId, final String date, final String type, final String text) {
+        addToMemory(jobId, date, type, text);
+        synchronized (this) {
+            try {
+                if (writer == null) {
+                    Files.createDirectories(file.toAbsolutePath().getParent());
+                    writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                final String line = gson.toJson(Map.of("jobId", jobId, "date", date, "type", type, "text", text == null ? "" : text));
+                writer.write(line);
+                writer.write('\n');
+                writer.flush();
+                appended += line.length() + 1;
+            } catch (final IOException e) {
+                if (log.isErrorEnabled()) {
+                    log.error("Error appending to search index {}", file, e);
+                }
+            }
+            if (appended >= compactBytes) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * Writes the live documents' postings to the snapshot and starts a new log. Holding
+     * the monitor keeps other appends out of the log while it is replaced; a document
+     * indexed in memory meanwhile may also land in the new log, and replaying it only
+     * indexes it again. Must hold the monitor.
+     */
+    private void compact() {
+        appended = 0;
+        try {
+            writeSnapshot(generation + 1);
+            generation++;
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+            final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(tmp, gson.toJson(Map.of(GENERATION, generation)) + "\n", StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (log.isInfoEnabled()) {
+                log.info("Search index compacted into a snapshot of {} documents", size());
+            }
+        } catch (final IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Error compacting search index {}, appending to the log as before: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    /** Writes the live documents, renumbered without the deleted ones, and their postings. */
+    private void writeSnapshot(final long nextGeneration) throws IOException {
+        final Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            final int[] renumbered = new int[docs.size()];
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(nextGeneration);
+            out.writeInt(liveDocs);
+            int live = 0;
+            for (int i = 0; i < docs.size(); i++) {
+                final Doc doc = docs.get(i);
+                renumbered[i] = doc.deleted ? -1 : live++;
+                if (!doc.deleted) {
+                    out.writeUTF(doc.jobId);
+                    writeNullable(out, doc.date);
+                    writeNullable(out, doc.type);
+                    out.writeInt(doc.length);
+                }
+            }
+            out.writeInt(postings.size());
+            for (final Map.Entry<String, Postings> entry : postings.entrySet()) {
+                final Postings list = entry.getValue();
+                int count = 0;
+                for (int slot = 0; slot < list.size; slot++) {
+                    count += renumbered[list.docs[slot]] >= 0 ? 1 : 0;
+                }
+                out.writeUTF(entry.getKey());
+                out.writeInt(count);
+                for (int slot = 0; slot < list.size; slot++) {
+                    if (renumbered[list.docs[slot]] >= 0) {
+                        out.writeInt(renumbered[list.docs[slot]]);
+                        out.writeInt(list.frequency(slot));
+                        for (int i = list.positionStart[slot]; i < list.positionStart[slot + 1]; i++) {
+                            out.writeInt(list.positions[i]);
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void readSnapshot() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+            if (in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported search index snapshot " + snapshot);
+            }
+            generation = in.readLong();
+            final int docCount = in.readInt();
+            for (int i = 0; i < docCount; i++) {
+                final Doc doc = new Doc(in.readUTF(), readNullable(in), readNullable(in), in.readInt());
+                docsByJob.put(doc.jobId, docs.size());
+                docs.add(doc);
+                totalLength += doc.length;
+                liveDocs++;
+            }
+            final int termCount = in.readInt();
+            for (int t = 0; t < termCount; t++) {
+                final String term = in.readUTF();
+                final int count = in.readInt();
+                final Postings list = new Postings();
+                for (int slot = 0; slot < count; slot++) {
+                    final int doc = in.readInt();
+                    final List<Integer> positions = new ArrayList<>();
+                    for (int i = in.readInt(); i > 0; i--) {
+                        positions.add(in.readInt());
+                    }
+                    list.add(doc, positions);
+                }
+                if (count > 0) {
+                    postings.put(term, list);
+                }
+            }
+        }
+    }
+
+    private static void writeNullable(final DataOutputStream out, final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private void addToMemory(final String jobId, final String date, final String type, final String text) {
+        final List<String> tokens = tokenize(text);
+        final Map<String, List<Integer>> termPositions = new HashMap<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            termPositions.computeIfAbsent(tokens.get(i), t -> new ArrayList<>()).add(i);
+        }
+        lock.writeLock().lock();
+        try {
+            final Integer previous = docsByJob.get(jobId);
+            if (previous != null && !docs.get(previous).deleted) {
+                docs.get(previous).deleted = true;
+                totalLength -= docs.get(previous).length;
+                liveDocs--;
+            }
+            final int docNumber = docs.size();
+            docs.add(new Doc(jobId, date, type, tokens.size()));
+            docsByJob.put(jobId, docNumber);
+            totalLength += tokens.size();
+            liveDocs++;
+            termPositions.forEach((term, positions) ->
+                postings.computeIfAbsent(term, t -> new Postings()).add(docNumber, positions));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a ranked query. Every bare term and every quoted phrase must match;
+     * results are ordered by BM25 score over all query terms.
+     *
+     * @param query query text, e.g. {@code acme "total amount"}
+     * @param type classification filter, or null
+     * @param fromDate first date ({@code yyyy-MM-dd}), inclusive, or null
+     * @param toDate last date ({@code yyyy-MM-dd}), inclusive, or null
+     * @param limit maximum hits to return
+     * @return ranked results
+     */
+    @SuppressWarnings({"PMD.CognitiveComplexity", "PMD.NPathComplexity"}) // Query evaluation
+    public Result search(final String query, final String type, final String fromDate, final String toDate, final int limit) {
+        if (query == null) {
+            return new Result(List.of(), 0);
+        }
+        final List<List<String>> phrases = new ArrayList<>();
+        final Matcher matcher = PHRASE.matcher(query);
+        while (matcher.find()) {
+            final List<String> phrase = tokenize(matcher.group(1));
+            if (!phrase.isEmpty()) {
+                phrases.add(phrase);
+            }
+        }
+        final List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (terms.isEmpty()) {
+            return new Result(List.of(), 0);
+        }
+
+        lock.readLock().lock();
+        try {
+            final List<Postings> lists = new ArrayList<>();
+            for (final String term : terms) {
+                final Postings list = postings.get(term);
+                if (list == null) {
+                    return new Result(List.of(), 0);
+                }
+                lists.add(list);
+            }
+            // Drive the intersection from the rarest term
+            final Postings rarest = lists.stream().min(Comparator.comparingInt(p -> p.size)).orElseThrow();
+            final double avgLength = liveDocs == 0 ? 1 : (double) totalLength / liveDocs;
+            final PriorityQueue<Hit> top = new PriorityQueue<>(Comparator.comparingDouble(h -> h.score));
+            int total = 0;
+
+            for (int i = 0; i < rarest.size; i++) {
+                final int docNumber = rarest.docs[i];
+                final Doc doc = docs.get(docNumber);
+                if (doc.deleted || type != null && !type.equals(doc.type)
+                        || fromDate != null && doc.date.compareTo(fromDate) < 0
+                        || toDate != null && doc.date.compareTo(toDate) > 0) {
+                    continue;
+                }
+                double score = 0;
+                boolean matches = true;
+                for (int t = 0; t < lists.size() && matches; t++) {
+                    final Postings list = lists.get(t);
+                    final int slot = list.find(docNumber);
+                    if (slot < 0) {
+                        matches = false;
+                    } else {
+                        final int tf = list.frequency(slot);
+                        final double idf = Math.log(1 + (liveDocs - list.size + 0.5) / (list.size + 0.5));
+                        score += idf * tf * (K1 + 1) / (tf + K1 * (1 - B + B * doc.length / avgLength));
+                    }
+                }
+                for (int p = 0; p < phrases.size() && matches; p++) {
+                    matches = containsPhrase(phrases.get(p), docNumber);
+                }
+                if (!matches) {
+                    continue;
+                }
+                total++;
+                top.add(new Hit(doc.jobId, doc.date, doc.type, score));
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+            final List<Hit> hits = new ArrayList<>(top);
+            hits.sort(Comparator.comparingDouble((Hit h) -> h.score).reversed());
+            return new Result(hits, total);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean containsPhrase(final List<String> phrase, final int docNumber) {
+        final Postings first = postings.get(phrase.get(0));
+        final int firstSlot = first.find(docNumber);
+        for (int i = first.positionStart[firstSlot]; i < first.positionStart[firstSlot + 1]; i++) {
+            final int start = first.positions[i];
+            boolean found = true;
+            for (int k = 1; k < phrase.size() && found; k++) {
+                final Postings next = postings.get(phrase.get(k));
+                final int slot = next.find(docNumber);
+                found = slot >= 0 && next.hasPosition(slot, start + k);
+            }
+            if (found) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of searchable documents.
+     *
+     * @return document count
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveDocs;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Splits text into lower-cased index terms.
+     *
+     * @param text the text
+     * @return terms in order of appearance
+     */
+    static List<String> tokenize(final String text) {
+        final List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        final StringBuilder current = new StringBuilder();
+        text.codePoints().forEach(cp -> {
+            if (isIdeographic(cp)) {
+                flush(current, tokens);
+                tokens.add(new String(Character.toChars(cp)));
+            } else if (Character.isLetterOrDigit(cp)) {
+                current.appendCodePoint(cp);
+            } else {
+                flush(current, tokens);
+            }
+        });
+        flush(current, tokens);
+        return tokens;
+    }
+
+    private static boolean isIdeographic(final int cp) {
+        final Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+            || script == Character.UnicodeScript.HIRAGANA
+            || script == Character.UnicodeScript.KATAKANA;
+    }
+
+    private static void flush(final StringBuilder current, final List<String> tokens) {
+        if (current.length() > 0) {
+            tokens.add(current.toString().toLowerCase(Locale.ROOT));
+            current.setLength(0);
+        }
+    }
+
+    /**
+     * Closes the index log.
+     */
+    public synchronized void close() {
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        } catch (final IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Error closing search index: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.hulft.mcp;
+
+/**
+ * Thrown when work is refused because a bounded queue is full. Callers should
+ * surface it to the client as a retryable error rather than a failure.
+ */
+public class ServerBusyException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMillis;
+
+    public ServerBusyException(final String message, final long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Returns how long the client should wait before retrying.
+     *
+     * @return suggested delay in milliseconds
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,113 @@
+package com.hulft.mcp;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.UUID;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Issues and verifies self-validating session IDs, so any node holding the shared
+ * secret can accept a session without a session table, and sessions survive restarts.
+ * A token is {@code v1.<id>.<expiresAt>.<signature>}, where the signature is an
+ * HMAC-SHA256 of the rest, base64url-encoded; {@code expiresAt} is in epoch seconds.
+ */
+@Slf4j
+public class SessionTokens {
+    private static final String VERSION = "v1";
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    private final long ttlSeconds;
+
+    /**
+     * Creates a token issuer.
+     *
+     * @param secret shared signing secret, at least 32 bytes
+     * @param ttlSeconds how long issued sessions are valid
+     */
+    public SessionTokens(final byte[] secret, final long ttlSeconds) {
+        if (secret.length < 32) {
+            throw new IllegalArgumentException("Session secret must be at least 32 bytes");
+        }
+        this.key = new SecretKeySpec(secret.clone(), ALGORITHM);
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    /**
+     * Creates a token issuer from the {@code hulft.session.secret} system property or the
+     * {@code HULFT_SESSION_SECRET} environment variable, valid for
+     * {@code hulft.session.ttlSeconds} (one day). Without a secret, a random one is
+     * generated, which only this process can verify.
+     *
+     * @return the token issuer
+     */
+    public static SessionTokens fromConfig() {
+        final String configured = System.getProperty("hulft.session.secret", System.getenv("HULFT_SESSION_SECRET"));
+        final byte[] secret;
+        if (configured == null || configured.isBlank()) {
+            if (log.isWarnEnabled()) {
+                log.warn("No session secret configured; sessions are only valid on this node until it restarts");
+            }
+            secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+        } else {
+            secret = configured.getBytes(StandardCharsets.UTF_8);
+        }
+        return new SessionTokens(secret, Long.getLong("hulft.session.ttlSeconds", 86_400L));
+    }
+
+    /**
+     * Issues a new session token.
+     *
+     * @return the signed token
+     */
+    public String issue() {
+        final String id = UUID.randomUUID().toString().replace("-", "");
+        final long expiresAt = System.currentTimeMillis() / 1000 + ttlSeconds;
+        final String unsigned = VERSION + "." + id + "." + expiresAt;
+        return unsigned + "." + sign(unsigned);
+    }
+
+    /**
+     * Verifies a session token.
+     *
+     * @param token the token
+     * @return the session's unique ID, or null if the token is malformed, forged or expired
+     */
+    public String verify(final String token) {
+        if (token == null) {
+            return null;
+        }
+        final String[] parts = token.split("\\.");
+        if (parts.length != 4 || !VERSION.equals(parts[0])) {
+            return null;
+        }
+        final String unsigned = parts[0] + "." + parts[1] + "." + parts[2];
+        final byte[] expected = sign(unsigned).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(expected, parts[3].getBytes(StandardCharsets.US_ASCII))) {
+            return null;
+        }
+        try {
+            return Long.parseLong(parts[2]) >= System.currentTimeMillis() / 1000 ? parts[1] : null;
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private String sign(final String unsigned) {
+        try {
+            // Mac instances are not thread-safe and cheap to create
+            final Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(mac.doFinal(unsigned.getBytes(StandardCharsets.UTF_8)));
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 unavailable", e);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.hulft.mcp;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Versioned outputs of the upload pipeline stages, kept in a job's {@code stages/}
+ * folder as {@code <stage>.json}. Each artifact records the stage version and a
+ * fingerprint of its input (the file bytes, the text, or the text plus the schema), and
+ * is only reused while both still match. Resuming or reprocessing a job therefore
+ * recomputes only the stages whose artifact is missing, from an older stage version,
+ * or built from different input; changing an upstream result changes the fingerprints
+ * downstream, so dependent stages are recomputed too.
+ */
+@Slf4j
+public class StageArtifacts {
+    /** Folder of stage artifacts inside a job folder */
+    public static final String DIR = "stages";
+    private static final Type ARTIFACT_TYPE = new TypeToken<Map<String, Object>>() { }.getType();
+
+    @SuppressWarnings("PMD.FieldNamingConventions") // Gson instance, not primitive constant
+    private static final Gson gson = new Gson();
+
+    /**
+     * Pipeline stages in execution order. Bump a version when the stage's code changes
+     * in a way that makes old outputs stale.
+     */
+    public enum Stage {
+        /** Detected MIME type */
+        DETECT(1),
+        /** Textract OCR text and confidence */
+        OCR(1),
+        /** Tabula table extraction */
+        TABLES(1),
+        /** Comprehend/Bedrock classification and consensus */
+        CLASSIFICATION(1),
+        /** Bedrock field extraction */
+        FIELDS(1);
+
+        final int version;
+
+        Stage(final int version) {
+            this.version = version;
+        }
+
+        String fileName() {
+            return name().toLowerCase(Locale.ROOT) + ".json";
+        }
+    }
+
+    /**
+     * Returns a stage's output if it was stored by the current stage version from the
+     * same input.
+     *
+     * @param jobPath the job folder
+     * @param stage the stage
+     * @param input fingerprint of the stage input
+     * @return the stored output, or null if it must be recomputed
+     */
+    public Object load(final Path jobPath, final Stage stage, final String input) {
+        final Path file = jobPath.resolve(DIR).resolve(stage.fileName());
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            final Map<String, Object> artifact = gson.fromJson(Files.readString(file, StandardCharsets.UTF_8), ARTIFACT_TYPE);
+            final boolean current = artifact != null
+                && artifact.get("version") instanceof Number version && version.intValue() == stage.version
+                && input.equals(artifact.get("input"));
+            return current ? artifact.get("data") : null;
+        } catch (final IOException | JsonSyntaxException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Ignoring unreadable {} artifact in {}: {}", stage, jobPath, e.getMessage());
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Stores a stage's output, synced and atomically replaced. Failures are logged,
+     * since a missing artifact only costs recomputing the stage.
+     *
+     * @param jobPath the job folder
+     * @param stage the stage
+     * @param input fingerprint of the stage input
+     * @param data the stage output, serializable as JSON
+     */
+    public void save(final Path jobPath, final Stage stage, final String input, final Object data) {
+        final Map<String, Object> artifact = new LinkedHashMap<>();
+        artifact.put("stage", stage.name());
+        artifact.put("version", stage.version);
+        artifact.put("input", input);
+        artifact.put("createdAt", Instant.now().toString());
+        artifact.put("data", data);
+        final Path dir = jobPath.resolve(DIR);
+        final Path file = dir.resolve(stage.fileName());
+        final Path tmp = dir.resolve(stage.fileName() + ".tmp");
+        try {
+            Files.createDirectories(dir);
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                final ByteBuffer buffer = ByteBuffer.wrap(gson.toJson(artifact).getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                out.force(false);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Error saving {} artifact in {}: {}", stage, jobPath, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Deletes the artifacts of a stage and every later stage, forcing them to be recomputed.
+     *
+     * @param jobPath the job folder
+     * @param from the first stage to invalidate
+     * @throws IOException if an artifact cannot be deleted
+     */
+    public void invalidateFrom(final Path jobPath, final Stage from) throws IOException {
+        for (final Stage stage : Stage.values()) {
+            if (stage.ordinal() >= from.ordinal()) {
+                Files.deleteIfExists(jobPath.resolve(DIR).resolve(stage.fileName()));
+            }
+        }
+    }
+
+    /**
+     * Fingerprints stage input.
+     *
+     * @param bytes the input bytes
+     * @return hex SHA-256 digest
+     */
+    public static String fingerprint(final byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    /**
+     * Fingerprints stage input made of several values; null values are allowed.
+     *
+     * @param parts the input values
+     * @return hex SHA-256 digest
+     */
+    public static String fingerprint(final String... parts) {
+        final StringBuilder joined = new StringBuilder();
+        for (final String part : parts) {
+            joined.append(part == null ? "" : part).append('\0');
+        }
+        return fingerprint(joined.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,179 @@
+package com.hulft.mcp;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bulkhead executors for the document pipeline, one per stage.
+ * CPU-bound parsing (POI, PDFBox, Tabula, markdown) runs on a pool sized to the
+ * available cores, while each AWS service gets its own pool whose size is its
+ * concurrency limit, so threads waiting on Bedrock can never starve parsing or
+ * Textract and the reverse. Every stage hands off through a bounded queue. When the
+ * parse queue is full the submitting thread parses the task itself, which slows the
+ * upstream stage down instead of buffering without limit. When an AWS stage's queue
+ * is full the submitter waits a bounded time for space and then gets a
+ * {@link ServerBusyException}, so slow remote calls never run on a parse worker or a
+ * request thread outside their own bulkhead.
+ * In virtual-thread mode the AWS stages run on virtual threads, so their size is
+ * purely a concurrency limit and waiting calls cost no platform threads.
+ */
+@Slf4j
+public class StagePools {
+    /**
+     * Pipeline stages with their own executor.
+     */
+    public enum Stage {
+        /** CPU-bound parsing and conversion */
+        PARSE,
+        /** Textract OCR calls */
+        TEXTRACT,
+        /** Comprehend calls */
+        COMPREHEND,
+        /** Bedrock calls */
+        BEDROCK
+    }
+
+    private final Map<Stage, ThreadPoolExecutor> pools = new EnumMap<>(Stage.class);
+
+    /**
+     * Creates stage pools sized from system properties: {@code hulft.stage.<stage>.threads}
+     * (cores for parse, 8 for each AWS service or 64 in virtual-thread mode),
+     * {@code hulft.stage.queueCapacity} (64) and {@code hulft.stage.queueWaitMillis} (1000).
+     */
+    public StagePools() {
+        this(defaultThreads(), Integer.getInteger("hulft.stage.queueCapacity", 64),
+            Long.getLong("hulft.stage.queueWaitMillis", 1000L));
+    }
+
+    /**
+     * Creates stage pools that wait up to a second for space in a full AWS stage queue.
+     *
+     * @param threads threads per stage; stages not listed get one thread
+     * @param queueCapacity tasks that may wait for each stage
+     */
+    public StagePools(final Map<Stage, Integer> threads, final int queueCapacity) {
+        this(threads, queueCapacity, 1000L);
+    }
+
+    /**
+     * Creates stage pools.
+     *
+     * @param threads threads per stage; stages not listed get one thread
+     * @param queueCapacity tasks that may wait for each stage
+     * @param queueWaitMillis how long a submitter waits for space in a full AWS stage queue
+     */
+    public StagePools(final Map<Stage, Integer> threads, final int queueCapacity, final long queueWaitMillis) {
+        for (final Stage stage : Stage.values()) {
+            final int size = threads.getOrDefault(stage, 1);
+            final String name = "stage-" + stage.name().toLowerCase(Locale.ROOT) + "-";
+            // Parsing is CPU-bound and stays on platform threads
+            final ThreadFactory factory = stage == Stage.PARSE ? VirtualThreads.platform(name) : VirtualThreads.factory(name);
+            final RejectedExecutionHandler whenFull = stage == Stage.PARSE
+                ? new ThreadPoolExecutor.CallerRunsPolicy()
+                : waitThenRefuse(stage, queueWaitMillis);
+            pools.put(stage, new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), factory, whenFull));
+        }
+    }
+
+    /** Waits for queue space, then refuses the task as busy rather than running it on the caller. */
+    private static RejectedExecutionHandler waitThenRefuse(final Stage stage, final long waitMillis) {
+        return (task, pool) -> {
+            if (pool.isShutdown()) {
+                throw new RejectedExecutionException(stage + " stage is shut down");
+            }
+            try {
+                if (pool.getQueue().offer(task, waitMillis, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new ServerBusyException(stage + " stage is saturated, try again later", waitMillis);
+        };
+    }
+
+    private static Map<Stage, Integer> defaultThreads() {
+        final int io = VirtualThreads.enabled() ? 64 : 8;
+        final Map<Stage, Integer> threads = new EnumMap<>(Stage.class);
+        threads.put(Stage.PARSE, Integer.getInteger("hulft.stage.parse.threads", Runtime.getRuntime().availableProcessors()));
+        threads.put(Stage.TEXTRACT, Integer.getInteger("hulft.stage.textract.threads", io));
+        threads.put(Stage.COMPREHEND, Integer.getInteger("hulft.stage.comprehend.threads", io));
+        threads.put(Stage.BEDROCK, Integer.getInteger("hulft.stage.bedrock.threads", io));
+        return threads;
+    }
+
+    /**
+     * Returns the executor for a stage, for use with the {@code *Async} methods of
+     * {@link CompletableFuture}.
+     *
+     * @param stage the stage
+     * @return the stage executor
+     */
+    public Executor executor(final Stage stage) {
+        return pools.get(stage);
+    }
+
+    /**
+     * Runs a task on a stage.
+     *
+     * @param stage the stage
+     * @param task the task
+     * @param <T> result type
+     * @return future completed with the task result, or failed with a
+     *     {@link ServerBusyException} if an AWS stage stayed full
+     */
+    public <T> CompletableFuture<T> supply(final Stage stage, final Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, pools.get(stage));
+        } catch (final ServerBusyException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Returns the number of threads of a stage currently running tasks.
+     *
+     * @param stage the stage
+     * @return active thread count
+     */
+    public int active(final Stage stage) {
+        return pools.get(stage).getActiveCount();
+    }
+
+    /**
+     * Returns the number of tasks waiting for a stage.
+     *
+     * @param stage the stage
+     * @return queue depth
+     */
+    public int queued(final Stage stage) {
+        return pools.get(stage).getQueue().size();
+    }
+
+    /**
+     * Publishes active and queued gauges for every stage to {@link Metrics}.
+     */
+    public void registerMetrics() {
+        for (final Stage stage : Stage.values()) {
+            final String prefix = "stage." + stage.name().toLowerCase(Locale.ROOT);
+            Metrics.gauge(prefix + ".active", () -> active(stage));
+            Metrics.gauge(prefix + ".queued", () -> queued(stage));
+        }
+    }
+
+    public void shutdown() {
+        pools.values().forEach(ThreadPoolExecutor::shutdown);
+    }
+}
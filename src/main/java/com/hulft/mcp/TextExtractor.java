@@ -4,25 +4,95 @@ import lombok.extern.slf4j.Slf4j;
 
 /**
  * Handles text extraction from various document formats.
+ * OCR results carry their own confidence in an {@link OcrResult}, so no state is
+ * kept per thread and extraction works the same on pooled or virtual threads.
+ * With an async Textract client, {@link #ocrAsync} issues the call without holding a
+ * thread for the round trip. Textract calls go through the shared {@link AwsLimiter}
+ * and, when enabled, are hedged by the shared {@link Hedger}.
  */
 @Slf4j
 @SuppressWarnings("PMD.AvoidCatchingGenericException") // Generic exception handling for robustness
 public class TextExtractor {
+    private static final String DETECT_TEXT = "DetectDocumentText";
+    
     private final software.amazon.awssdk.services.textract.TextractClient textractClient;
-    private final ThreadLocal<Float> ocrConfidence = new ThreadLocal<>();
+    private final software.amazon.awssdk.services.textract.TextractAsyncClient textractAsyncClient;
+    private final AwsLimiter textractLimiter = AwsLimiter.forService("textract");
+    private final Hedger textractHedger = Hedger.forService("textract");
+    
+    /**
+     * Text recognized in one document.
+     */
+    public static class OcrResult {
+        /** Recognized text, or an error message if recognition failed */
+        public final String text;
+        /** Mean line confidence in percent, or null if recognition failed */
+        public final Float confidence;
+
+        OcrResult(final String text, final Float confidence) {
+            this.text = text;
+            this.confidence = confidence;
+        }
+    }
     
     public TextExtractor(final software.amazon.awssdk.services.textract.TextractClient textractClient) {
+        this(textractClient, null);
+    }
+    
+    public TextExtractor(final software.amazon.awssdk.services.textract.TextractClient textractClient,
+            final software.amazon.awssdk.services.textract.TextractAsyncClient textractAsyncClient) {
         this.textractClient = textractClient;
+        this.textractAsyncClient = textractAsyncClient;
+    }
+    
+    /**
+     * Returns whether OCR can run without blocking a thread.
+     *
+     * @return true with an async Textract client
+     */
+    public boolean isAsync() {
+        return textractAsyncClient != null;
     }
     
     public String extractFromPdf(final byte[] fileBytes, final String filename) {
-        return analyzeWithTextract(fileBytes, filename);
+        return analyzeWithTextract(fileBytes, filename).text;
     }
     
     public String extractFromImage(final byte[] fileBytes, final String filename) {
+        return analyzeWithTextract(fileBytes, filename).text;
+    }
+    
+    /**
+     * Recognizes text in a PDF or image with Textract.
+     *
+     * @param fileBytes document bytes
+     * @param filename file name, for logging
+     * @return recognized text and its confidence
+     */
+    public OcrResult ocr(final byte[] fileBytes, final String filename) {
         return analyzeWithTextract(fileBytes, filename);
     }
     
+    /**
+     * Recognizes text with the async Textract client. Failures complete the future
+     * normally with a failed {@link OcrResult}, like {@link #ocr}.
+     *
+     * @param fileBytes document bytes
+     * @param filename file name, for logging
+     * @return future completed with recognized text and its confidence
+     * @throws IllegalStateException if no async client is configured
+     */
+    public java.util.concurrent.CompletableFuture<OcrResult> ocrAsync(final byte[] fileBytes, final String filename) {
+        if (textractAsyncClient == null) {
+            throw new IllegalStateException("No async Textract client configured");
+        }
+        final software.amazon.awssdk.services.textract.model.DetectDocumentTextRequest request = buildRequest(fileBytes);
+        return textractLimiter.callAsync(DETECT_TEXT, null, () -> textractHedger.hedge(() -> textractAsyncClient.detectDocumentText(request)))
+            .thenApply(response -> toResult(response, filename))
+            .exceptionally(e -> failed(e instanceof java.util.concurrent.CompletionException && e.getCause() != null
+                ? e.getCause() : e));
+    }
+    
     public String extractFromExcel(final byte[] fileBytes) {
         try {
             final org.apache.poi.ss.usermodel.Workbook workbook = org.apache.poi.ss.usermodel.WorkbookFactory.create(
@@ -46,56 +116,56 @@ public class TextExtractor {
         }
     }
     
-    public Float getLastOcrConfidence() {
-        final Float conf = ocrConfidence.get();
-        ocrConfidence.remove();
-        return conf;
-    }
-    
     @SuppressWarnings("PMD.AvoidCatchingGenericException")
-    private String analyzeWithTextract(final byte[] fileBytes, final String filename) {
+    private OcrResult analyzeWithTextract(final byte[] fileBytes, final String filename) {
         try {
-            final software.amazon.awssdk.services.textract.model.DetectDocumentTextRequest request = 
-                software.amazon.awssdk.services.textract.model.DetectDocumentTextRequest.builder()
-                    .document(software.amazon.awssdk.services.textract.model.Document.builder()
-                        .bytes(software.amazon.awssdk.core.SdkBytes.fromByteArray(fileBytes))
-                        .build())
-                    .build();
-            
-            final software.amazon.awssdk.services.textract.model.DetectDocumentTextResponse response = 
-                textractClient.detectDocumentText(request);
-            
-            final StringBuilder text = new StringBuilder();
-            final java.util.List<Float> confidences = new java.util.ArrayList<>();
-            
-            for (final software.amazon.awssdk.services.textract.model.Block block : response.blocks()) {
-                if (block.blockType() == software.amazon.awssdk.services.textract.model.BlockType.LINE) {
-                    text.append(block.text()).append('\n');
-                    if (block.confidence() != null) {
-                        confidences.add(block.confidence());
-                    }
-                }
-            }
-            
-            // Calculate average confidence
-            final float avgConfidence = confidences.isEmpty()
-                ? 0
-                : (float) confidences.stream().mapToDouble(Float::doubleValue).average().orElse(0);
-            
-            final String extractedText = text.toString();
-            if (log.isInfoEnabled()) {
-                log.info("Textract extracted {} characters from {} (avg confidence: {:.2f}%)", 
-                    extractedText.length(), filename, avgConfidence);
-            }
-            
-            ocrConfidence.set(avgConfidence);
-            return extractedText;
-            
+            final software.amazon.awssdk.services.textract.model.DetectDocumentTextRequest request = buildRequest(fileBytes);
+            return toResult(textractLimiter.call(DETECT_TEXT, null, () -> textractHedger.call(() -> textractClient.detectDocumentText(request))), filename);
         } catch (final Exception e) {
-            if (log.isErrorEnabled()) {
-                log.error("Error with Textract analysis", e);
+            return failed(e);
+        }
+    }
+    
+    private static software.amazon.awssdk.services.textract.model.DetectDocumentTextRequest buildRequest(final byte[] fileBytes) {
+        return software.amazon.awssdk.services.textract.model.DetectDocumentTextRequest.builder()
+            .document(software.amazon.awssdk.services.textract.model.Document.builder()
+                .bytes(software.amazon.awssdk.core.SdkBytes.fromByteArray(fileBytes))
+                .build())
+            .build();
+    }
+    
+    private static OcrResult failed(final Throwable e) {
+        if (log.isErrorEnabled()) {
+            log.error("Error with Textract analysis", e);
+        }
+        return new OcrResult("Textract analysis failed: " + e.getMessage(), null);
+    }
+    
+    private static OcrResult toResult(final software.amazon.awssdk.services.textract.model.DetectDocumentTextResponse response,
+            final String filename) {
+        final StringBuilder text = new StringBuilder();
+        final java.util.List<Float> confidences = new java.util.ArrayList<>();
+        
+        for (final software.amazon.awssdk.services.textract.model.Block block : response.blocks()) {
+            if (block.blockType() == software.amazon.awssdk.services.textract.model.BlockType.LINE) {
+                text.append(block.text()).append('\n');
+                if (block.confidence() != null) {
+                    confidences.add(block.confidence());
+                }
             }
-            return "Textract analysis failed: " + e.getMessage();
         }
+        
+        // Calculate average confidence
+        final float avgConfidence = confidences.isEmpty()
+            ? 0
+            : (float) confidences.stream().mapToDouble(Float::doubleValue).average().orElse(0);
+        
+        final String extractedText = text.toString();
+        if (log.isInfoEnabled()) {
+            log.info("Textract extracted {} characters from {} (avg confidence: {:.2f}%)", 
+                extractedText.length(), filename, avgConfidence);
+        }
+        
+        return new OcrResult(extractedText, avgConfidence);
     }
 }
@@ -0,0 +1,246 @@
+package com.hulft.mcp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token buckets that pace AWS calls to the account's TPS quotas. There is one bucket
+ * per key, {@code <service>/<operation>[/<model>]}, refilled at the key's rate up to its
+ * burst size. Callers reserve a token and wait until it is due, so waiting callers are
+ * served in order and a burst is spread out instead of being throttled by AWS. A token
+ * due later than the caller will wait is handed back and the call refused as busy, so
+ * a backlog cannot build up debt that every later call sleeps through.
+ * <p>
+ * Rates come from {@code hulft.rate.<key>.tps} and {@code .burst}, looked up from the
+ * full key down to the service ({@code hulft.rate.bedrock.tps} covers every Bedrock
+ * model); the default is 10 TPS with a burst of the same size. With a shared directory,
+ * every bucket's state lives in a file updated under a file lock, so all nodes sharing
+ * the directory draw on one quota.
+ */
+public class TokenBuckets {
+    private static final TokenBuckets SHARED = createShared();
+
+    private final Path dir;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /** One key's bucket, in memory or in a file shared between nodes. */
+    private final class Bucket {
+        final double rate;
+        final double burst;
+        final Path file;
+        /**
+         * Serializes this process's updates, which a file lock cannot do within one JVM.
+         * Not a monitor, so a virtual thread waiting on disk I/O does not pin its carrier.
+         */
+        final ReentrantLock lock = new ReentrantLock();
+        double tokens;
+        long updatedMillis;
+
+        Bucket(final String key) {
+            this.rate = Math.max(0.001, config(key, "tps", 10));
+            this.burst = Math.max(1, config(key, "burst", rate));
+            this.file = dir == null ? null : dir.resolve(key.replaceAll("[^A-Za-z0-9._-]", "_") + ".bucket");
+            this.tokens = burst;
+            this.updatedMillis = System.currentTimeMillis();
+        }
+
+        /** Takes a token, possibly ahead of time, and returns how long until it is due. */
+        long reserve() {
+            return update(1);
+        }
+
+        /** Hands back a reserved token that will not be used. */
+        void cancel() {
+            update(-1);
+        }
+
+        /** Refills, takes {@code count} tokens (a negative count returns them) and returns the wait. */
+        private long update(final int count) {
+            lock.lock();
+            try {
+                return file == null ? take(System.currentTimeMillis(), count) : updateFile(count);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** Updates the bucket's shared state under the file lock. Must hold {@link #lock}. */
+        private long updateFile(final int count) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE); FileLock fileLock = channel.lock()) {
+                final ByteBuffer state = ByteBuffer.allocate(16);
+                if (channel.read(state, 0) == 16) {
+                    state.flip();
+                    tokens = state.getDouble();
+                    updatedMillis = state.getLong();
+                }
+                final long wait = take(System.currentTimeMillis(), count);
+                state.clear();
+                state.putDouble(tokens).putLong(updatedMillis).flip();
+                channel.write(state, 0);
+                return wait;
+            } catch (final IOException e) {
+                throw new UncheckedIOException("Error updating rate limit " + file, e);
+            }
+        }
+
+        private long take(final long now, final int count) {
+            tokens = Math.min(burst, tokens + Math.max(0, now - updatedMillis) * rate / 1000);
+            updatedMillis = now;
+            tokens = Math.min(burst, tokens - count);
+            return tokens >= 0 ? 0 : (long) Math.ceil(-tokens * 1000 / rate);
+        }
+    }
+
+    /**
+     * Creates token buckets.
+     *
+     * @param dir directory shared between nodes, or null to limit this process only
+     */
+    public TokenBuckets(final Path dir) {
+        this.dir = dir;
+        if (dir != null) {
+            try {
+                Files.createDirectories(dir);
+            } catch (final IOException e) {
+                throw new UncheckedIOException("Error creating rate limit directory " + dir, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the process-wide buckets, shared between nodes through the directory named
+     * by {@code hulft.rate.sharedDir} when set.
+     *
+     * @return the shared buckets
+     */
+    public static TokenBuckets shared() {
+        return SHARED;
+    }
+
+    private static TokenBuckets createShared() {
+        final String dir = System.getProperty("hulft.rate.sharedDir");
+        final TokenBuckets shared = new TokenBuckets(dir == null || dir.isBlank() ? null : Paths.get(dir));
+        shared.registerMetrics();
+        return shared;
+    }
+
+    private static double config(final String key, final String name, final double defaultValue) {
+        String scope = key;
+        while (true) {
+            final String value = System.getProperty("hulft.rate." + scope.replace('/', '.') + "." + name);
+            if (value != null) {
+                return Double.parseDouble(value);
+            }
+            final int parent = scope.lastIndexOf('/');
+            if (parent < 0) {
+                return defaultValue;
+            }
+            scope = scope.substring(0, parent);
+        }
+    }
+
+    /**
+     * Builds a bucket key.
+     *
+     * @param service AWS service, e.g. {@code bedrock}
+     * @param operation API operation, e.g. {@code InvokeModel}
+     * @param model model ID, or null for operations without one
+     * @return the key
+     */
+    public static String key(final String service, final String operation, final String model) {
+        return model == null ? service + "/" + operation : service + "/" + operation + "/" + model;
+    }
+
+    /**
+     * Waits for a token.
+     *
+     * @param key bucket key
+     * @param maxWaitMillis longest wait for the token
+     * @throws ServerBusyException if the token is due later than {@code maxWaitMillis},
+     *     or if interrupted while waiting
+     */
+    public void acquire(final String key, final long maxWaitMillis) {
+        final long wait = reserve(key, maxWaitMillis);
+        if (wait == 0) {
+            return;
+        }
+        waiting.incrementAndGet();
+        try {
+            Thread.sleep(wait);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServerBusyException("Interrupted waiting for " + key + " rate limit", wait);
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Reserves a token without blocking a thread.
+     *
+     * @param key bucket key
+     * @param maxWaitMillis longest wait for the token
+     * @return future completed when the token is due, or failed with a
+     *     {@link ServerBusyException} if it is due later than {@code maxWaitMillis}
+     */
+    public CompletableFuture<Void> acquireAsync(final String key, final long maxWaitMillis) {
+        final long wait;
+        try {
+            wait = reserve(key, maxWaitMillis);
+        } catch (final ServerBusyException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (wait == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        waiting.incrementAndGet();
+        return CompletableFuture.runAsync(waiting::decrementAndGet,
+            CompletableFuture.delayedExecutor(wait, TimeUnit.MILLISECONDS));
+    }
+
+    /** Reserves a token due within {@code maxWaitMillis} and returns the wait, or hands it back and refuses. */
+    private long reserve(final String key, final long maxWaitMillis) {
+        final Bucket bucket = bucket(key);
+        final long wait = bucket.reserve();
+        if (wait > maxWaitMillis) {
+            bucket.cancel();
+            throw new ServerBusyException(key + " rate limit reached", wait);
+        }
+        return wait;
+    }
+
+    private Bucket bucket(final String key) {
+        return buckets.computeIfAbsent(key, Bucket::new);
+    }
+
+    /**
+     * Returns the number of calls waiting for a token.
+     *
+     * @return queued permits
+     */
+    public int waiting() {
+        return waiting.get();
+    }
+
+    /**
+     * Publishes the queued permit count to {@link Metrics}.
+     */
+    public void registerMetrics() {
+        Metrics.gauge("aws.rate.waiting", this::waiting);
+    }
+}
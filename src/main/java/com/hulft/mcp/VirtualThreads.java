@@ -0,0 +1,78 @@
+package com.hulft.mcp;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Opt-in virtual-thread mode. Enabled with {@code -Dhulft.virtualThreads=true} on a
+ * Java 21+ runtime (build with {@code -PvirtualThreads} to use the Java 21 toolchain).
+ * The sources stay Java 17 compatible, so virtual threads are created reflectively.
+ * Blocking AWS calls then park a virtual thread instead of holding a platform thread,
+ * and thousands of them share a few carrier threads.
+ */
+@Slf4j
+public final class VirtualThreads {
+    private static final boolean ENABLED = Boolean.getBoolean("hulft.virtualThreads") && available();
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Returns whether the runtime supports virtual threads.
+     *
+     * @return true on Java 21 or later
+     */
+    public static boolean available() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    /**
+     * Returns whether virtual-thread mode is enabled.
+     *
+     * @return true when requested and available
+     */
+    public static boolean enabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Creates a thread factory: virtual threads in virtual-thread mode, otherwise
+     * daemon platform threads. Threads are named {@code <prefix><n>}.
+     *
+     * @param prefix thread name prefix
+     * @return the thread factory
+     */
+    public static ThreadFactory factory(final String prefix) {
+        if (ENABLED) {
+            try {
+                final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+                final Object ofVirtual = Thread.class.getMethod("ofVirtual").invoke(null);
+                final Method name = builder.getMethod("name", String.class, long.class);
+                return (ThreadFactory) builder.getMethod("factory").invoke(name.invoke(ofVirtual, prefix, 1L));
+            } catch (final ReflectiveOperationException e) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Virtual threads unavailable, using platform threads: {}", e.getMessage());
+                }
+            }
+        }
+        return platform(prefix);
+    }
+
+    /**
+     * Creates a factory of daemon platform threads named {@code <prefix><n>}, for
+     * CPU-bound work that should not run on virtual threads.
+     *
+     * @param prefix thread name prefix
+     * @return the thread factory
+     */
+    public static ThreadFactory platform(final String prefix) {
+        final AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,99 @@
+package com.hulft.mcp;
+
+import org.junit.Test;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import static org.junit.Assert.*;
+
+public class AwsLimiterTest {
+
+    private static RuntimeException error(final int status) {
+        return software.amazon.awssdk.core.exception.SdkServiceException.builder()
+            .statusCode(status).message("status " + status).build();
+    }
+
+    @Test
+    public void testThrottlingHalvesLimitAndSuccessRaisesIt() {
+        final AwsLimiter limiter = new AwsLimiter("test", 8, 1, 64, 10, 100, 1000, 1000);
+        try {
+            limiter.call(() -> {
+                throw error(429);
+            });
+            fail("Throttle should be rethrown");
+        } catch (software.amazon.awssdk.core.exception.SdkServiceException e) {
+            assertEquals("Throttle should halve the limit", 4, limiter.limit());
+        }
+        for (int i = 0; i < 5; i++) {
+            assertEquals("Response should be returned", "ok", limiter.call(() -> "ok"));
+        }
+        assertEquals("About a round of successes should raise the limit by one", 5, limiter.limit());
+        try {
+            limiter.call(() -> {
+                throw error(400);
+            });
+            fail("Client error should be rethrown");
+        } catch (software.amazon.awssdk.core.exception.SdkServiceException e) {
+            assertEquals("Client errors should not change the limit", 5, limiter.limit());
+        }
+        assertEquals("No call should be left in flight", 0, limiter.inFlight());
+    }
+
+    @Test
+    public void testCallsBeyondLimitWait() {
+        final AwsLimiter limiter = new AwsLimiter("test", 1, 1, 1, 10, 100, 1000, 1000);
+        final CompletableFuture<String> first = new CompletableFuture<>();
+        final boolean[] secondStarted = {false};
+        final CompletableFuture<String> firstCall = limiter.callAsync(() -> first);
+        final CompletableFuture<String> secondCall = limiter.callAsync(() -> {
+            secondStarted[0] = true;
+            return CompletableFuture.completedFuture("second");
+        });
+
+        assertFalse("Second call should wait for a permit", secondStarted[0]);
+        first.complete("first");
+        assertEquals("First call should complete", "first", firstCall.join());
+        assertEquals("Second call should run once the permit is free", "second", secondCall.join());
+        assertEquals("No call should be left in flight", 0, limiter.inFlight());
+    }
+
+    @Test
+    public void testCircuitOpensAndClosesAfterTrialCall() throws Exception {
+        final AwsLimiter limiter = new AwsLimiter("test", 4, 1, 4, 10, 3, 100, 1000);
+        for (int i = 0; i < 3; i++) {
+            final CompletableFuture<String> failed = limiter.callAsync(() -> CompletableFuture.failedFuture(error(503)));
+            assertTrue("Server error should fail the call", failed.isCompletedExceptionally());
+        }
+        assertEquals("Circuit should open", AwsLimiter.Circuit.OPEN, limiter.circuit());
+        try {
+            limiter.callAsync(() -> CompletableFuture.completedFuture("ok")).join();
+            fail("Open circuit should fail fast");
+        } catch (CompletionException e) {
+            assertTrue("Failure should be retryable", e.getCause() instanceof ServerBusyException);
+        }
+
+        Thread.sleep(150); // Let the open period end
+        assertEquals("Trial call should go through", "ok", limiter.call(() -> "ok"));
+        assertEquals("Successful trial should close the circuit", AwsLimiter.Circuit.CLOSED, limiter.circuit());
+    }
+
+    @Test
+    public void testOperationsArePacedByTheirBucket() {
+        System.setProperty("hulft.rate.paced.Op.tps", "20");
+        System.setProperty("hulft.rate.paced.Op.burst", "1");
+        try {
+            final AwsLimiter limiter = new AwsLimiter("paced", 8, 1, 8, 10, 100, 1000, 1000, new TokenBuckets(null));
+            final long start = System.nanoTime();
+            for (int i = 0; i < 5; i++) {
+                limiter.call("Op", null, () -> "ok");
+            }
+            final long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            assertTrue("Calls beyond the burst should wait for tokens, took " + elapsedMillis + " ms", elapsedMillis >= 180);
+            limiter.call("Other", null, () -> "ok");
+            assertTrue("Other operations should have their own bucket",
+                (System.nanoTime() - start) / 1_000_000 < elapsedMillis + 40);
+        } finally {
+            System.clearProperty("hulft.rate.paced.Op.tps");
+            System.clearProperty("hulft.rate.paced.Op.burst");
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.hulft.mcp;
+
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import software.amazon.awssdk.services.comprehend.model.BatchDetectEntitiesItemResult;
+import software.amazon.awssdk.services.comprehend.model.BatchDetectEntitiesRequest;
+import software.amazon.awssdk.services.comprehend.model.BatchDetectEntitiesResponse;
+import software.amazon.awssdk.services.comprehend.model.BatchItemError;
+import software.amazon.awssdk.services.comprehend.model.Entity;
+import software.amazon.awssdk.services.comprehend.model.EntityType;
+import static org.junit.Assert.*;
+
+public class DocumentClassifierTest {
+
+    @Test
+    public void testConcurrentDocumentsShareBatchDetectEntitiesCall() {
+        final List<List<String>> calls = new ArrayList<>();
+        final software.amazon.awssdk.services.comprehend.ComprehendClient comprehend =
+            new software.amazon.awssdk.services.comprehend.ComprehendClient() {
+                @Override
+                public BatchDetectEntitiesResponse batchDetectEntities(final BatchDetectEntitiesRequest request) {
+                    calls.add(request.textList());
+                    final Entity quantity = Entity.builder().type(EntityType.QUANTITY).build();
+                    return BatchDetectEntitiesResponse.builder()
+                        .resultList(List.of(
+                            BatchDetectEntitiesItemResult.builder().index(0).entities(List.of(quantity, quantity, quantity)).build(),
+                            BatchDetectEntitiesItemResult.builder().index(2).entities(List.of()).build()))
+                        .errorList(List.of(BatchItemError.builder().index(1).errorCode("TextSizeLimitExceeded")
+                            .errorMessage("too long").build()))
+                        .build();
+                }
+
+                @Override
+                public String serviceName() {
+                    return "comprehend";
+                }
+
+                @Override
+                public void close() {
+                    // Nothing to release
+                }
+            };
+        System.setProperty("hulft.comprehend.batch", "true");
+        System.setProperty("hulft.comprehend.batch.windowMillis", "200");
+        final StagePools pools = new StagePools(Map.of(), 4);
+        try {
+            final DocumentClassifier classifier = new DocumentClassifier(comprehend, null, null, null, new SchemaManager(), pools);
+            final CompletableFuture<Map<String, Object>> bedrock = CompletableFuture.completedFuture(Map.of("error", "skipped"));
+            final List<CompletableFuture<Map<String, Object>>> results = List.of(
+                classifier.classifyAsync("schedule", pools, bedrock),
+                classifier.classifyAsync("oversized", pools, bedrock),
+                classifier.classifyAsync("other", pools, bedrock));
+
+            assertEquals("First document should be classified from its entities", "SCHEDULE_PRODUCTION",
+                ((Map<?, ?>) results.get(0).join().get("comprehend")).get("type"));
+            assertEquals("Item error should stay with its document", "TextSizeLimitExceeded: too long",
+                ((Map<?, ?>) results.get(1).join().get("comprehend")).get("error"));
+            assertEquals("Third document should get its own result", "UNKNOWN",
+                ((Map<?, ?>) results.get(2).join().get("comprehend")).get("type"));
+            assertEquals("All documents should share one call", List.of(List.of("schedule", "oversized", "other")), calls);
+        } finally {
+            System.clearProperty("hulft.comprehend.batch");
+            System.clearProperty("hulft.comprehend.batch.windowMillis");
+            pools.shutdown();
+        }
+    }
+}
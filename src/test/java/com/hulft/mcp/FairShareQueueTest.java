@@ -0,0 +1,55 @@
+package com.hulft.mcp;
+
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+
+public class FairShareQueueTest {
+
+    private static FairShareQueue.Task task(final String session, final FairShareQueue.Priority priority,
+            final List<String> ran, final String name) {
+        return new FairShareQueue.Task(session, priority, 1, () -> ran.add(name));
+    }
+
+    @Test
+    public void testSmallSessionIsNotStuckBehindBacklog() {
+        final FairShareQueue queue = new FairShareQueue(100, 100);
+        final List<String> ran = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            assertTrue("Backlog should be accepted", queue.offer(task("a", null, ran, "a" + i)));
+        }
+        queue.offer(task("b", null, ran, "b"));
+
+        queue.poll().run();
+        queue.poll().run();
+        assertTrue("Other session's job should run within the first two slots, ran " + ran, ran.contains("b"));
+        assertEquals("Only the backlog session should still be waiting", 1, queue.waitingSessions());
+    }
+
+    @Test
+    public void testSessionLimitLeavesRoomForOthers() {
+        final FairShareQueue queue = new FairShareQueue(4, 2);
+        final List<String> ran = new ArrayList<>();
+        assertTrue("First job should be accepted", queue.offer(task("a", null, ran, "a1")));
+        assertTrue("Second job should be accepted", queue.offer(task("a", null, ran, "a2")));
+        assertFalse("Session share should be exhausted", queue.accepts("a"));
+        assertFalse("Third job from the same session should be refused", queue.offer(task("a", null, ran, "a3")));
+        assertTrue("Another session should still be accepted", queue.accepts("b"));
+        assertEquals("Refused job should not be queued", 2, queue.size());
+    }
+
+    @Test
+    public void testHighPriorityRunsFirst() {
+        final FairShareQueue queue = new FairShareQueue(10, 10);
+        final List<String> ran = new ArrayList<>();
+        queue.offer(task("a", FairShareQueue.Priority.NORMAL, ran, "normal"));
+        queue.offer(task("b", FairShareQueue.Priority.LOW, ran, "low"));
+        queue.offer(task("c", FairShareQueue.Priority.HIGH, ran, "high"));
+
+        while (!queue.isEmpty()) {
+            queue.poll().run();
+        }
+        assertEquals("Jobs should run in priority order", List.of("high", "normal", "low"), ran);
+    }
+}
@@ -0,0 +1,281 @@
+package com.hulft.mcp;
+
+import org.junit.Test;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.*;
+
+public class FieldExtractorTest {
+
+    /** Bedrock client answering every call with the given model text. */
+    private static software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient answering(
+            final String text, final String[] prompt) {
+        return answeringBy(body -> {
+            prompt[0] = body;
+            return text;
+        });
+    }
+
+    /** Bedrock client answering each call with model text chosen from the request body. */
+    private static software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient answeringBy(
+            final java.util.function.Function<String, String> answer) {
+        return new software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient() {
+            @Override
+            public software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse invokeModel(
+                    final software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest request) {
+                final String body = new com.google.gson.Gson().toJson(Map.of("content",
+                    java.util.List.of(Map.of("type", "text", "text", answer.apply(request.body().asUtf8String())))));
+                return software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse.builder()
+                    .body(software.amazon.awssdk.core.SdkBytes.fromUtf8String(body))
+                    .build();
+            }
+
+            @Override
+            public String serviceName() {
+                return "bedrock";
+            }
+
+            @Override
+            public void close() {
+                // Nothing to release
+            }
+        };
+    }
+
+    @Test
+    public void testClassifyAndExtractInOneCall() {
+        final SchemaManager schemas = new SchemaManager();
+        schemas.addSchema("SHIPPING_NOTICE", "{\"tracking_number\": \"string\"}");
+        final String[] prompt = new String[1];
+        final FieldExtractor extractor = new FieldExtractor(answering(
+            "```json\n{\"type\": \"purchase_order\", \"fields\": {\"po_number\": \"PO-1\"}}\n```", prompt), schemas);
+
+        final Map<String, Object> answer = extractor.classifyAndExtract("PO-1 from ACME");
+        assertEquals("Type should be upper-cased", "PURCHASE_ORDER", answer.get("type"));
+        assertEquals("Fields should be returned", Map.of("po_number", "PO-1"), answer.get("fields"));
+        assertTrue("Prompt should offer built-in schemas", prompt[0].contains("po_number"));
+        assertTrue("Prompt should offer custom schemas", prompt[0].contains("tracking_number"));
+        assertEquals("Answer should become a Bedrock vote", "PURCHASE_ORDER", DocumentClassifier.combinedVote(answer).get("type"));
+    }
+
+    @Test
+    public void testClassifyAndExtractWithoutTypeIsAnError() {
+        final FieldExtractor extractor = new FieldExtractor(answering("{\"fields\": {}}", new String[1]), new SchemaManager());
+        final Map<String, Object> answer = extractor.classifyAndExtract("text");
+        assertTrue("Missing type should be an error", answer.containsKey("error"));
+        assertTrue("Error should not become a vote", DocumentClassifier.combinedVote(answer).containsKey("error"));
+    }
+
+    @Test
+    public void testSmallDocumentsAreExtractedInOneBatch() {
+        System.setProperty("hulft.bedrock.batch", "true");
+        System.setProperty("hulft.bedrock.batch.maxDocuments", "2");
+        try {
+            final String[] prompt = new String[1];
+            final FieldExtractor extractor = new FieldExtractor(answering(
+                "{\"1\": {\"po_number\": \"PO-1\"}, \"2\": {\"invoice_number\": \"INV-2\"}}", prompt),
+                new SchemaManager());
+            assertTrue("Batching should be enabled", extractor.isBatching());
+            final java.util.concurrent.CompletableFuture<Map<String, Object>> first =
+                extractor.extractFieldsBatched("PO-1 from ACME", "PURCHASE_ORDER");
+            final java.util.concurrent.CompletableFuture<Map<String, Object>> second =
+                extractor.extractFieldsBatched("Invoice INV-2", "INVOICE_PRODUCTION");
+
+            assertEquals("First document should get its fields", Map.of("po_number", "PO-1"), first.join());
+            assertEquals("Second document should get its fields", Map.of("invoice_number", "INV-2"), second.join());
+            assertTrue("Both documents should share one prompt",
+                prompt[0].contains("PO-1 from ACME") && prompt[0].contains("Invoice INV-2"));
+        } finally {
+            System.clearProperty("hulft.bedrock.batch");
+            System.clearProperty("hulft.bedrock.batch.maxDocuments");
+        }
+    }
+
+    /** Async Bedrock client streaming the given text deltas, counting the events delivered. */
+    private static software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient streaming(
+            final List<String> deltas, final java.util.concurrent.atomic.AtomicInteger delivered) {
+        return streaming(deltas, delivered, null);
+    }
+
+    /** Async Bedrock client streaming the given text deltas, then failing with the error if not null. */
+    private static software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient streaming(
+            final List<String> deltas, final java.util.concurrent.atomic.AtomicInteger delivered, final Throwable error) {
+        return new software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient() {
+            @Override
+            public java.util.concurrent.CompletableFuture<Void> invokeModelWithResponseStream(
+                    final software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamRequest request,
+                    final software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamResponseHandler handler) {
+                final java.util.concurrent.atomic.AtomicBoolean cancelled = new java.util.concurrent.atomic.AtomicBoolean();
+                handler.onEventStream(subscriber -> subscriber.onSubscribe(new org.reactivestreams.Subscription() {
+                    @Override
+                    public void request(final long n) {
+                        for (final String delta : deltas) {
+                            if (cancelled.get()) {
+                                return;
+                            }
+                            delivered.incrementAndGet();
+                            subscriber.onNext(software.amazon.awssdk.services.bedrockruntime.model.PayloadPart.builder()
+                                .bytes(software.amazon.awssdk.core.SdkBytes.fromUtf8String(new com.google.gson.Gson().toJson(
+                                    Map.of("type", "content_block_delta", "delta", Map.of("type", "text_delta", "text", delta)))))
+                                .build());
+                        }
+                        if (error == null) {
+                            subscriber.onComplete();
+                        } else {
+                            subscriber.onError(error);
+                        }
+                    }
+
+                    @Override
+                    public void cancel() {
+                        cancelled.set(true);
+                    }
+                }));
+                handler.complete();
+                return java.util.concurrent.CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public String serviceName() {
+                return "bedrock";
+            }
+
+            @Override
+            public void close() {
+                // Nothing to release
+            }
+        };
+    }
+
+    @Test
+    public void testStreamingStopsOnceAllSchemaFieldsArrive() {
+        final SchemaManager schemas = new SchemaManager();
+        schemas.addSchema("RECEIPT", "{\"store\": \"string\", \"total\": \"string\"}");
+        final java.util.concurrent.atomic.AtomicInteger delivered = new java.util.concurrent.atomic.AtomicInteger();
+        final FieldExtractor extractor = new FieldExtractor(null, streaming(
+            List.of("{\"store\": \"Mart\", ", "\"total\": \"9\"", "}", " Let me know if you need more."), delivered),
+            schemas);
+        final List<Map<String, Object>> partials = new java.util.concurrent.CopyOnWriteArrayList<>();
+
+        final Map<String, Object> fields = extractor.extractFieldsStreaming("Mart total 9", "RECEIPT", partials::add).join();
+        assertEquals("Streamed fields should be returned", Map.of("store", "Mart", "total", "9"), fields);
+        assertEquals("Each finished field should be reported", List.of(Map.of("store", "Mart"), fields), partials);
+        assertEquals("Stream should stop once the object closes", 3, delivered.get());
+    }
+
+    @Test
+    public void testStreamingWithoutSchemaFieldsReadsTheWholeObject() {
+        final SchemaManager schemas = new SchemaManager();
+        schemas.addSchema("NOTE", "{}");
+        final java.util.concurrent.atomic.AtomicInteger delivered = new java.util.concurrent.atomic.AtomicInteger();
+        final FieldExtractor extractor = new FieldExtractor(null, streaming(
+            List.of("{\"a\": \"1\", ", "\"b\": \"2\"", "}"), delivered), schemas);
+
+        final Map<String, Object> fields = extractor.extractFieldsStreaming("a 1 b 2", "NOTE", null).join();
+        assertEquals("Every field should be read without schema fields", Map.of("a", "1", "b", "2"), fields);
+    }
+
+    @Test
+    public void testFailedStreamKeepsFieldsAlreadyRead() {
+        final SchemaManager schemas = new SchemaManager();
+        schemas.addSchema("RECEIPT", "{\"store\": \"string\", \"total\": \"string\"}");
+        final java.util.concurrent.atomic.AtomicInteger delivered = new java.util.concurrent.atomic.AtomicInteger();
+        final FieldExtractor extractor = new FieldExtractor(null, streaming(
+            List.of("{\"store\": \"Mart\", ", "\"tot"), delivered, new IllegalStateException("connection reset")),
+            schemas);
+
+        final Map<String, Object> fields = extractor.extractFieldsStreaming("Mart total 9", "RECEIPT", null).join();
+        assertEquals("Fields read before the failure should be kept", Map.of("store", "Mart"), fields);
+    }
+
+    @Test
+    public void testLongDocumentIsExtractedInChunksAndMerged() {
+        System.setProperty("hulft.bedrock.chunked", "true");
+        System.setProperty("hulft.bedrock.chunk.chars", "100");
+        System.setProperty("hulft.bedrock.chunk.overlapChars", "20");
+        try {
+            final List<String> prompts = new java.util.concurrent.CopyOnWriteArrayList<>();
+            final FieldExtractor extractor = new FieldExtractor(new software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient() {
+                @Override
+                public software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse invokeModel(
+                        final software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest request) {
+                    final String prompt = request.body().asUtf8String();
+                    prompts.add(prompt);
+                    final String text;
+                    if (prompt.contains("part 1 of 3")) {
+                        text = "{\"invoice_number\": \"INV-1\", \"total_amount\": \"10\", \"items\": [{\"name\": \"apple\"}, {\"name\": \"a\"}],"
+                            + " \"_confidence\": {\"invoice_number\": 0.9, \"total_amount\": 0.2}}";
+                    } else if (prompt.contains("part 2 of 3")) {
+                        text = "{\"total_amount\": \"99\", \"items\": [{\"name\": \"apple\"}, {\"name\": \"a\"}, {\"name\": \"b\"}],"
+                            + " \"note\": \"x\","
+                            + " \"_confidence\": {\"total_amount\": 0.8}}";
+                    } else {
+                        text = "{\"total_amount\": }";
+                    }
+                    return software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse.builder()
+                        .body(software.amazon.awssdk.core.SdkBytes.fromUtf8String(new com.google.gson.Gson().toJson(
+                            Map.of("content", List.of(Map.of("type", "text", "text", text))))))
+                        .build();
+                }
+
+                @Override
+                public String serviceName() {
+                    return "bedrock";
+                }
+
+                @Override
+                public void close() {
+                    // Nothing to release
+                }
+            }, new SchemaManager());
+            // The first two chunks share the text around "apple"
+            final String text = "word ".repeat(16) + "apple " + "word ".repeat(29);
+            assertTrue("Long text should be chunked", extractor.isChunked(text));
+            assertFalse("Short text should not be chunked", extractor.isChunked("word"));
+            assertEquals("Mode should tell chunked text apart", "chunked", extractor.mode(text));
+
+            final Map<String, Object> fields = extractor.extractFieldsChunked(text, "INVOICE_PRODUCTION").join();
+            assertEquals("Every chunk should be sent", 3, prompts.size());
+            assertEquals("Scalar should come from the most confident chunk", "INV-1", fields.get("invoice_number"));
+            assertEquals("Higher confidence should win", "99", fields.get("total_amount"));
+            assertEquals("Only items repeated in the overlap should be dropped",
+                List.of(Map.of("name", "apple"), Map.of("name", "a"), Map.of("name", "a"), Map.of("name", "b")),
+                fields.get("items"));
+            assertEquals("Failed chunk should be flagged", List.of(3), fields.get(FieldExtractor.PARTIAL_CHUNKS));
+            assertFalse("Fields outside the schema should be dropped", fields.containsKey("note"));
+            assertFalse("Confidence should not be returned", fields.containsKey("_confidence"));
+        } finally {
+            System.clearProperty("hulft.bedrock.chunked");
+            System.clearProperty("hulft.bedrock.chunk.chars");
+            System.clearProperty("hulft.bedrock.chunk.overlapChars");
+        }
+    }
+
+    @Test
+    public void testCutOffBatchAnswerFallsBackToSingleCalls() {
+        System.setProperty("hulft.bedrock.batch", "true");
+        System.setProperty("hulft.bedrock.batch.maxDocuments", "2");
+        try {
+            final List<String> prompts = new java.util.concurrent.CopyOnWriteArrayList<>();
+            final FieldExtractor extractor = new FieldExtractor(answeringBy(body -> {
+                prompts.add(body);
+                if (body.contains("each of the 2 documents")) {
+                    return "{\"1\": {\"po_number\": \"PO-1\"}, \"2\": {\"invoice_num";
+                }
+                return body.contains("PO-1") ? "{\"po_number\": \"PO-1\"}" : "{\"invoice_number\": \"INV-2\"}";
+            }), new SchemaManager());
+            final java.util.concurrent.CompletableFuture<Map<String, Object>> first =
+                extractor.extractFieldsBatched("PO-1 from ACME", "PURCHASE_ORDER");
+            final java.util.concurrent.CompletableFuture<Map<String, Object>> second =
+                extractor.extractFieldsBatched("Invoice INV-2", "INVOICE_PRODUCTION");
+
+            assertEquals("First document should be extracted alone", Map.of("po_number", "PO-1"), first.join());
+            assertEquals("Second document should be extracted alone", Map.of("invoice_number", "INV-2"), second.join());
+            assertEquals("One batch call and one call per document", 3, prompts.size());
+            assertTrue("Batch should ask for 1000 answer tokens per document", prompts.get(0).contains("\"max_tokens\":2000"));
+        } finally {
+            System.clearProperty("hulft.bedrock.batch");
+            System.clearProperty("hulft.bedrock.batch.maxDocuments");
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.hulft.mcp;
+
+import org.junit.Before;
+import org.junit.Test;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.*;
+
+public class FieldStoreTest {
+
+    private static final String INVOICE = "INVOICE_PRODUCTION";
+
+    private Path dir;
+    private final SchemaManager schemaManager = new SchemaManager();
+    private FieldStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("test-fields");
+        store = new FieldStore(dir, schemaManager);
+        store.load();
+        store.append("j1", "2026-01-05", INVOICE, Map.of("customer", "ACME", "total_amount", "$1,000.00"));
+        store.append("j2", "2026-01-20", INVOICE, Map.of("customer", "ACME", "total_amount", "500"));
+        store.append("j3", "2026-02-03", INVOICE, Map.of("customer", "Globex", "total_amount", "250.5",
+            "items", List.of(Map.of("name", "bolt"))));
+    }
+
+    @Test
+    public void testSumGroupedByCustomer() {
+        final List<FieldStore.Row> rows = store.query(INVOICE, Map.of(), null, null, "customer", "sum", "total_amount");
+        assertEquals("Two customers", 2, rows.size());
+        assertEquals("Groups ordered by value", "ACME", rows.get(0).group);
+        assertEquals("ACME total", 1500.0, rows.get(0).value, 0.001);
+        assertEquals("ACME count", 2, rows.get(0).count);
+        assertEquals("Globex total", 250.5, rows.get(1).value, 0.001);
+    }
+
+    @Test
+    public void testFiltersAndDateRange() {
+        final List<FieldStore.Row> january = store.query(INVOICE, Map.of(), "2026-01-01", "2026-01-31", null, "count", null);
+        assertEquals("January invoices", 2.0, january.get(0).value, 0.001);
+
+        final List<FieldStore.Row> globex = store.query(INVOICE, Map.of("customer", "Globex"), null, null, null, "max", "total_amount");
+        assertEquals("Filtered max", 250.5, globex.get(0).value, 0.001);
+
+        assertTrue("Unknown filter value matches nothing",
+            store.query(INVOICE, Map.of("customer", "Initech"), null, null, null, "count", null).isEmpty());
+    }
+
+    @Test
+    public void testColumnsFollowSchema() {
+        final List<String> columns = store.columns(INVOICE);
+        assertTrue("Schema field column", columns.contains("total_amount"));
+        assertFalse("Array fields are not columns", columns.contains("items"));
+    }
+
+    @Test
+    public void testErrorsAreSkipped() {
+        store.append("j4", "2026-02-04", INVOICE, Map.of("error", "throttled"));
+        assertEquals("Failed extraction should not be stored", 3.0,
+            store.query(INVOICE, Map.of(), null, null, null, "count", null).get(0).value, 0.001);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownField() {
+        store.query(INVOICE, Map.of(), null, null, "nope", "count", null);
+    }
+
+    @Test
+    public void testManySegmentsAndReplay() throws Exception {
+        for (int i = 0; i < FieldStore.SEGMENT_ROWS * 2; i++) {
+            store.append("bulk" + i, "2026-03-01", INVOICE, Map.of("customer", "Bulk", "total_amount", "1"));
+        }
+        store.close();
+        final FieldStore reloaded = new FieldStore(dir, schemaManager);
+        reloaded.load();
+        final List<FieldStore.Row> rows = reloaded.query(INVOICE, Map.of("customer", "Bulk"), null, null, null, "sum", "total_amount");
+        assertEquals("Sum across segments after replay", FieldStore.SEGMENT_ROWS * 2, rows.get(0).value, 0.001);
+    }
+
+    @Test
+    public void testStoringAJobAgainReplacesItsRow() throws Exception {
+        store.append("j1", "2026-01-05", INVOICE, Map.of("customer", "ACME", "total_amount", "700"));
+        store.append("j3", "2026-02-03", "PURCHASE_ORDER", Map.of("vendor", "Globex", "total_amount", "250.5"));
+
+        final List<FieldStore.Row> rows = store.query(INVOICE, Map.of(), null, null, "customer", "sum", "total_amount");
+        assertEquals("Job that changed type should leave the old table", 1, rows.size());
+        assertEquals("Reprocessed job should be counted once", 2, rows.get(0).count);
+        assertEquals("Reprocessed job should use its new values", 1200.0, rows.get(0).value, 0.001);
+
+        store.close();
+        final FieldStore reloaded = new FieldStore(dir, schemaManager);
+        reloaded.load();
+        assertEquals("Replacement should survive a reload", 1200.0,
+            reloaded.query(INVOICE, Map.of(), null, null, null, "sum", "total_amount").get(0).value, 0.001);
+        assertEquals("Moved job should be in its new table after a reload", 1.0,
+            reloaded.query("PURCHASE_ORDER", Map.of(), null, null, null, "count", null).get(0).value, 0.001);
+    }
+
+    @Test
+    public void testTypeNamesThatAreNotFileNamesSurviveReload() throws Exception {
+        schemaManager.addSchema("PURCHASE ORDER", "{\"vendor\": \"string\"}");
+        schemaManager.addSchema("PURCHASE/ORDER", "{\"vendor\": \"string\"}");
+        store.append("p1", "2026-04-01", "PURCHASE ORDER", Map.of("vendor", "ACME"));
+        store.append("p2", "2026-04-01", "PURCHASE/ORDER", Map.of("vendor", "Globex"));
+        store.append("p3", "2026-04-02", "PURCHASE/ORDER", Map.of("vendor", "Initech"));
+        store.close();
+
+        final FieldStore reloaded = new FieldStore(dir, schemaManager);
+        reloaded.load();
+        assertEquals("Type with a space should reload under its own name", 1.0,
+            reloaded.query("PURCHASE ORDER", Map.of(), null, null, null, "count", null).get(0).value, 0.001);
+        assertEquals("Types that sanitize alike should keep separate tables", 2.0,
+            reloaded.query("PURCHASE/ORDER", Map.of(), null, null, null, "count", null).get(0).value, 0.001);
+    }
+}
@@ -0,0 +1,95 @@
+package com.hulft.mcp;
+
+import org.junit.Test;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+
+public class HedgerTest {
+
+    /** Warms the hedger up with fast calls so it knows its latency percentile. */
+    private static void warmUp(final Hedger hedger) {
+        for (int i = 0; i < 40; i++) {
+            hedger.hedge(() -> CompletableFuture.completedFuture("fast")).join();
+        }
+    }
+
+    @Test
+    public void testSlowCallIsHedgedAndHedgeWins() {
+        final Hedger hedger = new Hedger("test", true, 95, 1.0, 20);
+        warmUp(hedger);
+        assertEquals("Delay should be the minimum for fast calls", 20, hedger.delayMillis());
+
+        final AtomicInteger attempts = new AtomicInteger();
+        final CompletableFuture<String> stuck = new CompletableFuture<>();
+        final String result = hedger.hedge(() -> attempts.incrementAndGet() == 1
+            ? stuck : CompletableFuture.completedFuture("hedge")).join();
+
+        assertEquals("Hedge answer should be used", "hedge", result);
+        assertEquals("Request should be sent twice", 2, attempts.get());
+        assertEquals("Hedge should be counted", 1, hedger.hedged());
+        assertEquals("Winning hedge should be counted", 1, hedger.won());
+        assertTrue("Slow attempt should be cancelled", stuck.isCancelled());
+    }
+
+    @Test
+    public void testBudgetCapsHedges() throws Exception {
+        final Hedger hedger = new Hedger("test", true, 95, 0.01, 10);
+        warmUp(hedger);
+        final CompletableFuture<?>[] slow = new CompletableFuture<?>[10];
+        for (int i = 0; i < slow.length; i++) {
+            final CompletableFuture<String> delayed = new CompletableFuture<>();
+            CompletableFuture.delayedExecutor(100, java.util.concurrent.TimeUnit.MILLISECONDS)
+                .execute(() -> delayed.complete("slow"));
+            slow[i] = hedger.hedge(() -> delayed);
+        }
+        CompletableFuture.allOf(slow).join();
+        // 50 calls at 1% earn no whole hedge
+        assertEquals("Budget should allow no hedges", 0, hedger.hedged());
+    }
+
+    @Test
+    public void testColdBlockingCallRunsOnCaller() {
+        final Hedger hedger = new Hedger("test", true, 95, 1.0, 20);
+        final Thread caller = Thread.currentThread();
+        assertSame("Call should run on the caller before the delay is known", caller,
+            hedger.call(Thread::currentThread));
+        assertEquals("Cold call should not be hedged", 0, hedger.hedged());
+    }
+
+    @Test
+    public void testBlockingLoserIsInterrupted() throws Exception {
+        final Hedger hedger = new Hedger("test", true, 95, 1.0, 20);
+        warmUp(hedger);
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final String result = hedger.call(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(10_000);
+                } catch (final InterruptedException e) {
+                    interrupted.countDown();
+                    throw new IllegalStateException(e);
+                }
+                return "slow";
+            }
+            return "hedge";
+        });
+        assertEquals("Hedge answer should be used", "hedge", result);
+        assertTrue("Slow attempt's thread should be interrupted", interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDisabledHedgerCallsOnce() {
+        final Hedger hedger = new Hedger("test", false, 95, 1.0, 1);
+        final AtomicInteger attempts = new AtomicInteger();
+        assertEquals("Result should pass through", "ok", hedger.call(() -> {
+            attempts.incrementAndGet();
+            return "ok";
+        }));
+        assertEquals("Disabled hedger should call once", 1, attempts.get());
+        assertEquals("Disabled hedger should not learn a delay", -1, hedger.delayMillis());
+    }
+}
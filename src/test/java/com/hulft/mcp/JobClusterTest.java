@@ -0,0 +1,109 @@
+package com.hulft.mcp;
+
+import org.junit.Before;
+import org.junit.Test;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import static org.junit.Assert.*;
+
+public class JobClusterTest {
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("test-cluster");
+    }
+
+    @Test
+    public void testEachJobIsClaimedByOneNode() throws Exception {
+        final JobCluster a = new JobCluster(dir, "a", 10_000);
+        final JobCluster b = new JobCluster(dir, "b", 10_000);
+        for (int i = 0; i < 50; i++) {
+            a.enqueue("job-" + i, Map.of("kind", "echo"));
+        }
+        final List<JobCluster.Claim> claimedByA = new ArrayList<>();
+        final List<JobCluster.Claim> claimedByB = new ArrayList<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread other = new Thread(() -> {
+            try {
+                start.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            claimedByB.addAll(b.claim(50));
+        });
+        other.start();
+        start.countDown();
+        claimedByA.addAll(a.claim(50));
+        other.join();
+
+        final Set<String> ids = new HashSet<>();
+        claimedByA.forEach(claim -> ids.add(claim.jobId));
+        claimedByB.forEach(claim -> ids.add(claim.jobId));
+        assertEquals("Every job should be claimed exactly once", 50, claimedByA.size() + claimedByB.size());
+        assertEquals("No job should be claimed twice", 50, ids.size());
+        assertEquals("Nothing should be left pending", 0, a.pendingJobs());
+    }
+
+    @Test
+    public void testDeadNodesJobsAreTakenOver() throws Exception {
+        final JobCluster dead = new JobCluster(dir, "dead", 50);
+        final JobCluster alive = new JobCluster(dir, "alive", 50);
+        dead.heartbeat();
+        dead.enqueue("job-1", Map.of("kind", "echo"));
+        assertEquals("Dead node should claim the job", 1, dead.claim(1).size());
+        assertTrue("Lease should hold while the owner heartbeats", alive.takeOver(Set.of()).isEmpty());
+
+        Thread.sleep(100); // Let the lease expire
+        alive.heartbeat();
+        final List<JobCluster.Claim> taken = alive.takeOver(Set.of());
+        assertEquals("Expired lease should be taken over", 1, taken.size());
+        assertEquals("Takeover should count as a second attempt", 2, taken.get(0).attempts());
+        assertEquals("Only live nodes should be listed", List.of("alive"), alive.liveNodes());
+        assertFalse("Stale owner should not publish a result",
+            dead.finish("job-1", Map.of("status", "completed")));
+    }
+
+    @Test
+    public void testStatusIsVisibleFromEveryNode() throws Exception {
+        final JobCluster a = new JobCluster(dir, "a", 10_000);
+        final JobCluster b = new JobCluster(dir, "b", 10_000);
+        assertNull("Unknown job should have no status", b.status("job-1"));
+        a.enqueue("job-1", Map.of("kind", "echo"));
+        assertEquals("Queued job should be processing", "processing", b.status("job-1").get("status"));
+
+        a.claim(1);
+        assertEquals("Leased job should be processing", "processing", b.status("job-1").get("status"));
+        assertTrue("Owner should publish", a.finish("job-1", Map.of("status", "completed", "result", Map.of("text", "done"))));
+        final Map<String, Object> status = b.status("job-1");
+        assertEquals("Finished job should be completed", "completed", status.get("status"));
+        assertEquals("Status should name the node that ran it", "a", status.get("node"));
+    }
+
+    @Test
+    public void testJobLeftFinishingByDeadNodeIsTakenOver() throws Exception {
+        final JobCluster dead = new JobCluster(dir, "dead", 50);
+        final JobCluster alive = new JobCluster(dir, "alive", 50);
+        dead.heartbeat();
+        dead.enqueue("job-1", Map.of("kind", "echo"));
+        dead.claim(1);
+        // Simulate dying after taking the lease to publish, before writing the status
+        Files.createDirectories(dir.resolve("finishing"));
+        Files.move(dir.resolve("running").resolve("job-1@dead.json"), dir.resolve("finishing").resolve("job-1@dead.json"));
+        assertEquals("Publishing job should still be processing", "processing", alive.status("job-1").get("status"));
+        assertFalse("Owner without a running lease should not publish", dead.finish("job-1", Map.of("status", "completed")));
+
+        Thread.sleep(100); // Let the lease expire
+        alive.heartbeat();
+        assertEquals("Job stuck in finishing should be taken over", 1, alive.takeOver(Set.of()).size());
+        assertTrue("New owner should publish", alive.finish("job-1", Map.of("status", "completed")));
+        assertFalse("Heartbeat should leave no temporary file", Files.exists(dir.resolve("nodes").resolve("alive.heartbeat.tmp")));
+    }
+}
@@ -0,0 +1,73 @@
+package com.hulft.mcp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import static org.junit.Assert.*;
+
+public class JobExporterTest {
+
+    private Path root;
+    private JobStore store;
+    private JobIndex index;
+    private JobExporter exporter;
+
+    @Before
+    public void setUp() throws Exception {
+        root = Files.createTempDirectory("test-export");
+        index = new JobIndex(root.resolve("index.tsv"));
+        index.load(null);
+        store = new JobStore(root, index);
+        exporter = new JobExporter(store, index, 2);
+        for (int i = 0; i < 20; i++) {
+            final String type = i % 2 == 0 ? "INVOICE_PRODUCTION" : "PURCHASE_ORDER";
+            final String jobId = UUID.randomUUID().toString();
+            final Path jobPath = root.resolve(String.format("2026/01/%02d", i + 1)).resolve(jobId);
+            Files.createDirectories(jobPath);
+            final String meta = String.format("{\"jobId\":\"%s\",\"filename\":\"doc, %d.pdf\","
+                + "\"finalClassification\":{\"type\":\"%s\"},\"extractedFields\":{\"total_amount\":\"%d\"}}", jobId, i, type, i);
+            Files.writeString(jobPath.resolve(JobStore.META_FILE), meta);
+            index.record(jobPath, Map.of("finalClassification", Map.of("type", type)));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        exporter.shutdown();
+    }
+
+    @Test
+    public void testNdjsonExportInDateOrder() throws Exception {
+        final StringWriter out = new StringWriter();
+        final long count = exporter.export("2026-01-01", "2026-01-10", null, "ndjson",
+            List.of("filename", "extractedFields.total_amount"), out);
+
+        final String[] lines = out.toString().split("\n");
+        assertEquals("Ten days should be exported", 10, count);
+        assertEquals("One line per job", 10, lines.length);
+        assertTrue("Oldest job first", lines[0].contains("\"doc, 0.pdf\""));
+        assertTrue("Nested field selected", lines[9].contains("\"extractedFields.total_amount\":\"9\""));
+    }
+
+    @Test
+    public void testCsvExportWithTypeFilter() throws Exception {
+        final StringWriter out = new StringWriter();
+        final long count = exporter.export(null, null, "PURCHASE_ORDER", "csv", List.of("filename", "finalClassification.type"), out);
+
+        final String[] lines = out.toString().split("\r\n");
+        assertEquals("Only purchase orders", 10, count);
+        assertEquals("Header row", "filename,finalClassification.type", lines[0]);
+        assertEquals("Commas should be quoted", "\"doc, 1.pdf\",PURCHASE_ORDER", lines[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownFormat() throws Exception {
+        exporter.export(null, null, null, "xml", List.of(), new StringWriter());
+    }
+}
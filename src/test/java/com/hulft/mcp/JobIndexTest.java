@@ -0,0 +1,120 @@
+package com.hulft.mcp;
+
+import org.junit.Before;
+import org.junit.Test;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import static org.junit.Assert.*;
+
+public class JobIndexTest {
+
+    private Path root;
+    private JobStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        root = Files.createTempDirectory("test-jobindex");
+        store = new JobStore(root);
+    }
+
+    @Test
+    public void testPagesAreNewestFirstAndComplete() throws Exception {
+        final JobIndex index = new JobIndex(root.resolve("index.tsv"));
+        index.load(null);
+        for (int day = 1; day <= 9; day++) {
+            final Path jobPath = root.resolve("2026/01/0" + day).resolve(UUID.randomUUID().toString());
+            index.record(jobPath, Map.of("type", "single"));
+        }
+
+        final Set<String> seen = new HashSet<>();
+        String lastDate = "9999-99-99";
+        String cursor = null;
+        int pages = 0;
+        do {
+            final JobIndex.Page page = index.list(cursor, 4, null);
+            for (final JobIndex.Entry entry : page.entries) {
+                assertTrue("Entries should be newest first", entry.date.compareTo(lastDate) <= 0);
+                lastDate = entry.date;
+                seen.add(entry.jobId);
+            }
+            cursor = page.nextCursor;
+            pages++;
+        } while (cursor != null);
+
+        assertEquals("All jobs should be listed", 9, seen.size());
+        assertEquals("Should take three pages", 3, pages);
+    }
+
+    @Test
+    public void testTypeFilterAndReplace() throws Exception {
+        final JobIndex index = new JobIndex(root.resolve("index.tsv"));
+        index.load(null);
+        final Path jobPath = root.resolve("2026/02/01").resolve(UUID.randomUUID().toString());
+        index.record(jobPath, Map.of("type", "single", "status", "processing"));
+        index.record(jobPath, Map.of("type", "single", "finalClassification", Map.of("type", "INVOICE_PRODUCTION")));
+
+        assertEquals("Re-recording should replace the entry", 1, index.size());
+        assertEquals("Classification should be the type", "INVOICE_PRODUCTION", index.get(jobPath.getFileName().toString()).type);
+        assertEquals("Filter should match", 1, index.list(null, 10, "INVOICE_PRODUCTION").entries.size());
+        assertEquals("Filter should exclude", 0, index.list(null, 10, "PURCHASE_ORDER").entries.size());
+    }
+
+    @Test
+    public void testFilteredPageStopsAfterMaxScan() throws Exception {
+        final JobIndex index = new JobIndex(root.resolve("index.tsv"), 5);
+        index.load(null);
+        index.record(root.resolve("2026/03/01").resolve(UUID.randomUUID().toString()),
+            Map.of("type", "single", "finalClassification", Map.of("type", "INVOICE_PRODUCTION")));
+        for (int day = 2; day <= 9; day++) {
+            index.record(root.resolve("2026/03/0" + day).resolve(UUID.randomUUID().toString()), Map.of("type", "single"));
+        }
+
+        final JobIndex.Page first = index.list(null, 2, "INVOICE_PRODUCTION");
+        assertEquals("No match within the first entries scanned", 0, first.entries.size());
+        assertNotNull("Cursor should resume after the scanned entries", first.nextCursor);
+        final JobIndex.Page second = index.list(first.nextCursor, 2, "INVOICE_PRODUCTION");
+        assertEquals("Oldest entry should be found on the next page", 1, second.entries.size());
+        assertNull("Index should be exhausted", second.nextCursor);
+    }
+
+    @Test
+    public void testReloadFromFile() throws Exception {
+        final Path file = root.resolve("index.tsv");
+        final JobIndex index = new JobIndex(file);
+        index.load(null);
+        final Path jobPath = root.resolve("2026/03/01").resolve(UUID.randomUUID().toString());
+        index.record(jobPath, Map.of("type", "single", "status", "processing"));
+        index.record(jobPath, Map.of("type", "single"));
+        index.close();
+
+        final JobIndex reloaded = new JobIndex(file);
+        reloaded.load(null);
+        assertEquals("Reloaded index should have one job", 1, reloaded.size());
+        assertEquals("Latest status should win", "completed", reloaded.get(jobPath.getFileName().toString()).status);
+        assertEquals("File should be compacted", 1, Files.readAllLines(file).size());
+    }
+
+    @Test
+    public void testBuildsFromStoreWhenMissing() throws Exception {
+        final String jobId = UUID.randomUUID().toString();
+        final Path jobPath = store.createJobFolder(jobId);
+        Files.writeString(jobPath.resolve(JobStore.META_FILE), "{\"type\":\"archive\"}");
+
+        final JobIndex index = new JobIndex(root.resolve("index.tsv"));
+        index.load(store);
+        assertNotNull("Existing job should be indexed", index.get(jobId));
+        assertEquals("Type should come from metadata", "archive", index.get(jobId).type);
+        assertTrue("Index file should be written", Files.exists(root.resolve("index.tsv")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCursor() throws Exception {
+        final JobIndex index = new JobIndex(root.resolve("index.tsv"));
+        index.load(null);
+        index.list("%%%", 10, null);
+    }
+}
@@ -0,0 +1,77 @@
+package com.hulft.mcp;
+
+import org.junit.Before;
+import org.junit.Test;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import static org.junit.Assert.*;
+
+public class JobJournalTest {
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("test-journal");
+    }
+
+    @Test
+    public void testConcurrentAppendsAreAllDurable() throws Exception {
+        final JobJournal journal = new JobJournal(dir);
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            futures.add(journal.appendAsync(Map.of("jobId", "job-" + i, "status", "processing")));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        journal.close();
+
+        assertEquals("Every record should be replayed", 1000, new JobJournal(dir).replay().size());
+    }
+
+    @Test
+    public void testReplayMergesAndSkipsTornLine() throws Exception {
+        final JobJournal journal = new JobJournal(dir);
+        journal.append(Map.of("jobId", "a", "status", "processing", "kind", "upload_files"));
+        journal.append(Map.of("jobId", "a", "status", "completed"));
+        journal.close();
+        Files.writeString(dir.resolve("journal.log"), "{\"jobId\":\"b\",\"sta", StandardOpenOption.APPEND);
+
+        final Map<String, Map<String, Object>> jobs = new JobJournal(dir).replay();
+        assertEquals("Torn record should be skipped", 1, jobs.size());
+        assertEquals("Latest status should win", "completed", jobs.get("a").get("status"));
+        assertEquals("Earlier keys should be kept", "upload_files", jobs.get("a").get("kind"));
+    }
+
+    @Test
+    public void testLogIsCompactedOnceItGrows() throws Exception {
+        final JobJournal journal = new JobJournal(dir, 2000);
+        journal.append(Map.of("jobId", "gone", "status", "completed"));
+        journal.append(Map.of("jobId", "gone", "status", "evicted"));
+        for (int i = 0; i < 100; i++) {
+            journal.append(Map.of("jobId", "a", "status", "processing", "attempts", i));
+        }
+        journal.append(Map.of("jobId", "a", "status", "completed"));
+        journal.close();
+
+        assertTrue("Log should have been compacted, size " + Files.size(dir.resolve("journal.log")),
+            Files.size(dir.resolve("journal.log")) < 2000);
+        final Map<String, Map<String, Object>> jobs = new JobJournal(dir).replay();
+        assertEquals("Evicted job should be dropped", List.of("a"), new ArrayList<>(jobs.keySet()));
+        assertEquals("Records after the compaction should be kept", "completed", jobs.get("a").get("status"));
+        assertEquals("Merged keys should survive the compaction", 99.0, jobs.get("a").get("attempts"));
+    }
+
+    @Test
+    public void testPayloadRoundTrip() throws Exception {
+        final JobJournal journal = new JobJournal(dir);
+        journal.writePayload("a", Map.of("files", List.of(Map.of("filename", "a.pdf"))));
+        assertNotNull("Payload should be readable", journal.readPayload("a"));
+        journal.deletePayload("a");
+        assertNull("Payload should be deleted", journal.readPayload("a"));
+    }
+}
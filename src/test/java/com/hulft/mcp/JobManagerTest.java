@@ -55,6 +55,33 @@ public class JobManagerTest {
         assertEquals("Error should match", "Test error", status.error);
     }
     
+    @Test
+    public void testProgressIsReportedUntilTheJobFinishes() throws Exception {
+        final java.util.concurrent.CountDownLatch reported = new java.util.concurrent.CountDownLatch(1);
+        final java.util.concurrent.CountDownLatch finish = new java.util.concurrent.CountDownLatch(1);
+        jobManager.registerHandler("progress", (jobId, payload) -> {
+            jobManager.reportProgress(jobId, "a.pdf", java.util.Map.of("invoice_number", "INV-1"));
+            reported.countDown();
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return java.util.Map.of("text", "done");
+        });
+        final String jobId = jobManager.submit("progress", java.util.Map.of());
+        assertTrue("Handler should report progress", reported.await(5, java.util.concurrent.TimeUnit.SECONDS));
+        assertEquals("Running job should show its progress", java.util.Map.of("invoice_number", "INV-1"),
+            jobManager.getJobStatus(jobId).progress.get("a.pdf"));
+
+        finish.countDown();
+        for (int i = 0; i < 50 && !"completed".equals(jobManager.getJobStatus(jobId).status); i++) {
+            Thread.sleep(20);
+        }
+        assertEquals("Job should complete", "completed", jobManager.getJobStatus(jobId).status);
+        assertNull("Progress should be dropped once the job finishes", jobManager.getJobStatus(jobId).progress);
+    }
+
     @Test
     public void testSubmitJob() throws Exception {
         final String jobId = jobManager.createJob();
@@ -84,4 +111,261 @@ public class JobManagerTest {
         final JobManager.JobStatus status = jobManager.getJobStatus("nonexistent");
         assertNull("Status should be null for nonexistent job", status);
     }
+
+    @Test
+    public void testRecoverAfterRestart() throws Exception {
+        final java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("test-jobqueue");
+        final JobManager first = new JobManager(new JobJournal(dir));
+        final java.util.concurrent.CountDownLatch blocked = new java.util.concurrent.CountDownLatch(1);
+        first.registerHandler("echo", payload -> java.util.Map.of("text", payload.get("value")));
+        first.registerHandler("hang", payload -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return java.util.Map.of();
+        });
+        final String done = first.submit("echo", java.util.Map.of("value", "first"));
+        final String pending = first.submit("hang", java.util.Map.of("value", "second"));
+        final String closure = first.createJob();
+        Thread.sleep(200); // Wait for async execution
+        // Simulate a crash: the hanging job never finishes
+        first.shutdown();
+
+        final JobManager second = new JobManager(new JobJournal(dir));
+        second.registerHandler("echo", payload -> java.util.Map.of("text", payload.get("value")));
+        second.registerHandler("hang", payload -> java.util.Map.of("text", "resumed " + payload.get("value")));
+        assertEquals("Unfinished job should be re-enqueued", 1, second.recover());
+        Thread.sleep(200); // Wait for async execution
+
+        assertEquals("Finished result should survive", "first", second.getJobStatus(done).result.get("text"));
+        assertEquals("Resumed job should complete", "resumed second", second.getJobStatus(pending).result.get("text"));
+        assertEquals("Closure job cannot resume", "failed", second.getJobStatus(closure).status);
+        blocked.countDown();
+        second.shutdown();
+    }
+
+    @Test
+    public void testClusterJobRunsOnAnotherNode() throws Exception {
+        final java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("test-jobcluster");
+        // Node A's handler hangs, so at least one job has to run on node B
+        final JobManager a = new JobManager(null, 100, 60_000, 1, 10, JobManager.RejectionPolicy.ABORT,
+            new JobCluster(dir, "a", 10_000), 20);
+        final JobManager b = new JobManager(null, 100, 60_000, 1, 10, JobManager.RejectionPolicy.ABORT,
+            new JobCluster(dir, "b", 10_000), 20);
+        final java.util.concurrent.CountDownLatch release = new java.util.concurrent.CountDownLatch(1);
+        a.registerHandler("echo", payload -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return java.util.Map.of("text", "a");
+        });
+        b.registerHandler("echo", payload -> java.util.Map.of("text", "b " + payload.get("value")));
+
+        final String first = a.submit("echo", java.util.Map.of("value", "first"));
+        final String second = a.submit("echo", java.util.Map.of("value", "second"));
+        Thread.sleep(500); // Wait for both nodes to poll
+
+        final long completedOnB = java.util.stream.Stream.of(first, second).map(a::getJobStatus)
+            .filter(status -> "completed".equals(status.status) && String.valueOf(status.result.get("text")).startsWith("b "))
+            .count();
+        assertTrue("Submitting node should see a result from the idle node", completedOnB >= 1);
+        release.countDown();
+        a.shutdown();
+        b.shutdown();
+    }
+
+    @Test
+    public void testDrainFinishesRunningJobsAndLeavesQueuedOnes() throws Exception {
+        final java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("test-jobdrain");
+        final JobManager first = new JobManager(new JobJournal(dir), 100, 60_000, 1, 10, JobManager.RejectionPolicy.ABORT);
+        final java.util.concurrent.CountDownLatch started = new java.util.concurrent.CountDownLatch(1);
+        first.registerHandler("slow", payload -> {
+            started.countDown();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return java.util.Map.of("text", payload.get("value"));
+        });
+        final String running = first.submit("slow", java.util.Map.of("value", "running"));
+        final String queued = first.submit("slow", java.util.Map.of("value", "queued"));
+        started.await();
+
+        assertTrue("Running job should finish within the deadline", first.drain(5000));
+        assertEquals("Running job should complete", "completed", first.getJobStatus(running).status);
+        assertEquals("Queued job should not start during a drain", "processing", first.getJobStatus(queued).status);
+        try {
+            first.submit("slow", java.util.Map.of());
+            fail("Draining manager should refuse new jobs");
+        } catch (ServerBusyException e) {
+            assertTrue("Refusal should be retryable", e.getRetryAfterMillis() > 0);
+        }
+
+        final JobManager second = new JobManager(new JobJournal(dir));
+        second.registerHandler("slow", payload -> java.util.Map.of("text", payload.get("value")));
+        assertEquals("Queued job should resume after restart", 1, second.recover());
+        Thread.sleep(200); // Wait for async execution
+        assertEquals("Resumed job should complete", "queued", second.getJobStatus(queued).result.get("text"));
+        second.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSubmitUnknownKind() throws Exception {
+        jobManager.submit("unknown", java.util.Map.of());
+    }
+
+    @Test
+    public void testEvictsOldestFinishedJobsBeyondMax() {
+        final JobManager bounded = new JobManager(null, 3, 60_000);
+        final String running = bounded.createJob();
+        final String[] ids = new String[4];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = bounded.createJob();
+            bounded.completeJob(ids[i], java.util.Map.of("text", "r" + i));
+        }
+
+        assertNotNull("Running jobs are never evicted", bounded.getJobStatus(running));
+        assertNull("Oldest finished job should be evicted", bounded.getJobStatus(ids[0]));
+        assertNotNull("Newest finished job should be kept", bounded.getJobStatus(ids[3]));
+        assertEquals("Registry should be bounded", 3, bounded.liveJobs());
+        assertEquals("Evictions should be counted", 2, bounded.evictedJobs());
+        bounded.shutdown();
+    }
+
+    @Test(timeout = 10_000)
+    public void testRecoveringMoreJobsThanTheQueueHoldsDoesNotBlock() throws Exception {
+        final java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("test-jobqueue");
+        final JobJournal journal = new JobJournal(dir);
+        for (int i = 0; i < 5; i++) {
+            journal.writePayload("job" + i, java.util.Map.of("value", i));
+            journal.append(java.util.Map.of("jobId", "job" + i, "status", "processing", "kind", "hang"));
+        }
+        journal.close();
+
+        final JobManager restarted = new JobManager(new JobJournal(dir), 100, 60_000, 1, 1,
+            JobManager.RejectionPolicy.ABORT);
+        final java.util.concurrent.CountDownLatch release = new java.util.concurrent.CountDownLatch(1);
+        restarted.registerHandler("hang", payload -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return java.util.Map.of("value", payload.get("value"));
+        });
+        assertEquals("Every unfinished job should be resumed", 5, restarted.recover());
+        release.countDown();
+        for (int i = 0; i < 5; i++) {
+            while (!"completed".equals(restarted.getJobStatus("job" + i).status)) {
+                Thread.sleep(10);
+            }
+        }
+        restarted.shutdown();
+    }
+
+    @Test
+    public void testEvictsExpiredJobs() throws Exception {
+        final JobManager bounded = new JobManager(null, 100, 50);
+        final String old = bounded.createJob();
+        bounded.failJob(old, "error");
+        Thread.sleep(100); // Let the job expire
+        final String fresh = bounded.createJob();
+        bounded.completeJob(fresh, java.util.Map.of("text", "ok"));
+
+        assertNull("Expired job should be evicted", bounded.getJobStatus(old));
+        assertNotNull("Fresh job should be kept", bounded.getJobStatus(fresh));
+        bounded.shutdown();
+    }
+
+    @Test
+    public void testExpiredJobIsEvictedOnRead() throws Exception {
+        final JobManager bounded = new JobManager(null, 100, 50);
+        final String old = bounded.createJob();
+        bounded.completeJob(old, java.util.Map.of("text", "ok"));
+        Thread.sleep(100); // Let the job expire with no other job finishing
+
+        assertNull("Expired job should be evicted when read", bounded.getJobStatus(old));
+        assertEquals("Eviction should be counted", 1, bounded.evictedJobs());
+        bounded.shutdown();
+    }
+
+    @Test
+    public void testLargeResultIsOffloaded() throws Exception {
+        final java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("test-jobqueue");
+        final JobManager journaled = new JobManager(new JobJournal(dir), 100, 60_000);
+        final String text = "x".repeat(JobManager.OFFLOAD_THRESHOLD * 2);
+        final String jobId = journaled.createJob();
+        journaled.completeJob(jobId, java.util.Map.of("text", text));
+
+        assertNull("Large result should not stay in memory", journaled.getJobStatus(jobId).result);
+        assertEquals("Result should be read back", text, journaled.getResult(jobId).get("text"));
+        journaled.shutdown();
+
+        final JobManager restarted = new JobManager(new JobJournal(dir), 100, 60_000);
+        restarted.recover();
+        assertEquals("Offloaded result should survive restart", text, restarted.getResult(jobId).get("text"));
+        restarted.shutdown();
+    }
+
+    @Test
+    public void testFullQueueIsRejected() throws Exception {
+        final JobManager bounded = new JobManager(null, 100, 60_000, 1, 1, JobManager.RejectionPolicy.ABORT);
+        final java.util.concurrent.CountDownLatch release = new java.util.concurrent.CountDownLatch(1);
+        bounded.registerHandler("block", payload -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return java.util.Map.of();
+        });
+        bounded.submit("block", java.util.Map.of());
+        Thread.sleep(100); // Let the worker pick up the first job
+        bounded.submit("block", java.util.Map.of());
+        assertEquals("Second job should wait in the queue", 1, bounded.queueDepth());
+
+        try {
+            bounded.submit("block", java.util.Map.of());
+            fail("Third job should be refused");
+        } catch (ServerBusyException e) {
+            assertTrue("Retry hint should be at least a second", e.getRetryAfterMillis() >= 1000);
+        }
+        assertEquals("Rejection should be counted", 1, bounded.rejectedJobs());
+        release.countDown();
+        bounded.shutdown();
+    }
+
+    @Test
+    public void testCallerRunsWhenQueueIsFull() throws Exception {
+        final JobManager bounded = new JobManager(null, 100, 60_000, 1, 1, JobManager.RejectionPolicy.CALLER_RUNS);
+        final java.util.concurrent.CountDownLatch release = new java.util.concurrent.CountDownLatch(1);
+        final Thread caller = Thread.currentThread();
+        final boolean[] ranOnCaller = {false};
+        bounded.registerHandler("block", payload -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return java.util.Map.of();
+        });
+        bounded.registerHandler("mark", payload -> {
+            ranOnCaller[0] = Thread.currentThread() == caller;
+            return java.util.Map.of();
+        });
+        bounded.submit("block", java.util.Map.of());
+        Thread.sleep(100); // Let the worker pick up the first job
+        bounded.submit("block", java.util.Map.of());
+        final String jobId = bounded.submit("mark", java.util.Map.of());
+
+        assertTrue("Overflow job should run on the caller", ranOnCaller[0]);
+        assertEquals("Overflow job should complete", "completed", bounded.getJobStatus(jobId).status);
+        release.countDown();
+        bounded.shutdown();
+    }
 }
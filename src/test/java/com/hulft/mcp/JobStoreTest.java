@@ -0,0 +1,90 @@
+package com.hulft.mcp;
+
+import org.junit.Before;
+import org.junit.Test;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.UUID;
+import static org.junit.Assert.*;
+
+public class JobStoreTest {
+
+    private Path root;
+    private JobStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        root = Files.createTempDirectory("test-jobstore");
+        store = new JobStore(root);
+    }
+
+    @Test
+    public void testCreateAndFindJobFolder() throws Exception {
+        final String jobId = UUID.randomUUID().toString();
+        final Path created = store.createJobFolder(jobId);
+
+        assertTrue("Job folder should exist", Files.isDirectory(created));
+        assertEquals("Job folder should be found", created, store.findJobFolder(jobId));
+        assertTrue("Job should be listed", store.listJobIds(10).contains(jobId));
+    }
+
+    @Test
+    public void testFindRejectsInvalidIds() throws Exception {
+        assertNull("Traversal should not resolve", store.findJobFolder("../../etc"));
+        assertNull("Unknown job should not resolve", store.findJobFolder(UUID.randomUUID().toString()));
+    }
+
+    @Test
+    public void testResolveArtifacts() throws Exception {
+        final String jobId = UUID.randomUUID().toString();
+        final Path jobPath = store.createJobFolder(jobId);
+        Files.writeString(jobPath.resolve(JobStore.META_FILE), "{\"type\":\"single\",\"filename\":\"a.pdf\"}");
+        Files.writeString(jobPath.resolve("a.pdf"), "original");
+        store.writeArtifacts(jobPath, "text", "# markdown");
+
+        assertEquals(jobPath.resolve(JobStore.TEXT_FILE), store.resolve("job://" + jobId + "/text"));
+        assertEquals(jobPath.resolve(JobStore.MARKDOWN_FILE), store.resolve("job://" + jobId + "/markdown"));
+        assertEquals(jobPath.resolve("a.pdf"), store.resolve("job://" + jobId + "/original"));
+        assertNull("Unknown artifact should not resolve", store.resolve("job://" + jobId + "/other"));
+        assertNull("Other schemes should not resolve", store.resolve("file:///etc/passwd"));
+    }
+
+    @Test
+    public void testRangeReads() throws Exception {
+        final Path file = Files.createTempFile(root, "data", ".bin");
+        final byte[] bytes = new byte[200 * 1024];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        Files.write(file, bytes);
+
+        final JobStore.Chunk small = store.read(file, 10, 5);
+        assertEquals("Small read length", 5, small.data.length);
+        assertEquals("Small read content", (byte) 10, small.data[0]);
+
+        final JobStore.Chunk mapped = store.read(file, 1000, 128 * 1024);
+        assertEquals("Mapped read length", 128 * 1024, mapped.data.length);
+        assertEquals("Mapped read content", (byte) 1000, mapped.data[0]);
+        assertEquals("Size should be reported", bytes.length, mapped.size);
+
+        final JobStore.Chunk tail = store.read(file, bytes.length - 3, 100);
+        assertEquals("Read should stop at end of file", 3, tail.data.length);
+        assertEquals("Next offset should be end of file", bytes.length, tail.nextOffset());
+    }
+
+    @Test
+    public void testDecodeTextKeepsCharactersWhole() throws Exception {
+        final Path file = Files.createTempFile(root, "text", ".txt");
+        Files.writeString(file, "ab請求書", StandardCharsets.UTF_8);
+
+        final JobStore.Chunk chunk = store.read(file, 0, 4);
+        final Map.Entry<String, Long> decoded = JobStore.decodeText(chunk);
+        assertEquals("Partial character should be deferred", "ab", decoded.getKey());
+        assertEquals("Next read should start at the cut character", 2L, (long) decoded.getValue());
+
+        final Map.Entry<String, Long> rest = JobStore.decodeText(store.read(file, decoded.getValue(), 100));
+        assertEquals("Remaining text", "請求書", rest.getKey());
+    }
+}
@@ -0,0 +1,34 @@
+package com.hulft.mcp;
+
+import org.junit.Test;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.*;
+
+public class JsonObjectStreamTest {
+
+    @Test
+    public void testMembersAreParsedAsSoonAsTheyEnd() {
+        final JsonObjectStream json = new JsonObjectStream();
+        assertFalse("Preamble has no members", json.feed("```json\n{\"po_number\": \"PO"));
+        assertTrue("Comma should finish the first member", json.feed("-1\", \"items\": [{\"name\": \"a, b\"}"));
+        assertEquals("Finished member should be parsed", Map.of("po_number", "PO-1"), json.fields());
+        assertTrue("Comma after array should finish it", json.feed("], \"vendor\""));
+        assertEquals("Nested commas should not split members",
+            List.of(Map.of("name", "a, b")), json.fields().get("items"));
+        assertFalse("Object is still open", json.isClosed());
+
+        assertTrue("Closing brace should finish the last member", json.feed(": \"ACME \\\"Ltd\\\"\"}\n```"));
+        assertTrue("Object should be closed", json.isClosed());
+        assertEquals("Escaped quotes should stay in the value", "ACME \"Ltd\"", json.fields().get("vendor"));
+        assertFalse("Text after the object is ignored", json.feed("{\"extra\": 1}"));
+        assertEquals("Three members should be parsed", 3, json.fields().size());
+    }
+
+    @Test
+    public void testMalformedMemberIsDropped() {
+        final JsonObjectStream json = new JsonObjectStream();
+        json.feed("{\"date\": , \"line\": \"A\"}");
+        assertEquals("Only the valid member should be kept", Map.of("line", "A"), json.fields());
+    }
+}
@@ -0,0 +1,20 @@
+package com.hulft.mcp;
+
+import org.junit.Test;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @Test
+    public void testCountersAndGauges() {
+        Metrics.counter("test.counter").addAndGet(2);
+        Metrics.counter("test.counter").incrementAndGet();
+        final AtomicInteger value = new AtomicInteger(5);
+        Metrics.gauge("test.gauge", value::get);
+        value.set(7);
+
+        assertEquals("Counter should accumulate", 3L, Metrics.snapshot().get("test.counter"));
+        assertEquals("Gauge should be sampled on snapshot", 7, Metrics.snapshot().get("test.gauge"));
+    }
+}
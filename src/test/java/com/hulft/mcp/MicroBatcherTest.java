@@ -0,0 +1,61 @@
+package com.hulft.mcp;
+
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import static org.junit.Assert.*;
+
+public class MicroBatcherTest {
+
+    @Test
+    public void testRequestsWithinWindowShareOneBatch() {
+        final List<List<String>> sent = new ArrayList<>();
+        final MicroBatcher<String, String> batcher = new MicroBatcher<>(10, 1000, 50, String::length, batch -> {
+            sent.add(batch);
+            return CompletableFuture.completedFuture(batch.stream().map(String::toUpperCase).toList());
+        });
+        final CompletableFuture<String> a = batcher.submit("a");
+        final CompletableFuture<String> b = batcher.submit("b");
+
+        assertEquals("Each caller should get its own result", "A", a.join());
+        assertEquals("Each caller should get its own result", "B", b.join());
+        assertEquals("Both requests should be sent together", List.of(List.of("a", "b")), sent);
+        assertEquals("One batch should be counted", 1, batcher.batches());
+    }
+
+    @Test
+    public void testFullBatchIsSentWithoutWaiting() {
+        final List<List<String>> sent = new ArrayList<>();
+        final MicroBatcher<String, String> batcher = new MicroBatcher<>(2, 10, 60_000, String::length, batch -> {
+            sent.add(batch);
+            return CompletableFuture.completedFuture(batch);
+        });
+        batcher.submit("one");
+        batcher.submit("two");
+        batcher.submit("heavy-item");
+        batcher.submit("x");
+
+        assertEquals("Item limit and weight limit should both close batches",
+            List.of(List.of("one", "two"), List.of("heavy-item")), sent);
+        batcher.flush();
+        assertEquals("Flush should send the rest", List.of("x"), sent.get(2));
+    }
+
+    @Test
+    public void testBatchFailureFailsEveryCaller() {
+        final MicroBatcher<String, String> batcher = new MicroBatcher<>(2, 1000, 60_000, String::length,
+            batch -> CompletableFuture.failedFuture(new IllegalStateException("throttled")));
+        final CompletableFuture<String> a = batcher.submit("a");
+        final CompletableFuture<String> b = batcher.submit("b");
+        for (final CompletableFuture<String> result : List.of(a, b)) {
+            try {
+                result.join();
+                fail("Caller should see the batch failure");
+            } catch (CompletionException e) {
+                assertEquals("Cause should be the batch error", "throttled", e.getCause().getMessage());
+            }
+        }
+    }
+}
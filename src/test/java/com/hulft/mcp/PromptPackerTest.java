@@ -0,0 +1,54 @@
+package com.hulft.mcp;
+
+import org.junit.Test;
+import java.util.List;
+import static org.junit.Assert.*;
+
+public class PromptPackerTest {
+
+    @Test
+    public void testRelevantLinesAreKeptOverLetterhead() {
+        final PromptPacker packer = PromptPacker.forTypes(new SchemaManager(), List.of("INVOICE_PRODUCTION"));
+        final String boilerplate = "ACME Corporation, 1 Main Street, Springfield\n".repeat(20);
+        final String text = boilerplate + "Invoice Number: INV-42\nTotal Amount\n$1,234.00\n" + boilerplate;
+
+        final String packed = packer.pack(text, 100);
+        assertTrue("Packed text should fit the budget", packed.length() <= 100);
+        assertTrue("Keyword lines should be kept", packed.contains("Invoice Number: INV-42"));
+        assertTrue("Line after a label should be kept with it", packed.contains("Total Amount\n$1,234.00"));
+    }
+
+    @Test
+    public void testTypeNamesCountLessThanFieldNames() {
+        final PromptPacker packer = PromptPacker.forTypes(new SchemaManager(), List.of("PURCHASE_ORDER"));
+        final String text = "Purchase Order\n" + "filler line\n".repeat(10) + "PO Number: 7";
+        assertEquals("A field name line should outrank a letterhead line naming the type",
+            "PO Number: 7", packer.pack(text, 15));
+    }
+
+    @Test
+    public void testCacheRebuildsWhenSchemaChanges() {
+        final SchemaManager schemas = new SchemaManager();
+        final PromptPacker.Cache cache = new PromptPacker.Cache(schemas);
+        final PromptPacker first = cache.forTypes(List.of("CUSTOM"));
+        assertSame("Packer should be reused", first, cache.forTypes(List.of("CUSTOM")));
+        schemas.addSchema("CUSTOM", "{\"lot_code\": \"string\"}");
+        final String text = "header\n".repeat(10) + "Lot code: A1";
+        assertEquals("Custom schema fields should be used", "Lot code: A1", cache.forTypes(List.of("CUSTOM")).pack(text, 12));
+    }
+
+    @Test
+    public void testBudgetIsFilledFromTheStartInDocumentOrder() {
+        final PromptPacker packer = new PromptPacker(List.of("po_number"));
+        final String text = "first\nsecond\nthird\nPO number 7\nlast";
+        assertEquals("Short text should be unchanged", text, packer.pack(text, 100));
+        assertEquals("Leftover budget should go to the first lines, in order",
+            "first\nsecond\nPO number 7\nlast", packer.pack(text, 30));
+    }
+
+    @Test
+    public void testLongLinesAreCutToFit() {
+        final String packed = new PromptPacker(List.of("date")).pack("x".repeat(1000), 250);
+        assertEquals("Unbroken text should fill the budget in whole segments", 200, packed.length());
+    }
+}
@@ -4,6 +4,7 @@ import org.junit.Test;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertEquals;
 
 public class SchemaManagerTest {
     
@@ -40,4 +41,24 @@ public class SchemaManagerTest {
         assertTrue("Should contain schema1", schemas.containsKey("schema1"));
         assertTrue("Should contain schema2", schemas.containsKey("schema2"));
     }
+
+    @Test
+    public void testGetScalarFields() {
+        final java.util.List<String> fields = manager.getScalarFields("INVOICE_PRODUCTION");
+        assertTrue("Should contain total_amount", fields.contains("total_amount"));
+        assertFalse("Should not contain array fields", fields.contains("items"));
+        manager.addSchema("broken", "not json");
+        assertTrue("Invalid schema should have no fields", manager.getScalarFields("broken").isEmpty());
+    }
+
+    @Test
+    public void testGetDocumentTypes() {
+        manager.addSchema("ZETA", "{}");
+        manager.addSchema("ALPHA", "{}");
+        manager.addSchema("INVOICE_PRODUCTION", "{\"invoice_number\": \"string\"}");
+        final java.util.List<String> types = manager.getDocumentTypes();
+        assertEquals("Built-in types should come first", SchemaManager.BUILT_IN_TYPES, types.subList(0, 4));
+        assertEquals("Custom types should follow in name order", java.util.List.of("ALPHA", "ZETA"), types.subList(4, 6));
+        assertEquals("Overridden built-in type should be listed once", 6, types.size());
+    }
 }
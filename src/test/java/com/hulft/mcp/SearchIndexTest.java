@@ -0,0 +1,98 @@
+package com.hulft.mcp;
+
+import org.junit.Before;
+import org.junit.Test;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static org.junit.Assert.*;
+
+public class SearchIndexTest {
+
+    private Path file;
+    private SearchIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempDirectory("test-search").resolve("search.log");
+        index = new SearchIndex(file);
+        index.load();
+        index.add("job-1", "2026-01-05", "INVOICE_PRODUCTION", "Invoice for ACME Corp\nTotal amount: 500");
+        index.add("job-2", "2026-01-20", "INVOICE_PRODUCTION", "Invoice for Globex\nACME mentioned as amount total reference");
+        index.add("job-3", "2026-02-01", "PURCHASE_ORDER", "Purchase order from ACME ACME ACME");
+    }
+
+    @Test
+    public void testRankedConjunctiveQuery() {
+        final SearchIndex.Result result = index.search("acme", null, null, null, 10);
+        assertEquals("All ACME documents should match", 3, result.total);
+        assertEquals("Highest term frequency should rank first", "job-3", result.hits.get(0).jobId);
+
+        assertEquals("All terms must match", 1, index.search("acme globex", null, null, null, 10).total);
+        assertEquals("Unknown terms match nothing", 0, index.search("initech", null, null, null, 10).total);
+    }
+
+    @Test
+    public void testPhraseQuery() {
+        final SearchIndex.Result result = index.search("\"total amount\"", null, null, null, 10);
+        assertEquals("Only the exact phrase should match", 1, result.total);
+        assertEquals("Phrase match", "job-1", result.hits.get(0).jobId);
+    }
+
+    @Test
+    public void testFilters() {
+        assertEquals("Type filter", 2, index.search("acme", "INVOICE_PRODUCTION", null, null, 10).total);
+        assertEquals("Date range filter", 1, index.search("acme", null, "2026-01-10", "2026-01-31", 10).total);
+        assertEquals("Limit should cap hits", 1, index.search("acme", null, null, null, 1).hits.size());
+    }
+
+    @Test
+    public void testReindexReplacesDocument() {
+        index.add("job-1", "2026-01-05", "INVOICE_PRODUCTION", "Corrected text without the company");
+        assertEquals("Old text should no longer match", 2, index.search("acme", null, null, null, 10).total);
+        assertEquals("Document count should be unchanged", 3, index.size());
+    }
+
+    @Test
+    public void testJapaneseText() {
+        index.add("job-4", "2026-03-01", "INVOICE_PRODUCTION", "請求書 株式会社セゾン");
+        assertEquals("CJK phrase should match", 1, index.search("\"請求書\"", null, null, null, 10).total);
+    }
+
+    @Test
+    public void testPostingListsGrow() {
+        for (int i = 0; i < 100; i++) {
+            index.add("bulk-" + i, "2026-04-01", "SCHEDULE_PRODUCTION", "line " + i + " schedule schedule");
+        }
+        assertEquals("All documents should be indexed", 100, index.search("schedule", null, null, null, 5).total);
+    }
+
+    @Test
+    public void testReplayFromLog() throws Exception {
+        index.close();
+        final SearchIndex reloaded = new SearchIndex(file);
+        reloaded.load();
+        assertEquals("Documents should be replayed", 3, reloaded.size());
+        assertEquals("Replayed postings should be searchable", 3, reloaded.search("acme", null, null, null, 10).total);
+    }
+
+    @Test
+    public void testLogIsCompactedIntoSnapshot() throws Exception {
+        final SearchIndex compacting = new SearchIndex(file, 200);
+        compacting.load();
+        compacting.add("job-1", "2026-01-05", "INVOICE_PRODUCTION", "Corrected text from ACME\nTotal amount: 700");
+        compacting.add("job-5", "2026-03-01", "PURCHASE_ORDER", "Order from Initech with a longer description");
+        compacting.add("job-6", "2026-03-02", "PURCHASE_ORDER", "Order from Umbrella");
+        compacting.close();
+        assertTrue("Snapshot should be written", Files.exists(file.resolveSibling("search.log.snapshot")));
+        assertTrue("Log should start over after compaction", Files.size(file) < 200);
+
+        final SearchIndex reloaded = new SearchIndex(file);
+        reloaded.load();
+        assertEquals("Snapshot and log should hold every document once", 5, reloaded.size());
+        assertEquals("Snapshot postings should be searchable", 3, reloaded.search("acme", null, null, null, 10).total);
+        assertEquals("Phrases should survive the snapshot", "job-1",
+            reloaded.search("\"total amount\"", null, null, null, 10).hits.get(0).jobId);
+        assertEquals("Documents added after the snapshot should be replayed", 1,
+            reloaded.search("umbrella", null, null, null, 10).total);
+    }
+}
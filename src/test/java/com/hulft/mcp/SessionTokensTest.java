@@ -0,0 +1,30 @@
+package com.hulft.mcp;
+
+import org.junit.Test;
+import java.nio.charset.StandardCharsets;
+import static org.junit.Assert.*;
+
+public class SessionTokensTest {
+
+    private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testTokenVerifiesOnAnyNodeWithTheSecret() {
+        final String token = new SessionTokens(SECRET, 60).issue();
+        assertNotNull("Another node with the same secret should accept the token",
+            new SessionTokens(SECRET, 60).verify(token));
+        assertNull("A node with another secret should reject the token",
+            new SessionTokens("another secret of thirty-two byte".getBytes(StandardCharsets.UTF_8), 60).verify(token));
+    }
+
+    @Test
+    public void testTamperedAndExpiredTokensAreRejected() {
+        final SessionTokens tokens = new SessionTokens(SECRET, 60);
+        final String token = tokens.issue();
+        final String[] parts = token.split("\\.");
+        final String extended = parts[0] + "." + parts[1] + "." + (Long.parseLong(parts[2]) + 3600) + "." + parts[3];
+        assertNull("Changing the expiry should break the signature", tokens.verify(extended));
+        assertNull("Garbage should be rejected", tokens.verify("not-a-token"));
+        assertNull("Expired token should be rejected", new SessionTokens(SECRET, -1).verify(new SessionTokens(SECRET, -1).issue()));
+    }
+}
@@ -0,0 +1,52 @@
+package com.hulft.mcp;
+
+import org.junit.Before;
+import org.junit.Test;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import static org.junit.Assert.*;
+
+public class StageArtifactsTest {
+
+    private Path jobPath;
+    private final StageArtifacts artifacts = new StageArtifacts();
+
+    @Before
+    public void setUp() throws Exception {
+        jobPath = Files.createTempDirectory("test-stages");
+    }
+
+    @Test
+    public void testArtifactIsReusedOnlyForTheSameInput() {
+        final String input = StageArtifacts.fingerprint("file bytes".getBytes());
+        artifacts.save(jobPath, StageArtifacts.Stage.OCR, input, Map.of("text", "hello"));
+
+        final Object ocr = artifacts.load(jobPath, StageArtifacts.Stage.OCR, input);
+        assertEquals("Current artifact should be reused", "hello", ((Map<?, ?>) ocr).get("text"));
+        assertNull("Artifact built from other input should be recomputed",
+            artifacts.load(jobPath, StageArtifacts.Stage.OCR, StageArtifacts.fingerprint("other".getBytes())));
+        assertNull("Missing artifact should be recomputed", artifacts.load(jobPath, StageArtifacts.Stage.TABLES, input));
+    }
+
+    @Test
+    public void testSchemaChangeChangesTheFieldsFingerprint() {
+        assertNotEquals("Schema should be part of the fields input",
+            StageArtifacts.fingerprint("text", "INVOICE", "{\"total\":\"number\"}"),
+            StageArtifacts.fingerprint("text", "INVOICE", "{\"total\":\"number\",\"tax\":\"number\"}"));
+        assertNotEquals("Parts should not run together",
+            StageArtifacts.fingerprint("ab", "c"), StageArtifacts.fingerprint("a", "bc"));
+    }
+
+    @Test
+    public void testInvalidateFromDropsLaterStages() throws Exception {
+        for (final StageArtifacts.Stage stage : StageArtifacts.Stage.values()) {
+            artifacts.save(jobPath, stage, "in", "out");
+        }
+        artifacts.invalidateFrom(jobPath, StageArtifacts.Stage.CLASSIFICATION);
+
+        assertEquals("Earlier stages should be kept", "out", artifacts.load(jobPath, StageArtifacts.Stage.TABLES, "in"));
+        assertNull("Invalidated stage should be dropped", artifacts.load(jobPath, StageArtifacts.Stage.CLASSIFICATION, "in"));
+        assertNull("Later stages should be dropped", artifacts.load(jobPath, StageArtifacts.Stage.FIELDS, "in"));
+    }
+}
@@ -0,0 +1,76 @@
+package com.hulft.mcp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+
+public class StagePoolsTest {
+
+    private StagePools pools;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        final Map<StagePools.Stage, Integer> threads = new EnumMap<>(StagePools.Stage.class);
+        threads.put(StagePools.Stage.PARSE, 2);
+        threads.put(StagePools.Stage.BEDROCK, 1);
+        pools = new StagePools(threads, 1, 50);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        pools.shutdown();
+    }
+
+    @Test
+    public void testBlockedStageDoesNotStarveOthers() throws Exception {
+        pools.supply(StagePools.Stage.BEDROCK, this::block);
+        pools.supply(StagePools.Stage.BEDROCK, this::block);
+
+        final String parsed = pools.supply(StagePools.Stage.PARSE, () -> "parsed").get(1, TimeUnit.SECONDS);
+        assertEquals("Parse stage should run while Bedrock is saturated", "parsed", parsed);
+        assertEquals("Bedrock work should queue behind its own limit", 1, pools.queued(StagePools.Stage.BEDROCK));
+    }
+
+    @Test
+    public void testFullParseQueueRunsOnSubmitter() throws Exception {
+        pools.supply(StagePools.Stage.PARSE, this::block);
+        pools.supply(StagePools.Stage.PARSE, this::block);
+        pools.supply(StagePools.Stage.PARSE, this::block);
+        final Thread caller = Thread.currentThread();
+
+        final CompletableFuture<Boolean> overflow = pools.supply(StagePools.Stage.PARSE, () -> Thread.currentThread() == caller);
+        assertTrue("Parse overflow should run on the submitting thread", overflow.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFullAwsQueueIsRefusedAsBusy() throws Exception {
+        pools.supply(StagePools.Stage.BEDROCK, this::block);
+        pools.supply(StagePools.Stage.BEDROCK, this::block);
+        final Thread caller = Thread.currentThread();
+
+        final CompletableFuture<Boolean> overflow = pools.supply(StagePools.Stage.BEDROCK, () -> Thread.currentThread() == caller);
+        try {
+            overflow.get(1, TimeUnit.SECONDS);
+            fail("Bedrock overflow should not run on the submitting thread");
+        } catch (java.util.concurrent.ExecutionException e) {
+            assertTrue("Overflow should be refused as busy", e.getCause() instanceof ServerBusyException);
+        }
+    }
+
+    private String block() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "done";
+    }
+}
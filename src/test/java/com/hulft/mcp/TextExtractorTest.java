@@ -36,10 +36,36 @@ public class TextExtractorTest {
     }
     
     @Test
-    public void testGetLastOcrConfidence() {
-        final Float confidence = extractor.getLastOcrConfidence();
-        // Should be null initially
-        assertTrue("Confidence should be null or valid", confidence == null || confidence >= 0);
+    public void testOcrResultCarriesConfidence() {
+        final TextExtractor.OcrResult result = extractor.ocr("fake pdf".getBytes(), "test.pdf");
+        assertNotNull("Text should not be null", result.text);
+        // No client, so recognition fails and there is no confidence
+        assertNull("Failed recognition should have no confidence", result.confidence);
+    }
+    
+    @Test
+    public void testAsyncOcrFailureCompletesWithFailedResult() {
+        final TextExtractor async = new TextExtractor(null, new software.amazon.awssdk.services.textract.TextractAsyncClient() {
+            @Override
+            public java.util.concurrent.CompletableFuture<software.amazon.awssdk.services.textract.model.DetectDocumentTextResponse>
+                    detectDocumentText(final software.amazon.awssdk.services.textract.model.DetectDocumentTextRequest request) {
+                return java.util.concurrent.CompletableFuture.failedFuture(new IllegalStateException("throttled"));
+            }
+            
+            @Override
+            public String serviceName() {
+                return "textract";
+            }
+            
+            @Override
+            public void close() {
+                // Nothing to release
+            }
+        });
+        assertTrue("Async client should be used", async.isAsync());
+        final TextExtractor.OcrResult result = async.ocrAsync("fake pdf".getBytes(), "test.pdf").join();
+        assertTrue("Failure should be reported in the text", result.text.contains("throttled"));
+        assertNull("Failed recognition should have no confidence", result.confidence);
     }
     
     @Test
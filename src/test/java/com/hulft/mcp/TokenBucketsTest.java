@@ -0,0 +1,70 @@
+package com.hulft.mcp;
+
+import org.junit.Test;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static org.junit.Assert.*;
+
+public class TokenBucketsTest {
+
+    @Test
+    public void testNodesSharingDirectoryShareQuota() throws Exception {
+        final Path dir = Files.createTempDirectory("test-rate");
+        System.setProperty("hulft.rate.shared.Op.tps", "10");
+        try {
+            final TokenBuckets a = new TokenBuckets(dir);
+            final TokenBuckets b = new TokenBuckets(dir);
+            final String key = TokenBuckets.key("shared", "Op", "model:v1");
+            // The burst of 10 is drawn down by both nodes together
+            for (int i = 0; i < 5; i++) {
+                a.acquire(key, 10_000);
+                b.acquire(key, 10_000);
+            }
+            final long start = System.nanoTime();
+            b.acquireAsync(key, 10_000).join();
+            final long waitedMillis = (System.nanoTime() - start) / 1_000_000;
+            assertTrue("Eleventh call should wait for a refill, waited " + waitedMillis + " ms", waitedMillis >= 50);
+        } finally {
+            System.clearProperty("hulft.rate.shared.Op.tps");
+        }
+    }
+
+    @Test
+    public void testModelFallsBackToServiceRate() {
+        System.setProperty("hulft.rate.fallback.tps", "1000");
+        try {
+            final TokenBuckets buckets = new TokenBuckets(null);
+            final long start = System.nanoTime();
+            for (int i = 0; i < 50; i++) {
+                buckets.acquire(TokenBuckets.key("fallback", "InvokeModel", "some-model"), 10_000);
+            }
+            assertTrue("Service rate should cover every model", (System.nanoTime() - start) / 1_000_000 < 1000);
+            assertEquals("Nothing should be left waiting", 0, buckets.waiting());
+        } finally {
+            System.clearProperty("hulft.rate.fallback.tps");
+        }
+    }
+
+    @Test
+    public void testTokenDueTooLateIsRefusedAndHandedBack() {
+        System.setProperty("hulft.rate.late.tps", "1");
+        try {
+            final TokenBuckets buckets = new TokenBuckets(null);
+            final String key = TokenBuckets.key("late", "Op", null);
+            buckets.acquire(key, 100);
+            try {
+                buckets.acquire(key, 100);
+                fail("Token due in a second should be refused for a 100 ms wait");
+            } catch (final ServerBusyException e) {
+                assertTrue("Retry hint should be the wait, was " + e.getRetryAfterMillis(), e.getRetryAfterMillis() > 100);
+            }
+            assertTrue("Async caller should be refused too",
+                buckets.acquireAsync(key, 100).isCompletedExceptionally());
+            // Refused tokens were handed back, so the next one is due within a second, not three
+            buckets.acquireAsync(key, 1500).join();
+            assertEquals("Nothing should be left waiting", 0, buckets.waiting());
+        } finally {
+            System.clearProperty("hulft.rate.late.tps");
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.hulft.mcp;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class VirtualThreadsTest {
+
+    @Test
+    public void testFactoryNamesThreads() {
+        final Thread thread = VirtualThreads.factory("test-worker-").newThread(() -> { });
+        assertTrue("Thread should use the prefix", thread.getName().startsWith("test-worker-"));
+        if (!VirtualThreads.enabled()) {
+            assertTrue("Platform fallback should be daemon", thread.isDaemon());
+        }
+    }
+
+    @Test
+    public void testPlatformFactoryNumbersThreads() {
+        final java.util.concurrent.ThreadFactory factory = VirtualThreads.platform("cpu-");
+        assertEquals("First thread", "cpu-1", factory.newThread(() -> { }).getName());
+        assertEquals("Second thread", "cpu-2", factory.newThread(() -> { }).getName());
+    }
+}